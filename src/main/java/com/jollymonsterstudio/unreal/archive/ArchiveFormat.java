@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.archive;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.file.Path;
+
+/**
+ * ArchiveFormat - where the copy ends up, either a regular directory or a single archive next to where that directory would be
+ */
+public enum ArchiveFormat {
+    // loose files in the target directory, same as always
+    DIRECTORY(""),
+    // zip archive, entries are compressed in parallel and already compressed media is stored as is
+    ZIP(".zip"),
+    // tar archive compressed with zstd using multiple compression workers
+    TAR_ZST(".tar.zst");
+
+    private final String extension;
+
+    ArchiveFormat(final String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * resolve - the file or directory the copy gets written to
+     * @param targetDirectory the configured target directory
+     * @return the target directory itself or the archive next to it, for example C:/NewProject.zip
+     */
+    public Path resolve(final Path targetDirectory) {
+        if(this == DIRECTORY) {
+            return targetDirectory;
+        }
+        return targetDirectory.resolveSibling(targetDirectory.getFileName() + extension);
+    }
+
+    /**
+     * fromProperty - lenient parsing of the properties file value
+     * @param value the configured format, for example zip or tar.zst, empty means DIRECTORY
+     * @return {@see ArchiveFormat}
+     */
+    public static ArchiveFormat fromProperty(final String value) {
+        if(StringUtils.isBlank(value)) {
+            return DIRECTORY;
+        }
+        return valueOf(value.trim().replace('.', '_').toUpperCase());
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.archive;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import com.jollymonsterstudio.unreal.ini.IniRewriter;
+import com.jollymonsterstudio.unreal.ini.IniRewrites;
+import com.jollymonsterstudio.unreal.io.AtomicFile;
+import com.jollymonsterstudio.unreal.metrics.CopyMetrics;
+import com.jollymonsterstudio.unreal.metrics.Phase;
+import com.jollymonsterstudio.unreal.plan.CopyOperation;
+import com.jollymonsterstudio.unreal.plan.CopyPlan;
+import com.jollymonsterstudio.unreal.plan.OperationType;
+import com.jollymonsterstudio.unreal.rename.ReplacingInputStream;
+import com.jollymonsterstudio.unreal.visitor.FileType;
+import me.tongfei.progressbar.ProgressBar;
+import me.tongfei.progressbar.ProgressBarStyle;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.FileBasedScatterGatherBackingStore;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ArchiveWriter - carries out a {@see CopyPlan} into a single archive instead of a directory, nothing but the archive is ever written.
+ *                 entries are renamed exactly the way {@see com.jollymonsterstudio.unreal.plan.PlanExecutor} renames files
+ *                 and all of them live under a folder named after the target directory, so unpacking next to the archive
+ *                 gives the same tree a regular copy would have.
+ *                 the archive is written to a temp file and renamed into place once complete. zips compressed on more than one
+ *                 thread also need a scatter file per thread, those live next to the archive and are gone once it is done.
+ */
+public class ArchiveWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveWriter.class);
+
+    // media that is already compressed, deflating it again costs a lot of cpu for next to nothing
+    static final Set<String> STORED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("png", "jpg", "jpeg", "wav")));
+
+    private static final int ZSTD_LEVEL = 3;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    // renamed ascii files up to this size are held in memory to learn their tar entry size, larger ones are renamed twice
+    static final long TAR_SPOOL_LIMIT = 4L * 1024 * 1024;
+    // progress is tracked in bytes but displayed in MB
+    private static final int PROGRESS_UPDATE_INTERVAL = 1000;
+    private static final int BYTES_PER_MB = 1024 * 1024;
+
+    private final CopyPlan plan;
+    private final ArchiveFormat format;
+    private final CopyMetrics metrics;
+    private final int threads;
+    private final Path archive;
+
+    private ProgressBar progressBar;
+
+    private final AtomicLong entryBytes = new AtomicLong();
+
+    /**
+     * ArchiveWriter
+     * @param plan - {@see CopyPlan}
+     * @param format - {@see ArchiveFormat} other than DIRECTORY
+     * @param threads - number of threads compressing entries
+     * @param metrics - where timings and counters of the run are collected
+     */
+    public ArchiveWriter(final CopyPlan plan, final ArchiveFormat format, final int threads, final CopyMetrics metrics) {
+        if(ArchiveFormat.DIRECTORY.equals(format)) {
+            throw new IllegalArgumentException("Archive format required, directories are copied by the PlanExecutor");
+        }
+        this.plan = plan;
+        this.format = format;
+        this.metrics = metrics;
+        this.threads = Math.max(1, threads);
+        this.archive = format.resolve(plan.getTarget());
+    }
+
+    /**
+     * execute - writes the whole plan into the archive
+     * @throws IOException in case touching the disk blows up, no archive is left behind in that case
+     */
+    public void execute() throws IOException {
+        progressBar = new ProgressBar("Archive Progress: ", plan.getSourceBytes(), PROGRESS_UPDATE_INTERVAL, System.err, ProgressBarStyle.ASCII, "MB", BYTES_PER_MB);
+        Path tempFile = AtomicFile.tempFor(archive);
+        try {
+            if(ArchiveFormat.ZIP.equals(format)) {
+                writeZip(tempFile);
+            } else {
+                writeTarZst(tempFile);
+            }
+            AtomicFile.commit(tempFile, archive);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        } finally {
+            progressBar.close();
+            metrics.finished();
+        }
+        LOGGER.info("Wrote {} entries ( {} bytes before compression ) to {}", plan.getDirectories().size() + plan.getFiles().size(), entryBytes.get(), archive);
+    }
+
+    /**
+     * getArchive - where the archive ends up
+     * @return the archive file
+     */
+    public Path getArchive() {
+        return archive;
+    }
+
+    /**
+     * getTargetBytes - size of the finished archive
+     * @return size in bytes
+     * @throws IOException in case touching the disk blows up
+     */
+    public long getTargetBytes() throws IOException {
+        return Files.size(archive);
+    }
+
+    /**
+     * writeZip - a single thread compresses every entry straight into the zip, with more threads see {@see writeParallelZip}
+     * @param zipFile where the zip gets written
+     * @throws IOException in case touching the disk blows up
+     */
+    private void writeZip(final Path zipFile) throws IOException {
+        if(threads > 1) {
+            writeParallelZip(zipFile);
+            return;
+        }
+        try(ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(zipFile.toFile())) {
+            for(CopyOperation operation : plan.getDirectories()) {
+                zipOutputStream.putArchiveEntry(directoryEntry(operation));
+                zipOutputStream.closeArchiveEntry();
+            }
+            for(CopyOperation operation : plan.getFiles()) {
+                zipOutputStream.putArchiveEntry(fileEntry(operation));
+                try(InputStream inputStream = open(operation)) {
+                    IOUtils.copy(inputStream, zipOutputStream, STREAM_BUFFER_SIZE);
+                }
+                zipOutputStream.closeArchiveEntry();
+            }
+        }
+    }
+
+    /**
+     * writeParallelZip - every entry is read, renamed and compressed on a worker thread into that thread's scatter file,
+     *                    the scatter files are then stitched together into the final zip. compressed entries are written twice
+     *                    that way, so the scatter files go next to the archive rather than into a temp directory that may be
+     *                    on another, smaller disk
+     * @param zipFile where the zip gets written
+     * @throws IOException in case touching the disk blows up
+     */
+    private void writeParallelZip(final Path zipFile) throws IOException {
+        List<Path> scatterFiles = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger scatterCount = new AtomicInteger();
+        ParallelScatterZipCreator zipCreator = new ParallelScatterZipCreator(Executors.newFixedThreadPool(threads),
+                () -> scatterFile(scatterCount.incrementAndGet(), scatterFiles));
+        for(CopyOperation operation : plan.getDirectories()) {
+            zipCreator.addArchiveEntry(directoryEntry(operation), () -> new ByteArrayInputStream(new byte[0]));
+        }
+        for(CopyOperation operation : plan.getFiles()) {
+            // runs on the worker thread that compresses the entry
+            zipCreator.addArchiveEntry(fileEntry(operation), () -> {
+                try {
+                    return open(operation);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        try(ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(zipFile.toFile())) {
+            zipCreator.writeTo(zipOutputStream);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing " + archive, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof UncheckedIOException ? ((UncheckedIOException) e.getCause()).getCause() : new IOException(e.getCause());
+        } finally {
+            // the creator removes them once stitched, this is for when it never got that far
+            for(Path scatterFile : scatterFiles) {
+                Files.deleteIfExists(scatterFile);
+            }
+        }
+        LOGGER.info("Zip {}", zipCreator.getStatisticsMessage());
+    }
+
+    /**
+     * scatterFile - a new scatter file for one of the zip worker threads, hidden next to the archive
+     * @param number unique among the scatter files of the archive
+     * @param scatterFiles every scatter file handed out so far
+     * @return {@see ScatterGatherBackingStore} that deletes its file when closed
+     * @throws IOException in case touching the disk blows up
+     */
+    private ScatterGatherBackingStore scatterFile(final int number, final List<Path> scatterFiles) throws IOException {
+        Path scatterFile = AtomicFile.tempFor(archive.resolveSibling(archive.getFileName() + ".scatter-" + number));
+        scatterFiles.add(scatterFile);
+        return new FileBasedScatterGatherBackingStore(scatterFile.toFile());
+    }
+
+    private ZipArchiveEntry directoryEntry(final CopyOperation operation) {
+        ZipArchiveEntry entry = new ZipArchiveEntry(entryName(operation) + "/");
+        entry.setMethod(ZipArchiveEntry.STORED);
+        entry.setTime(operation.getSource().toFile().lastModified());
+        return entry;
+    }
+
+    private ZipArchiveEntry fileEntry(final CopyOperation operation) {
+        ZipArchiveEntry entry = new ZipArchiveEntry(entryName(operation));
+        entry.setMethod(isStored(operation) ? ZipArchiveEntry.STORED : ZipArchiveEntry.DEFLATED);
+        entry.setTime(operation.getLastModified());
+        return entry;
+    }
+
+    /**
+     * writeTarZst - tar entries are written one after another while zstd spreads the compression over its own worker threads
+     * @param tarFile where the compressed tar gets written
+     * @throws IOException in case touching the disk blows up
+     */
+    private void writeTarZst(final Path tarFile) throws IOException {
+        try(OutputStream fileStream = new BufferedOutputStream(Files.newOutputStream(tarFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), STREAM_BUFFER_SIZE);
+            ZstdOutputStream zstdStream = new ZstdOutputStream(fileStream, ZSTD_LEVEL);
+            TarArchiveOutputStream tarStream = new TarArchiveOutputStream(zstdStream)) {
+            if(threads > 1) {
+                zstdStream.setWorkers(threads);
+            }
+            // unreal paths get long quickly, the old 100 character ustar limit is not going to cut it
+            tarStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tarStream.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+
+            for(CopyOperation operation : plan.getDirectories()) {
+                TarArchiveEntry entry = new TarArchiveEntry(entryName(operation) + "/");
+                entry.setModTime(operation.getSource().toFile().lastModified());
+                tarStream.putArchiveEntry(entry);
+                tarStream.closeArchiveEntry();
+            }
+            for(CopyOperation operation : plan.getFiles()) {
+                TarArchiveEntry entry = new TarArchiveEntry(entryName(operation));
+                entry.setModTime(new Date(operation.getLastModified()));
+                if(FileType.BINARY.equals(operation.getFileType())) {
+                    // tar needs the size up front, binary files are copied verbatim so it is already known
+                    entry.setSize(operation.getSize());
+                    tarStream.putArchiveEntry(entry);
+                    try(InputStream inputStream = open(operation)) {
+                        IOUtils.copy(inputStream, tarStream, STREAM_BUFFER_SIZE);
+                    }
+                } else if(operation.getSize() <= TAR_SPOOL_LIMIT) {
+                    long start = metrics.start();
+                    // tar needs the size up front, source and config files are small so renaming them once into memory is cheapest
+                    ByteArrayOutputStream renamed = new ByteArrayOutputStream((int) operation.getSize());
+                    try(InputStream inputStream = contents(operation)) {
+                        IOUtils.copy(inputStream, renamed, STREAM_BUFFER_SIZE);
+                    }
+                    entry.setSize(renamed.size());
+                    tarStream.putArchiveEntry(entry);
+                    try(InputStream inputStream = track(operation, new ByteArrayInputStream(renamed.toByteArray()), start)) {
+                        IOUtils.copy(inputStream, tarStream, STREAM_BUFFER_SIZE);
+                    }
+                } else {
+                    long start = metrics.start();
+                    // tar needs the size up front, renaming twice keeps memory flat where holding on to the renamed file would not
+                    try(InputStream inputStream = contents(operation)) {
+                        entry.setSize(IOUtils.copyLarge(inputStream, NullOutputStream.NULL_OUTPUT_STREAM));
+                    }
+                    tarStream.putArchiveEntry(entry);
+                    try(InputStream inputStream = track(operation, contents(operation), start)) {
+                        IOUtils.copy(inputStream, tarStream, STREAM_BUFFER_SIZE);
+                    }
+                }
+                tarStream.closeArchiveEntry();
+            }
+            tarStream.finish();
+        }
+    }
+
+    /**
+     * open - the contents of an entry, binary files straight from the source and ascii files renamed
+     * @param operation {@see CopyOperation}
+     * @return stream of the entry contents
+     * @throws IOException in case touching the disk blows up
+     */
+    private InputStream open(final CopyOperation operation) throws IOException {
+        long start = metrics.start();
+        return track(operation, contents(operation), start);
+    }
+
+    /**
+     * contents - the contents of an entry, ascii files are renamed as they are read so they are never held in memory as a whole
+     *            config files with section rewrites go through {@see IniRewriter} which only holds on to the section it rewrites
+     * @param operation {@see CopyOperation}
+     * @return stream of the entry contents
+     * @throws IOException in case touching the disk blows up
+     */
+    private InputStream contents(final CopyOperation operation) throws IOException {
+        if(FileType.BINARY.equals(operation.getFileType())) {
+            return Files.newInputStream(operation.getSource());
+        }
+        if(OperationType.INI_PATCH.equals(operation.getType())) {
+            return new ByteArrayInputStream(rewriteIni(operation));
+        }
+        return new ReplacingInputStream(Files.newInputStream(operation.getSource()), Charset.defaultCharset(), plan.getSubstitutionEngine());
+    }
+
+    /**
+     * track - records timings and counters of an entry once it has been consumed and the stream closed
+     * @param operation {@see CopyOperation}
+     * @param contents the entry contents
+     * @param start when work on the entry started, see {@see CopyMetrics.start}
+     * @return stream of the entry contents
+     */
+    private InputStream track(final CopyOperation operation, final InputStream contents, final long start) {
+        return new FilterInputStream(contents) {
+            private boolean closed = false;
+            // renamed entries only know their size once they have been read
+            private long newSize = 0;
+
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                if(read != -1) {
+                    newSize++;
+                }
+                return read;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                int read = super.read(b, off, len);
+                if(read > 0) {
+                    newSize += read;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                if(!closed) {
+                    closed = true;
+                    metrics.record(phaseFor(operation), start, operation.getSize());
+                    metrics.copied(operation.getFileType(), operation.getSize(), newSize);
+                    entryBytes.addAndGet(newSize);
+                    progressBar.stepBy(operation.getSize());
+                }
+            }
+        };
+    }
+
+    /**
+     * rewriteIni - applies the rename rules and section rewrites to one of the few config files that have them, see {@see IniRewrites}
+     *              those are small engine and game configs so their renamed contents are simply kept in memory
+     * @param operation {@see CopyOperation}
+     * @return the renamed contents
+     * @throws IOException in case touching the disk blows up
+     */
+    private byte[] rewriteIni(final CopyOperation operation) throws IOException {
+        IniRewriter iniRewriter = new IniRewriter(plan.getSubstitutionEngine(),
+                IniRewrites.forFile(operation.getSource().getFileName().toString(), plan.getOldProjectName(), plan.getNewProjectName()));
+        ByteArrayOutputStream contents = new ByteArrayOutputStream((int) operation.getSize());
+        try(Reader reader = Files.newBufferedReader(operation.getSource(), Charset.defaultCharset())) {
+            iniRewriter.rewrite(reader, new OutputStreamWriter(contents, Charset.defaultCharset()));
+        }
+        return contents.toByteArray();
+    }
+
+    private String entryName(final CopyOperation operation) {
+        String targetPath = plan.targetPath(operation.getTarget());
+        String root = plan.getTarget().getFileName().toString();
+        return targetPath.isEmpty() ? root : root + "/" + targetPath;
+    }
+
+    private static Phase phaseFor(final CopyOperation operation) {
+        if(FileType.BINARY.equals(operation.getFileType())) {
+            return Phase.BINARY_COPY;
+        }
+        return OperationType.INI_PATCH.equals(operation.getType()) ? Phase.INI_PATCH : Phase.ASCII_REWRITE;
+    }
+
+    static boolean isStored(final CopyOperation operation) {
+        return STORED_EXTENSIONS.contains(FilenameUtils.getExtension(operation.getSource().getFileName().toString()).toLowerCase());
+    }
+}
@@ -16,26 +16,48 @@
 
 package com.jollymonsterstudio.unreal.handler;
 
+import com.jollymonsterstudio.unreal.server.CloneServer;
 import com.jollymonsterstudio.unreal.service.CopyService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
 
 /**
- * StartupHandler - the only thing this does is kick off the copy process during application startup
+ * StartupHandler - the only thing this does is kick off the copy process during application startup,
+ *                  or start the clone server when one is configured and leave the copies to its jobs.
+ *                  never lazy since nothing else asks for it, everything it needs is created along with it
  */
 @Component
+@Lazy(false)
 public class StartupHandler {
 
     private CopyService copyService;
+    private CloneServer cloneServer;
 
-    public StartupHandler(@Autowired final CopyService copyService) {
+    public StartupHandler(@Autowired final CopyService copyService, @Autowired final CloneServer cloneServer) {
         this.copyService = copyService;
+        this.cloneServer = cloneServer;
     }
 
     @PostConstruct
     public void init(){
-        copyService.copy();
+        if(cloneServer.isEnabled()) {
+            try {
+                cloneServer.start();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to start clone server: " + e.getLocalizedMessage(), e);
+            }
+        } else {
+            copyService.copy();
+        }
     }
-}
\ No newline at end of file
+
+    @PreDestroy
+    public void destroy(){
+        cloneServer.stop();
+    }
+}
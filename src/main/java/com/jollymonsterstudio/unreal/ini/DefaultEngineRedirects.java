@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.ini;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DefaultEngineRedirects - in order to get a renamed project running we need to account for ActiveClassRedirects as the blueprints
+ *                          and other binary assets still retain references to those old project definitions.
+ *                          some more reading about it here https://forums.unrealengine.com/development-discussion/blueprint-visual-scripting/24493-migrate-code-based-blueprint
+ *                          immutable and safe to share between threads.
+ */
+public class DefaultEngineRedirects implements IniSectionRewrite {
+
+    public static final String FILE_NAME = "DefaultEngine.ini";
+
+    private static final String ENGINE_SECTION = "/Script/Engine.Engine";
+    private static final String CLASS_REDIRECTS = "ActiveClassRedirects";
+    private static final Pattern NEW_CLASS_NAME = Pattern.compile("(?<=\\bNewClassName=\")[^\"]*");
+
+    private final String oldProjectName;
+    private final String newProjectName;
+
+    /**
+     * DefaultEngineRedirects
+     * @param oldProjectName - name of the project being copied
+     * @param newProjectName - name of the new project
+     */
+    public DefaultEngineRedirects(final String oldProjectName, final String newProjectName) {
+        this.oldProjectName = oldProjectName;
+        this.newProjectName = newProjectName;
+    }
+
+    @Override
+    public String getSection() {
+        return ENGINE_SECTION;
+    }
+
+    /**
+     * linesAfterHeader - the game name redirects that go right after the engine section header
+     * @param entries the engine section as found in the source project
+     * @return an empty line followed by the project redirect and one redirect per class redirect of the section
+     */
+    @Override
+    public List<String> linesAfterHeader(final List<IniEntry> entries) {
+        List<String> lines = new ArrayList<>();
+        lines.add("");
+        // create new redirect for project name
+        lines.add("+ActiveGameNameRedirects=(OldGameName=\"/Script/" + oldProjectName + "\", NewGameName=\"/Script/" + newProjectName + "\")");
+        // update references to classes / blueprints, the regex only ever sees the class redirects
+        for(IniEntry entry : entries) {
+            if(CLASS_REDIRECTS.equalsIgnoreCase(entry.getKey()) && entry.getOperator() != '-' && entry.getOperator() != '!') {
+                Matcher matcher = NEW_CLASS_NAME.matcher(entry.getValue());
+                if(matcher.find()) {
+                    String redirect = matcher.group();
+                    lines.add("+ActiveGameNameRedirects=(OldGameName=\"/Script/" + oldProjectName + "." + redirect + "\", NewGameName=\"/Script/"
+                            + newProjectName + "." + redirect.replace(oldProjectName, newProjectName) + "\")");
+                }
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.ini;
+
+/**
+ * IniEntry - a single key / value line of an ini file as unreal reads it, including the array operator in front of the key
+ *            for example +ActiveClassRedirects=(OldClassName="A",NewClassName="B")
+ */
+public class IniEntry {
+
+    // unreal array operators, add / remove / add even if duplicate / clear
+    private static final String OPERATORS = "+-.!";
+
+    private final char operator;
+    private final String key;
+    private final String value;
+
+    /**
+     * IniEntry
+     * @param operator - array operator in front of the key or 0 if there is none
+     * @param key - the key without operator
+     * @param value - everything after the first =
+     */
+    public IniEntry(final char operator, final String key, final String value) {
+        this.operator = operator;
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * parse - reads a line that is neither a section header nor a comment
+     * @param line a single line without its line terminator
+     * @return {@see IniEntry} or null if the line is blank, a comment or has no key
+     */
+    public static IniEntry parse(final String line) {
+        String trimmed = IniRewriter.strip(line);
+        if(trimmed.isEmpty() || trimmed.charAt(0) == ';' || trimmed.charAt(0) == '#') {
+            return null;
+        }
+        int separator = trimmed.indexOf('=');
+        char operator = OPERATORS.indexOf(trimmed.charAt(0)) >= 0 ? trimmed.charAt(0) : 0;
+        int keyStart = operator != 0 ? 1 : 0;
+        if(separator <= keyStart) {
+            return null;
+        }
+        return new IniEntry(operator, trimmed.substring(keyStart, separator).trim(), trimmed.substring(separator + 1).trim());
+    }
+
+    public char getOperator() {
+        return operator;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.ini;
+
+import com.jollymonsterstudio.unreal.rename.SubstitutionEngine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * IniRewriter - streams a config file from the source to the target a line at a time, renaming every line on the way.
+ *               sections with a {@see IniSectionRewrite} are held back until they end so the rewrite gets to see all of their
+ *               entries before its lines go in right after the header, everything else is written as soon as it is read.
+ *               line endings are kept as they are ( CRLF files stay CRLF on any platform ) and added lines use the file's own.
+ *               not thread safe, use one per file.
+ */
+public class IniRewriter {
+
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final SubstitutionEngine substitutionEngine;
+    private final List<? extends IniSectionRewrite> rewrites;
+
+    // line terminator of the file, taken from the first line that has one
+    private String separator;
+
+    // section currently being held back
+    private IniSectionRewrite pendingRewrite;
+    private final List<IniEntry> pendingEntries = new ArrayList<>();
+    private final StringBuilder pendingLines = new StringBuilder();
+
+    /**
+     * IniRewriter
+     * @param substitutionEngine - the rename rules applied to every line
+     * @param rewrites - section specific changes, see {@see IniRewrites}
+     */
+    public IniRewriter(final SubstitutionEngine substitutionEngine, final List<? extends IniSectionRewrite> rewrites) {
+        this.substitutionEngine = substitutionEngine;
+        this.rewrites = rewrites;
+    }
+
+    /**
+     * rewrite - renames and rewrites a whole file
+     * @param reader the source contents
+     * @param writer where the new contents go, flushed but not closed
+     * @throws IOException in case touching the disk blows up
+     */
+    public void rewrite(final Reader reader, final Writer writer) throws IOException {
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        StringBuilder line = new StringBuilder();
+        String terminator;
+        while((terminator = readLine(in, line)) != null) {
+            if(separator == null && !terminator.isEmpty()) {
+                separator = terminator;
+            }
+            String original = line.toString();
+            String renamed = substitutionEngine.replace(original);
+            // every line ends up terminated, including the last one
+            String ending = terminator.isEmpty() ? separator() : terminator;
+
+            String section = sectionName(original);
+            if(section != null) {
+                flushPending(writer);
+                writer.write(renamed);
+                writer.write(ending);
+                pendingRewrite = rewriteFor(section);
+            } else if(pendingRewrite != null) {
+                IniEntry entry = IniEntry.parse(original);
+                if(entry != null) {
+                    pendingEntries.add(entry);
+                }
+                pendingLines.append(renamed).append(ending);
+            } else {
+                writer.write(renamed);
+                writer.write(ending);
+            }
+        }
+        flushPending(writer);
+        writer.flush();
+    }
+
+    /**
+     * flushPending - writes the held back section, the lines of its rewrite first
+     * @param writer where the new contents go
+     * @throws IOException in case touching the disk blows up
+     */
+    private void flushPending(final Writer writer) throws IOException {
+        if(pendingRewrite == null) {
+            return;
+        }
+        for(String added : pendingRewrite.linesAfterHeader(pendingEntries)) {
+            writer.write(added);
+            writer.write(separator());
+        }
+        writer.write(pendingLines.toString());
+
+        pendingRewrite = null;
+        pendingEntries.clear();
+        pendingLines.setLength(0);
+    }
+
+    private IniSectionRewrite rewriteFor(final String section) {
+        for(IniSectionRewrite rewrite : rewrites) {
+            if(rewrite.getSection().equalsIgnoreCase(section)) {
+                return rewrite;
+            }
+        }
+        return null;
+    }
+
+    private String separator() {
+        return separator != null ? separator : System.lineSeparator();
+    }
+
+    /**
+     * sectionName - the name of a section header line
+     * @param line a single line without its line terminator
+     * @return the name without brackets or null if the line is not a section header
+     */
+    static String sectionName(final String line) {
+        String trimmed = strip(line);
+        if(trimmed.length() >= 2 && trimmed.charAt(0) == '[' && trimmed.charAt(trimmed.length() - 1) == ']') {
+            return trimmed.substring(1, trimmed.length() - 1).trim();
+        }
+        return null;
+    }
+
+    /**
+     * strip - trims a line for parsing, including the byte order mark some editors put in front of the first one
+     * @param line a single line
+     * @return the trimmed line
+     */
+    static String strip(final String line) {
+        String trimmed = line.trim();
+        return !trimmed.isEmpty() && trimmed.charAt(0) == BYTE_ORDER_MARK ? trimmed.substring(1).trim() : trimmed;
+    }
+
+    /**
+     * readLine - reads the next line and tells which terminator ended it, unlike BufferedReader.readLine
+     * @param in the source contents
+     * @param line receives the line without its terminator
+     * @return \n, \r\n, \r or an empty string for a last line without terminator, null once there is nothing left
+     * @throws IOException in case touching the disk blows up
+     */
+    private static String readLine(final BufferedReader in, final StringBuilder line) throws IOException {
+        line.setLength(0);
+        int c;
+        while((c = in.read()) != -1) {
+            if(c == '\n') {
+                return "\n";
+            }
+            if(c == '\r') {
+                in.mark(1);
+                if(in.read() == '\n') {
+                    return "\r\n";
+                }
+                in.reset();
+                return "\r";
+            }
+            line.append((char) c);
+        }
+        return line.length() > 0 ? "" : null;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.ini;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * IniRewrites - which config files need more than renaming, any file listed here is pushed through the {@see IniRewriter}
+ *               instead of the plain rename. new section specific changes ( DefaultGame.ini, DefaultInput.ini, ... ) only
+ *               need an {@see IniSectionRewrite} and an entry in {@see forFile}
+ */
+public final class IniRewrites {
+
+    private IniRewrites() {
+    }
+
+    /**
+     * hasRewrites - whether a config file needs to go through the {@see IniRewriter}
+     * @param fileName name of the file, matched ignoring case
+     * @return true if {@see forFile} has something for it
+     */
+    public static boolean hasRewrites(final String fileName) {
+        return DefaultEngineRedirects.FILE_NAME.equalsIgnoreCase(fileName);
+    }
+
+    /**
+     * forFile - the section rewrites of a single config file
+     * @param fileName name of the file, matched ignoring case
+     * @param oldProjectName name of the project being copied
+     * @param newProjectName name of the new project
+     * @return {@see IniSectionRewrite} list, empty if the file only needs renaming
+     */
+    public static List<IniSectionRewrite> forFile(final String fileName, final String oldProjectName, final String newProjectName) {
+        if(DefaultEngineRedirects.FILE_NAME.equalsIgnoreCase(fileName)) {
+            return Collections.singletonList(new DefaultEngineRedirects(oldProjectName, newProjectName));
+        }
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.ini;
+
+import java.util.List;
+
+/**
+ * IniSectionRewrite - a change to a single section of a config file that goes beyond renaming, for example the redirects
+ *                     DefaultEngine.ini needs. implementations only ever see the section they asked for, see {@see IniRewriter}
+ */
+public interface IniSectionRewrite {
+
+    /**
+     * getSection - the section this rewrite applies to
+     * @return section name without brackets, for example /Script/Engine.Engine, matched ignoring case
+     */
+    String getSection();
+
+    /**
+     * linesAfterHeader - extra lines that go right after the section header
+     * @param entries every entry of the section as found in the source project, before any renaming
+     * @return lines without line terminators, empty if there is nothing to add
+     */
+    List<String> linesAfterHeader(List<IniEntry> entries);
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * AtomicFile - writes a file next to its final location and renames it into place once it is complete,
+ *              so an interrupted copy never leaves a half written file behind under the real name
+ */
+public final class AtomicFile {
+
+    // hidden and clearly ours, in case a crash leaves one behind
+    public static final String TEMP_SUFFIX = ".kopiarka-tmp";
+
+    /**
+     * Content - produces the contents of the file
+     */
+    public interface Content {
+        /**
+         * writeTo - write everything, closing the stream is optional
+         * @param outputStream the temp file
+         * @throws IOException in case touching the disk blows up
+         */
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    private AtomicFile() {
+    }
+
+    /**
+     * write - writes the contents to a temp file in the same directory and renames it to the target
+     * @param target the final file, replaced if it already exists
+     * @param content {@see Content}
+     * @throws IOException in case touching the disk blows up, the temp file is removed again
+     */
+    public static void write(final Path target, final Content content) throws IOException {
+        Path tempFile = tempFor(target);
+        try {
+            try(OutputStream outputStream = Files.newOutputStream(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                content.writeTo(outputStream);
+            }
+            commit(tempFile, target);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    /**
+     * tempFor - where the contents of a file are written before they are complete
+     * @param target the final file
+     * @return hidden sibling of the target
+     */
+    public static Path tempFor(final Path target) {
+        return target.resolveSibling("." + target.getFileName() + TEMP_SUFFIX);
+    }
+
+    /**
+     * commit - moves a completed temp file into place
+     * @param tempFile the completed file
+     * @param target the final file, replaced if it already exists
+     * @throws IOException in case touching the disk blows up
+     */
+    public static void commit(final Path tempFile, final Path target) throws IOException {
+        try {
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // same directory so this should never happen, still better than failing the copy
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
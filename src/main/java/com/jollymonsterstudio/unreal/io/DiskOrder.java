@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.io;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * DiskOrder - roughly where a file lives on disk, so files can be read in the order the disk holds them instead of the order
+ *             directories list them. on unix this is the inode number: filesystems such as ext4 and xfs place a file's data close
+ *             to its inode and hand out inodes of the same directory close to each other, so reading in inode order turns
+ *             a cold read of many small files from a spinning disk or network share into mostly forward seeks.
+ *             the inode comes from the file key the walk already read, so it costs no extra call to the filesystem.
+ *             java has no way to ask for physical extents ( FIEMAP ) so the inode is as close as we get.
+ */
+public final class DiskOrder {
+
+    // no idea where the file lives ( windows, or a filesystem without inodes ), such files keep their name order
+    public static final long UNKNOWN = 0;
+
+    private static final String INODE = ",ino=";
+
+    private DiskOrder() {
+    }
+
+    /**
+     * of - the disk order of a file
+     * @param attrs attributes of the file as read during the walk
+     * @return the inode number or {@see UNKNOWN}
+     */
+    public static long of(final BasicFileAttributes attrs) {
+        Object fileKey = attrs.fileKey();
+        if(fileKey == null) {
+            return UNKNOWN;
+        }
+
+        // the unix file key has no accessors, only a toString of the form (dev=803,ino=1234)
+        String key = fileKey.toString();
+        int start = key.indexOf(INODE);
+        if(start < 0) {
+            return UNKNOWN;
+        }
+        start += INODE.length();
+        int end = start;
+        while(end < key.length() && Character.isDigit(key.charAt(end))) {
+            end++;
+        }
+        try {
+            return end > start ? Long.parseLong(key.substring(start, end)) : UNKNOWN;
+        } catch (NumberFormatException e) {
+            // above Long.MAX_VALUE, no filesystem we know of gets there
+            return UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.manifest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CopyJournal - write ahead journal of every file that made it into the target, so an interrupted run can pick up where it stopped.
+ *               lives in the root of the target directory while a copy is running and is removed once the copy completes.
+ *               entries are appended in batches and synced to disk every {@see BATCH_SIZE} entries or {@see SYNC_INTERVAL_MILLIS},
+ *               a crash loses at most the last batch which simply gets copied again.
+ *               safe to record entries from multiple threads.
+ */
+public class CopyJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CopyJournal.class);
+
+    public static final String FILE_NAME = ".kopiarka-journal";
+
+    static final int BATCH_SIZE = 256;
+    static final long SYNC_INTERVAL_MILLIS = 1000;
+
+    private static final String HEADER = "# kopiarka journal v2";
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * Entry - what a file looked like when an earlier run finished writing it
+     */
+    private static final class Entry {
+        private final long size;
+        private final long sourceLastModified;
+        private final long lastModified;
+
+        private Entry(final long size, final long sourceLastModified, final long lastModified) {
+            this.size = size;
+            this.sourceLastModified = sourceLastModified;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private final Path journalFile;
+    private final FileChannel channel;
+    // what earlier runs completed, keyed by target path
+    private final Map<String, Entry> completed;
+
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingEntries = 0;
+    private long lastSync = System.currentTimeMillis();
+
+    private CopyJournal(final Path journalFile, final FileChannel channel, final Map<String, Entry> completed) {
+        this.journalFile = journalFile;
+        this.channel = channel;
+        this.completed = completed;
+    }
+
+    /**
+     * create - starts a fresh journal, throwing away whatever an earlier run left behind
+     * @param target the target directory, has to exist
+     * @param run identifies the source and rename rules, a journal is only ever resumed by the same run
+     * @return {@see CopyJournal}
+     * @throws IOException in case touching the disk blows up
+     */
+    public static CopyJournal create(final Path target, final String run) throws IOException {
+        Path journalFile = target.resolve(FILE_NAME);
+        FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        CopyJournal journal = new CopyJournal(journalFile, channel, new HashMap<>());
+        journal.write(HEADER + System.lineSeparator() + run + System.lineSeparator());
+        return journal;
+    }
+
+    /**
+     * resume - picks up the journal of an interrupted run, a missing journal or one left by a different run starts from scratch
+     * @param target the target directory, has to exist
+     * @param run identifies the source and rename rules, see {@see create}
+     * @return {@see CopyJournal}
+     * @throws IOException in case touching the disk blows up
+     */
+    public static CopyJournal resume(final Path target, final String run) throws IOException {
+        Path journalFile = target.resolve(FILE_NAME);
+        if(!Files.exists(journalFile)) {
+            LOGGER.warn("Nothing to resume in {} every file will be copied again", target);
+            return create(target, run);
+        }
+
+        Map<String, Entry> completed = new HashMap<>();
+        try(BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            if(!HEADER.equals(reader.readLine()) || !run.equals(reader.readLine())) {
+                LOGGER.warn("Journal in {} was written by a different run, every file will be copied again", target);
+                return create(target, run);
+            }
+            String line;
+            while((line = reader.readLine()) != null) {
+                // target path followed by size, last modified of the source and last modified of the target
+                // the last line may be torn if the crash hit in the middle of a batch
+                int lastModified = line.lastIndexOf(SEPARATOR);
+                int sourceLastModified = lastModified > 0 ? line.lastIndexOf(SEPARATOR, lastModified - 1) : -1;
+                int size = sourceLastModified > 0 ? line.lastIndexOf(SEPARATOR, sourceLastModified - 1) : -1;
+                if(size <= 0) {
+                    LOGGER.debug("Ignoring torn journal entry: {}", line);
+                    continue;
+                }
+                try {
+                    completed.put(line.substring(0, size), new Entry(Long.parseLong(line.substring(size + 1, sourceLastModified)),
+                            Long.parseLong(line.substring(sourceLastModified + 1, lastModified)), Long.parseLong(line.substring(lastModified + 1))));
+                } catch (NumberFormatException e) {
+                    LOGGER.debug("Ignoring torn journal entry: {}", line);
+                }
+            }
+        }
+        LOGGER.info("Resuming copy into {} with {} files already completed", target, completed.size());
+
+        FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // start the new entries on a line of their own
+        CopyJournal journal = new CopyJournal(journalFile, channel, completed);
+        journal.write(System.lineSeparator());
+        return journal;
+    }
+
+    /**
+     * isComplete - whether an earlier run finished writing a file. the source must not have changed since and the file on disk
+     *              has to be the one that was written back then, same size and same last modified time, so a file that was
+     *              written again ( and torn ) later on or that only happens to have the right size is copied again
+     * @param targetPath path relative to the target directory, see {@see com.jollymonsterstudio.unreal.plan.CopyPlan.targetPath}
+     * @param file the target file
+     * @param sourceLastModified current last modified time of the source file in millis
+     * @return true if the file can be left alone
+     */
+    public boolean isComplete(final String targetPath, final Path file, final long sourceLastModified) {
+        Entry entry = completed.get(targetPath);
+        if(entry == null || entry.sourceLastModified != sourceLastModified) {
+            return false;
+        }
+        try {
+            return Files.size(file) == entry.size && Files.getLastModifiedTime(file).toMillis() == entry.lastModified;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * record - marks a file as completely written, only call once the file is in its final place
+     * @param targetPath path relative to the target directory
+     * @param size size of the written file
+     * @param sourceLastModified last modified time of the source file the target was written from in millis
+     * @param lastModified last modified time of the written file in millis
+     * @throws IOException in case touching the disk blows up
+     */
+    public synchronized void record(final String targetPath, final long size, final long sourceLastModified, final long lastModified) throws IOException {
+        pending.append(targetPath).append(SEPARATOR).append(size).append(SEPARATOR).append(sourceLastModified)
+                .append(SEPARATOR).append(lastModified).append(System.lineSeparator());
+        pendingEntries++;
+        if(pendingEntries >= BATCH_SIZE || System.currentTimeMillis() - lastSync >= SYNC_INTERVAL_MILLIS) {
+            flush();
+        }
+    }
+
+    /**
+     * flush - appends everything recorded so far and syncs it to disk
+     * @throws IOException in case touching the disk blows up
+     */
+    public synchronized void flush() throws IOException {
+        if(pendingEntries > 0 && channel.isOpen()) {
+            write(pending.toString());
+            pending.setLength(0);
+            pendingEntries = 0;
+        }
+    }
+
+    /**
+     * close - flushes and closes the journal but keeps it around, the run did not complete
+     * @throws IOException in case touching the disk blows up
+     */
+    public synchronized void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    /**
+     * complete - the run finished, nothing left to resume
+     * @throws IOException in case touching the disk blows up
+     */
+    public synchronized void complete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(journalFile);
+    }
+
+    private void write(final String entries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(entries.getBytes(StandardCharsets.UTF_8));
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        // data only, the new file size still gets synced along with it which is all an append only file needs
+        channel.force(false);
+        lastSync = System.currentTimeMillis();
+    }
+}
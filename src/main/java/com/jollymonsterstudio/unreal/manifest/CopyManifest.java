@@ -0,0 +1,215 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.manifest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CopyManifest - keeps track of every file written to the target so the next run only has to touch what changed.
+ *                lives in the root of the target directory as a tab separated file, one {@see ManifestEntry} per line.
+ *                safe to record entries from multiple threads.
+ */
+public class CopyManifest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CopyManifest.class);
+
+    public static final String FILE_NAME = ".kopiarka-manifest";
+
+    private static final String HEADER = "# kopiarka manifest v1";
+    private static final String SEPARATOR = "\t";
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    private final Path manifestFile;
+
+    // what the last run wrote, keyed by source path
+    private final Map<String, ManifestEntry> previous;
+    // what this run has written or kept so far, keyed by source path
+    private final Map<String, ManifestEntry> current = new ConcurrentHashMap<>();
+
+    private CopyManifest(final Path manifestFile, final Map<String, ManifestEntry> previous) {
+        this.manifestFile = manifestFile;
+        this.previous = previous;
+    }
+
+    /**
+     * load - reads the manifest left behind by the last run, a missing or unreadable manifest simply means everything gets copied
+     * @param target the target directory
+     * @return {@see CopyManifest}
+     */
+    public static CopyManifest load(final Path target) {
+        Path manifestFile = target.resolve(FILE_NAME);
+        Map<String, ManifestEntry> previous = new HashMap<>();
+
+        if(Files.exists(manifestFile)) {
+            try(BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+                String line = reader.readLine();
+                if(HEADER.equals(line)) {
+                    while((line = reader.readLine()) != null) {
+                        String[] columns = line.split(SEPARATOR);
+                        if(columns.length == 6) {
+                            previous.put(columns[0], new ManifestEntry(columns[0], columns[1], Long.parseLong(columns[2]), Long.parseLong(columns[3]), columns[4], columns[5]));
+                        }
+                    }
+                } else {
+                    LOGGER.warn("Unrecognized manifest {} everything will be copied again", manifestFile);
+                }
+            } catch (IOException | NumberFormatException e) {
+                LOGGER.warn("Unable to read manifest {} everything will be copied again: {}", manifestFile, e.getLocalizedMessage());
+                previous.clear();
+            }
+        }
+        LOGGER.info("Loaded manifest with {} entries", previous.size());
+
+        return new CopyManifest(manifestFile, previous);
+    }
+
+    /**
+     * previous - what the last run knew about a source file
+     * @param sourcePath path relative to the source directory
+     * @return {@see ManifestEntry} or null if the file is new
+     */
+    public ManifestEntry previous(final String sourcePath) {
+        return previous.get(sourcePath);
+    }
+
+    /**
+     * record - marks a file as written ( or kept ) by this run
+     * @param entry {@see ManifestEntry}
+     */
+    public void record(final ManifestEntry entry) {
+        current.put(entry.getSourcePath(), entry);
+    }
+
+    /**
+     * carryForward - keeps what the last run wrote for a source this run failed to copy, so its target is not mistaken for a stale one
+     *                and the next run copies it again. anything this run already recorded for the source wins
+     * @param sourcePath path relative to the source directory
+     */
+    public void carryForward(final String sourcePath) {
+        ManifestEntry entry = previous.get(sourcePath);
+        if(entry != null) {
+            current.putIfAbsent(sourcePath, entry);
+        }
+    }
+
+    /**
+     * staleTargets - target files written by the last run that nothing in this run maps to anymore,
+     *                either because the source is gone or because it now ends up under a different name
+     * @return paths relative to the target directory
+     */
+    public List<String> staleTargets() {
+        Set<String> currentTargets = new HashSet<>();
+        for(ManifestEntry entry : current.values()) {
+            currentTargets.add(entry.getTargetPath());
+        }
+
+        List<String> stale = new ArrayList<>();
+        for(ManifestEntry entry : previous.values()) {
+            if(!currentTargets.contains(entry.getTargetPath())) {
+                stale.add(entry.getTargetPath());
+            }
+        }
+        Collections.sort(stale);
+        return stale;
+    }
+
+    /**
+     * save - persists everything recorded during this run, written to a temp file first so a crash never leaves half a manifest behind
+     * @throws IOException in case touching the disk blows up
+     */
+    public void save() throws IOException {
+        List<String> sourcePaths = new ArrayList<>(current.keySet());
+        Collections.sort(sourcePaths);
+
+        Path tempFile = manifestFile.resolveSibling(FILE_NAME + ".tmp");
+        try(BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for(String sourcePath : sourcePaths) {
+                ManifestEntry entry = current.get(sourcePath);
+                writer.write(String.join(SEPARATOR, entry.getSourcePath(), entry.getTargetPath(), Long.toString(entry.getSize()),
+                        Long.toString(entry.getLastModified()), entry.getHash(), entry.getRules()));
+                writer.newLine();
+            }
+        }
+        Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * hash - md5 of a file, only used to tell whether contents changed so md5 is plenty
+     * @param file the file to hash
+     * @return hex encoded hash
+     * @throws IOException in case touching the disk blows up
+     */
+    public static String hash(final Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try(InputStream inputStream = Files.newInputStream(file)) {
+            byte[] buffer = new byte[HASH_BUFFER_SIZE];
+            int read;
+            while((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * newDigest - for hashing contents while they are being streamed somewhere else
+     * @return {@see MessageDigest}
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // every jvm is required to ship md5
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * toHex - turns a digest into the form stored in the manifest
+     * @param bytes the digest
+     * @return hex encoded digest
+     */
+    public static String toHex(final byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.manifest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HashCache - remembers the md5 of source files between copies, an entry is only trusted while the size and last modified
+ *             time of the file are still the same. meant to be kept around between copies of the same source.
+ *             safe to use from multiple threads.
+ */
+public class HashCache {
+
+    private static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+
+        private Entry(final long size, final long lastModified, final String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    private final Map<Path, Entry> hashes = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * hash - md5 of a file, see {@see CopyManifest.hash}
+     * @param file the file to hash
+     * @return hex encoded hash
+     * @throws IOException in case touching the disk blows up
+     */
+    public String hash(final Path file) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        Path key = file.toAbsolutePath().normalize();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+
+        Entry entry = hashes.get(key);
+        if(entry != null && entry.size == attrs.size() && entry.lastModified == lastModified) {
+            hits.incrementAndGet();
+            return entry.hash;
+        }
+        misses.incrementAndGet();
+        String hash = CopyManifest.hash(file);
+        hashes.put(key, new Entry(attrs.size(), lastModified, hash));
+        return hash;
+    }
+
+    /**
+     * put - remembers a hash that was worked out while the file was being copied anyway
+     * @param file the hashed file
+     * @param size its size when it was read
+     * @param lastModified its last modified time when it was read
+     * @param hash hex encoded md5
+     */
+    public void put(final Path file, final long size, final long lastModified, final String hash) {
+        hashes.put(file.toAbsolutePath().normalize(), new Entry(size, lastModified, hash));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
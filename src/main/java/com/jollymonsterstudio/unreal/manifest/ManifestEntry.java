@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.manifest;
+
+/**
+ * ManifestEntry - what we knew about a single source file the last time it was copied
+ */
+public class ManifestEntry {
+
+    // used when we never had a reason to hash the file, binary files are only hashed once their timestamps change
+    public static final String NO_HASH = "-";
+    // binary files are copied verbatim so their contents never depend on the rename rules
+    public static final String NO_RULES = "-";
+
+    private final String sourcePath;
+    private final String targetPath;
+    private final long size;
+    private final long lastModified;
+    private final String hash;
+    private final String rules;
+
+    /**
+     * ManifestEntry
+     * @param sourcePath - path of the file relative to the source directory
+     * @param targetPath - path of the renamed file relative to the target directory
+     * @param size - size of the source file in bytes
+     * @param lastModified - last modified time of the source file in millis
+     * @param hash - md5 of the source file contents or {@see NO_HASH}
+     * @param rules - fingerprint of the rename rules the target was written with or {@see NO_RULES}
+     */
+    public ManifestEntry(final String sourcePath, final String targetPath, final long size, final long lastModified, final String hash, final String rules) {
+        this.sourcePath = sourcePath;
+        this.targetPath = targetPath;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.hash = hash;
+        this.rules = rules;
+    }
+
+    /**
+     * isUnchanged - cheap check that only relies on file attributes, no file contents are touched
+     * @param targetPath where the file would be written this time around
+     * @param size current size of the source file
+     * @param lastModified current last modified time of the source file
+     * @param rules fingerprint of the rename rules for this run
+     * @return true if the existing target can be kept as is
+     */
+    public boolean isUnchanged(final String targetPath, final long size, final long lastModified, final String rules) {
+        return this.size == size && this.lastModified == lastModified && this.targetPath.equals(targetPath) && this.rules.equals(rules);
+    }
+
+    public boolean hasHash() {
+        return !NO_HASH.equals(hash);
+    }
+
+    public String getSourcePath() {
+        return sourcePath;
+    }
+
+    public String getTargetPath() {
+        return targetPath;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public String getRules() {
+        return rules;
+    }
+}
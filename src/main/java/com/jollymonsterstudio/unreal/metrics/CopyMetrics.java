@@ -0,0 +1,319 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.metrics;
+
+import com.jollymonsterstudio.unreal.visitor.FileType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CopyMetrics - where the time of a copy run goes, latency per {@see Phase} plus file and byte counters per {@see FileType}.
+ *               phases are timed with {@see start} / {@see record}, everything else is plain counting.
+ *               also keeps track of how long after the jvm started the run began and the first file was written,
+ *               which is what short runs ( ci, small projects ) mostly spend their time on.
+ *               safe to record from multiple threads.
+ */
+public class CopyMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CopyMetrics.class);
+
+    private static final int REPORT_VERSION = 1;
+    private static final double BYTES_PER_MB = 1024 * 1024;
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private final Map<Phase, LatencyHistogram> phases = new EnumMap<>(Phase.class);
+    private final Map<Phase, AtomicLong> phaseBytes = new EnumMap<>(Phase.class);
+    private final Map<FileType, AtomicLong> files = new EnumMap<>(FileType.class);
+    private final Map<FileType, AtomicLong> sourceBytes = new EnumMap<>(FileType.class);
+    private final Map<FileType, AtomicLong> targetBytes = new EnumMap<>(FileType.class);
+    private final Map<FileType, AtomicLong> unchangedFiles = new EnumMap<>(FileType.class);
+
+    private volatile long startedAt = 0;
+    private volatile long startNanos = 0;
+    private volatile long durationNanos = -1;
+    // jvm uptime, -1 until it happens
+    private volatile long startupMillis = -1;
+    private final AtomicLong firstFileMillis = new AtomicLong(-1);
+
+    public CopyMetrics() {
+        for(Phase phase : Phase.values()) {
+            phases.put(phase, new LatencyHistogram());
+            phaseBytes.put(phase, new AtomicLong());
+        }
+        for(FileType fileType : FileType.values()) {
+            files.put(fileType, new AtomicLong());
+            sourceBytes.put(fileType, new AtomicLong());
+            targetBytes.put(fileType, new AtomicLong());
+            unchangedFiles.put(fileType, new AtomicLong());
+        }
+    }
+
+    /**
+     * started - marks the beginning of the run
+     */
+    public void started() {
+        startedAt = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+        startupMillis = uptime();
+    }
+
+    /**
+     * finished - marks the end of the run, every outstanding copy must be done by now
+     */
+    public void finished() {
+        durationNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * start - beginning of a timed piece of work
+     * @return start time to hand to {@see record}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * record - end of a timed piece of work
+     * @param phase {@see Phase}
+     * @param startNanos what {@see start} returned
+     * @return end time, handy when one phase is immediately followed by another
+     */
+    public long record(final Phase phase, final long startNanos) {
+        return record(phase, startNanos, 0);
+    }
+
+    /**
+     * record - end of a timed piece of work that moved data
+     * @param phase {@see Phase}
+     * @param startNanos what {@see start} returned
+     * @param bytes number of bytes read from the source
+     * @return end time, handy when one phase is immediately followed by another
+     */
+    public long record(final Phase phase, final long startNanos, final long bytes) {
+        long now = System.nanoTime();
+        phases.get(phase).record(now - startNanos);
+        if(bytes > 0) {
+            phaseBytes.get(phase).addAndGet(bytes);
+        }
+        return now;
+    }
+
+    /**
+     * copied - a file made it into the target
+     * @param fileType {@see FileType}
+     * @param sourceSize size of the source file
+     * @param targetSize size of the target file, differs from the source for renamed ascii files
+     */
+    public void copied(final FileType fileType, final long sourceSize, final long targetSize) {
+        if(firstFileMillis.get() < 0) {
+            firstFileMillis.compareAndSet(-1, uptime());
+        }
+        files.get(fileType).incrementAndGet();
+        sourceBytes.get(fileType).addAndGet(sourceSize);
+        targetBytes.get(fileType).addAndGet(targetSize);
+    }
+
+    /**
+     * unchanged - an incremental run kept the target from the last run
+     * @param fileType {@see FileType}
+     */
+    public void unchanged(final FileType fileType) {
+        unchangedFiles.get(fileType).incrementAndGet();
+    }
+
+    public LatencyHistogram getPhase(final Phase phase) {
+        return phases.get(phase);
+    }
+
+    public long getPhaseBytes(final Phase phase) {
+        return phaseBytes.get(phase).get();
+    }
+
+    public long getFiles(final FileType fileType) {
+        return files.get(fileType).get();
+    }
+
+    public long getSourceBytes(final FileType fileType) {
+        return sourceBytes.get(fileType).get();
+    }
+
+    public long getTargetBytes(final FileType fileType) {
+        return targetBytes.get(fileType).get();
+    }
+
+    public long getUnchangedFiles(final FileType fileType) {
+        return unchangedFiles.get(fileType).get();
+    }
+
+    /**
+     * getStartupMillis - how long after the jvm started the run began, covers jvm and application startup
+     * @return milliseconds or -1 if the run has not started
+     */
+    public long getStartupMillis() {
+        return startupMillis;
+    }
+
+    /**
+     * getFirstFileMillis - how long after the jvm started the first file was written to a target
+     * @return milliseconds or -1 if nothing has been written
+     */
+    public long getFirstFileMillis() {
+        return firstFileMillis.get();
+    }
+
+    /**
+     * getDurationNanos - wall clock time of the run, while it is still going this is the time so far
+     * @return nanoseconds
+     */
+    public long getDurationNanos() {
+        return durationNanos >= 0 ? durationNanos : (startNanos > 0 ? System.nanoTime() - startNanos : 0);
+    }
+
+    /**
+     * getThroughput - source bytes copied per second of wall clock time
+     * @return MB/s
+     */
+    public double getThroughput() {
+        long copiedBytes = 0;
+        for(FileType fileType : FileType.values()) {
+            copiedBytes += getSourceBytes(fileType);
+        }
+        return throughput(copiedBytes, getDurationNanos());
+    }
+
+    /**
+     * logSummary - one line per phase that did any work
+     */
+    public void logSummary() {
+        LOGGER.info("Copy took {} ms at {} MB/s", TimeUnit.NANOSECONDS.toMillis(getDurationNanos()), format(getThroughput()));
+        LOGGER.info("  started {} ms after the jvm, first file written after {} ms", getStartupMillis(), getFirstFileMillis());
+        for(Phase phase : Phase.values()) {
+            LatencyHistogram histogram = phases.get(phase);
+            if(histogram.getCount() > 0) {
+                LOGGER.info("  {} : {} ops, {} ms total, p50 < {} us, p99 < {} us, max {} us", phase, histogram.getCount(),
+                        TimeUnit.NANOSECONDS.toMillis(histogram.getTotalNanos()), histogram.percentile(50), histogram.percentile(99),
+                        TimeUnit.NANOSECONDS.toMicros(histogram.getMaxNanos()));
+            }
+        }
+    }
+
+    /**
+     * writeReport - machine readable version of everything collected, written to a temp file first so readers never see half a report
+     * @param reportFile where the json report goes, parent directories are created as needed
+     * @throws IOException in case touching the disk blows up
+     */
+    public void writeReport(final Path reportFile) throws IOException {
+        Path absoluteFile = reportFile.toAbsolutePath();
+        if(absoluteFile.getParent() != null) {
+            Files.createDirectories(absoluteFile.getParent());
+        }
+
+        Path tempFile = absoluteFile.resolveSibling(absoluteFile.getFileName() + ".tmp");
+        try(BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+        }
+        Files.move(tempFile, absoluteFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * toJson - the report contents, every value is a number so there is nothing to escape
+     * @return json document
+     */
+    String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"version\": ").append(REPORT_VERSION).append(",\n");
+        json.append("  \"startedAt\": \"").append(Instant.ofEpochMilli(startedAt)).append("\",\n");
+        json.append("  \"durationMs\": ").append(TimeUnit.NANOSECONDS.toMillis(getDurationNanos())).append(",\n");
+        json.append("  \"throughputMBps\": ").append(format(getThroughput())).append(",\n");
+        json.append("  \"startupMs\": ").append(getStartupMillis()).append(",\n");
+        json.append("  \"firstFileMs\": ").append(getFirstFileMillis()).append(",\n");
+
+        json.append("  \"fileTypes\": {");
+        String separator = "\n";
+        for(FileType fileType : FileType.values()) {
+            json.append(separator).append("    \"").append(fileType).append("\": { ");
+            json.append("\"files\": ").append(getFiles(fileType));
+            json.append(", \"unchangedFiles\": ").append(getUnchangedFiles(fileType));
+            json.append(", \"sourceBytes\": ").append(getSourceBytes(fileType));
+            json.append(", \"targetBytes\": ").append(getTargetBytes(fileType));
+            json.append(" }");
+            separator = ",\n";
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"phases\": {");
+        separator = "\n";
+        for(Phase phase : Phase.values()) {
+            LatencyHistogram histogram = phases.get(phase);
+            json.append(separator).append("    \"").append(phase).append("\": {\n");
+            json.append("      \"count\": ").append(histogram.getCount()).append(",\n");
+            json.append("      \"totalMs\": ").append(format(histogram.getTotalNanos() / 1e6)).append(",\n");
+            json.append("      \"bytes\": ").append(getPhaseBytes(phase)).append(",\n");
+            json.append("      \"throughputMBps\": ").append(format(throughput(getPhaseBytes(phase), histogram.getTotalNanos()))).append(",\n");
+            for(double percentile : PERCENTILES) {
+                json.append("      \"p").append((int) percentile).append("Us\": ").append(histogram.percentile(percentile)).append(",\n");
+            }
+            json.append("      \"maxUs\": ").append(TimeUnit.NANOSECONDS.toMicros(histogram.getMaxNanos())).append(",\n");
+            // only the buckets that saw samples, keyed by their exclusive upper bound in microseconds
+            json.append("      \"histogramUs\": {");
+            String bucketSeparator = " ";
+            for(int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+                long samples = histogram.getBucket(bucket);
+                if(samples > 0) {
+                    json.append(bucketSeparator).append('"').append(LatencyHistogram.upperBound(bucket)).append("\": ").append(samples);
+                    bucketSeparator = ", ";
+                }
+            }
+            json.append(" }\n");
+            json.append("    }");
+            separator = ",\n";
+        }
+        json.append("\n  }\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private static long uptime() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    private static double throughput(final long bytes, final long nanos) {
+        if(nanos <= 0) {
+            return 0;
+        }
+        return (bytes / BYTES_PER_MB) / (nanos / 1e9);
+    }
+
+    private static String format(final double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.metrics;
+
+import com.jollymonsterstudio.unreal.visitor.FileType;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * CopyMetricsBinder - exposes {@see CopyMetrics} through micrometer, meters read the live values so they can be
+ *                     bound before the copy starts and scraped / pushed at any point during the run.
+ *                     a registry only ever keeps the first meter registered under a name, so the binder is bound once and every
+ *                     copy the process runs ( server jobs ) reports through it: counters and timers add up all copies, finished
+ *                     ones included so they never go backwards, while duration and throughput follow the copy started last.
+ */
+public class CopyMetricsBinder implements MeterBinder {
+
+    private static final String PREFIX = "kopiarka.";
+
+    // copies that are still going, guarded by this like everything below
+    private final List<CopyMetrics> running = new ArrayList<>();
+    // what finished copies added to each counter, by counter
+    private final Map<ToLongFunction<CopyMetrics>, Long> finished = new HashMap<>();
+    private CopyMetrics latest = new CopyMetrics();
+
+    /**
+     * CopyMetricsBinder - nothing to report until a copy is {@see started}
+     */
+    public CopyMetricsBinder() {
+    }
+
+    /**
+     * CopyMetricsBinder
+     * @param metrics - the metrics of a single run to expose
+     */
+    public CopyMetricsBinder(final CopyMetrics metrics) {
+        started(metrics);
+    }
+
+    /**
+     * started - a copy starts reporting through the meters
+     * @param metrics {@see CopyMetrics} of the copy
+     */
+    public synchronized void started(final CopyMetrics metrics) {
+        running.add(metrics);
+        latest = metrics;
+    }
+
+    /**
+     * finished - a copy is done, what it counted stays part of the counters
+     * @param metrics {@see CopyMetrics} passed to {@see started}
+     */
+    public synchronized void finished(final CopyMetrics metrics) {
+        if(running.remove(metrics)) {
+            for(ToLongFunction<CopyMetrics> counter : finished.keySet()) {
+                finished.merge(counter, counter.applyAsLong(metrics), Long::sum);
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        TimeGauge.builder(PREFIX + "duration", this, TimeUnit.NANOSECONDS, binder -> binder.latest().getDurationNanos())
+                .description("wall clock time of the copy run")
+                .register(registry);
+        Gauge.builder(PREFIX + "throughput", this, binder -> binder.latest().getThroughput())
+                .description("source bytes copied per second")
+                .baseUnit("MB/s")
+                .register(registry);
+
+        for(Phase phase : Phase.values()) {
+            ToLongFunction<CopyMetrics> count = counter(metrics -> metrics.getPhase(phase).getCount());
+            ToLongFunction<CopyMetrics> totalNanos = counter(metrics -> metrics.getPhase(phase).getTotalNanos());
+            FunctionTimer.builder(PREFIX + "phase", this, binder -> binder.total(count), binder -> binder.total(totalNanos), TimeUnit.NANOSECONDS)
+                    .description("time spent in each phase of the copy")
+                    .tag("phase", phase.name().toLowerCase())
+                    .register(registry);
+        }
+
+        for(FileType fileType : FileType.values()) {
+            String type = fileType.name().toLowerCase();
+            ToLongFunction<CopyMetrics> files = counter(metrics -> metrics.getFiles(fileType));
+            FunctionCounter.builder(PREFIX + "files", this, binder -> binder.total(files))
+                    .description("files written to the target")
+                    .tag("type", type)
+                    .register(registry);
+            ToLongFunction<CopyMetrics> unchangedFiles = counter(metrics -> metrics.getUnchangedFiles(fileType));
+            FunctionCounter.builder(PREFIX + "files.unchanged", this, binder -> binder.total(unchangedFiles))
+                    .description("files kept from the last incremental run")
+                    .tag("type", type)
+                    .register(registry);
+            ToLongFunction<CopyMetrics> sourceBytes = counter(metrics -> metrics.getSourceBytes(fileType));
+            FunctionCounter.builder(PREFIX + "bytes", this, binder -> binder.total(sourceBytes))
+                    .description("bytes read from the source")
+                    .baseUnit("bytes")
+                    .tags("type", type, "side", "source")
+                    .register(registry);
+            ToLongFunction<CopyMetrics> targetBytes = counter(metrics -> metrics.getTargetBytes(fileType));
+            FunctionCounter.builder(PREFIX + "bytes", this, binder -> binder.total(targetBytes))
+                    .description("bytes written to the target")
+                    .baseUnit("bytes")
+                    .tags("type", type, "side", "target")
+                    .register(registry);
+        }
+    }
+
+    private synchronized CopyMetrics latest() {
+        return latest;
+    }
+
+    private synchronized ToLongFunction<CopyMetrics> counter(final ToLongFunction<CopyMetrics> counter) {
+        finished.put(counter, 0L);
+        return counter;
+    }
+
+    /**
+     * total - a counter over every copy reported so far
+     * @param counter what to count, see {@see counter}
+     * @return finished copies plus the ones still going
+     */
+    private synchronized long total(final ToLongFunction<CopyMetrics> counter) {
+        long total = finished.get(counter);
+        for(CopyMetrics metrics : running) {
+            total += counter.applyAsLong(metrics);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram - lock free histogram with power of two microsecond buckets, bucket n holds samples
+ *                    below 2^n microseconds. coarse but constant in size and cheap enough to record every file.
+ *                    safe to record from multiple threads.
+ */
+public class LatencyHistogram {
+
+    // 2^40 microseconds is well over a week, anything slower lands in the last bucket
+    static final int BUCKETS = 41;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * record - adds a single sample
+     * @param nanos duration of the sample
+     */
+    public void record(final long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketFor(value));
+        count.incrementAndGet();
+        totalNanos.addAndGet(value);
+
+        long max = maxNanos.get();
+        while(value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * percentile - upper bound of the bucket the requested percentile falls into
+     * @param percentile between 0 and 100
+     * @return microseconds, 0 if nothing was recorded
+     */
+    public long percentile(final double percentile) {
+        long total = count.get();
+        if(total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += buckets.get(bucket);
+            if(seen >= Math.max(1, rank)) {
+                return upperBound(bucket);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * getBucket - number of samples in a single bucket
+     * @param bucket index between 0 and {@see BUCKETS}
+     * @return sample count
+     */
+    public long getBucket(final int bucket) {
+        return buckets.get(bucket);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * upperBound - exclusive upper bound of a bucket
+     * @param bucket bucket index
+     * @return microseconds
+     */
+    static long upperBound(final int bucket) {
+        return 1L << bucket;
+    }
+
+    /**
+     * bucketFor - the smallest bucket whose upper bound is above the sample
+     * @param nanos duration of the sample
+     * @return bucket index
+     */
+    static int bucketFor(final long nanos) {
+        long micros = nanos / 1000;
+        // number of bits needed to represent the value, 0 micros lands in bucket 0
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.metrics;
+
+/**
+ * Phase - the distinct pieces of work that make up a copy run
+ */
+public enum Phase {
+    // listing directories and reading file attributes, the time the walk spends between our callbacks
+    ENUMERATE,
+    // whitelist decisions for directories and files
+    FILTER,
+    // creating target directories
+    MKDIR,
+    // getting binary files into the target
+    BINARY_COPY,
+    // streaming ascii files through the renaming process
+    ASCII_REWRITE,
+    // ascii files that never mention anything the renaming process looks for, scanned and copied as is
+    ASCII_VERBATIM,
+    // renaming DefaultEngine.ini and adding its redirects
+    INI_PATCH
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.plan;
+
+import com.jollymonsterstudio.unreal.io.DiskOrder;
+import com.jollymonsterstudio.unreal.visitor.FileType;
+
+import java.nio.file.Path;
+
+/**
+ * CopyOperation - a single step of a {@see CopyPlan}, immutable
+ */
+public class CopyOperation {
+
+    private final OperationType type;
+    private final FileType fileType;
+    private final Path source;
+    private final Path target;
+    private final long size;
+    private final long lastModified;
+    private final long diskOrder;
+
+    /**
+     * CopyOperation
+     * @param type - {@see OperationType}
+     * @param fileType - {@see FileType} of the source file, null for directories
+     * @param source - the source file or directory
+     * @param target - the renamed target file or directory
+     * @param size - size of the source file in bytes, 0 for directories
+     * @param lastModified - last modified time of the source in millis
+     */
+    public CopyOperation(final OperationType type, final FileType fileType, final Path source, final Path target, final long size, final long lastModified) {
+        this(type, fileType, source, target, size, lastModified, DiskOrder.UNKNOWN);
+    }
+
+    /**
+     * CopyOperation
+     * @param type - {@see OperationType}
+     * @param fileType - {@see FileType} of the source file, null for directories
+     * @param source - the source file or directory
+     * @param target - the renamed target file or directory
+     * @param size - size of the source file in bytes, 0 for directories
+     * @param lastModified - last modified time of the source in millis
+     * @param diskOrder - where the source lives on disk, see {@see DiskOrder}
+     */
+    public CopyOperation(final OperationType type, final FileType fileType, final Path source, final Path target, final long size, final long lastModified,
+                         final long diskOrder) {
+        this.type = type;
+        this.fileType = fileType;
+        this.source = source;
+        this.target = target;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.diskOrder = diskOrder;
+    }
+
+    public OperationType getType() {
+        return type;
+    }
+
+    public FileType getFileType() {
+        return fileType;
+    }
+
+    public Path getSource() {
+        return source;
+    }
+
+    public Path getTarget() {
+        return target;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getDiskOrder() {
+        return diskOrder;
+    }
+}
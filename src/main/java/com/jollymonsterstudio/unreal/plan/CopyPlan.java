@@ -0,0 +1,238 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.plan;
+
+import com.jollymonsterstudio.unreal.manifest.CopyManifest;
+import com.jollymonsterstudio.unreal.manifest.ManifestEntry;
+import com.jollymonsterstudio.unreal.rename.SubstitutionEngine;
+import com.jollymonsterstudio.unreal.visitor.FileType;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CopyPlan - everything a copy run is going to do, built by walking the source without writing anything.
+ *            directories are kept in walk order so parents always come before their children,
+ *            files are kept in walk order as well and left to the {@see PlanExecutor} to schedule.
+ *            not thread safe while it is being built, read only afterwards.
+ */
+public class CopyPlan {
+
+    private final Path source;
+    private final Path target;
+    private final String oldProjectName;
+    private final String newProjectName;
+    private final SubstitutionEngine substitutionEngine;
+    private final String rulesFingerprint;
+    private final CopyManifest manifest;
+
+    private final List<CopyOperation> directories = new ArrayList<>();
+    private final List<CopyOperation> files = new ArrayList<>();
+    private final Map<OperationType, long[]> totals = new EnumMap<>(OperationType.class);
+    // renamed target of every planned directory, children only have to rename their own name on top of it
+    private final Map<Path, Path> targetDirectories = new HashMap<>();
+
+    /**
+     * CopyPlan
+     * @param source - the source directory
+     * @param oldProjectName - the name of the original project
+     * @param target - the target directory
+     * @param newProjectName - the new name for the project
+     * @param substitutionEngine - the rename rules applied to ascii files
+     * @param manifest - manifest of the last run when copying incrementally, null otherwise
+     */
+    public CopyPlan(final Path source, final String oldProjectName, final Path target, final String newProjectName, final SubstitutionEngine substitutionEngine, final CopyManifest manifest) {
+        this.source = source;
+        this.target = target;
+        this.oldProjectName = oldProjectName;
+        this.newProjectName = newProjectName;
+        this.substitutionEngine = substitutionEngine;
+        this.manifest = manifest;
+        // any change to the rules means every ascii file has to be written again
+        this.rulesFingerprint = CopyManifest.toHex(CopyManifest.newDigest().digest(substitutionEngine.getRules().toString().getBytes(StandardCharsets.UTF_8)));
+
+        for(OperationType type : OperationType.values()) {
+            // count, bytes
+            totals.put(type, new long[2]);
+        }
+    }
+
+    /**
+     * add - appends an operation to the plan
+     * @param operation {@see CopyOperation}
+     */
+    public void add(final CopyOperation operation) {
+        if(OperationType.MKDIR.equals(operation.getType())) {
+            directories.add(operation);
+            targetDirectories.put(operation.getSource(), operation.getTarget());
+        } else {
+            files.add(operation);
+        }
+        long[] total = totals.get(operation.getType());
+        total[0]++;
+        total[1] += operation.getSize();
+    }
+
+    public List<CopyOperation> getDirectories() {
+        return Collections.unmodifiableList(directories);
+    }
+
+    public List<CopyOperation> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    public long getCount(final OperationType type) {
+        return totals.get(type)[0];
+    }
+
+    public long getBytes(final OperationType type) {
+        return totals.get(type)[1];
+    }
+
+    /**
+     * getSourceBytes - combined size of every whitelisted file, including the ones an incremental run keeps
+     * @return size in bytes
+     */
+    public long getSourceBytes() {
+        long bytes = 0;
+        for(long[] total : totals.values()) {
+            bytes += total[1];
+        }
+        return bytes;
+    }
+
+    /**
+     * getWriteBytes - source bytes that actually have to be read and written, everything except the files being kept
+     * @return size in bytes
+     */
+    public long getWriteBytes() {
+        return getSourceBytes() - getBytes(OperationType.KEEP);
+    }
+
+    public Path getSource() {
+        return source;
+    }
+
+    public Path getTarget() {
+        return target;
+    }
+
+    public String getOldProjectName() {
+        return oldProjectName;
+    }
+
+    public String getNewProjectName() {
+        return newProjectName;
+    }
+
+    public SubstitutionEngine getSubstitutionEngine() {
+        return substitutionEngine;
+    }
+
+    /**
+     * getManifest - manifest of the last run
+     * @return {@see CopyManifest} or null when not copying incrementally
+     */
+    public CopyManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * rulesFor - rename rules only matter for files whose contents we rewrite
+     * @param fileType {@see FileType}
+     * @return the rules fingerprint stored in the manifest
+     */
+    public String rulesFor(final FileType fileType) {
+        return FileType.ASCII.equals(fileType) ? rulesFingerprint : ManifestEntry.NO_RULES;
+    }
+
+    /**
+     * resolveTarget - figure out where a source path ends up in the target, replacing any references to the old project name
+     *                 only the portion relative to the source is renamed so folders above the project are left alone.
+     *                 once the parent directory has been planned only the last name is renamed and resolved against its target
+     * @param path the source file or directory
+     * @return the renamed path within the target directory
+     */
+    public Path resolveTarget(final Path path) {
+        Path parentTarget = targetDirectories.get(path.getParent());
+        if(parentTarget != null) {
+            String name = path.getFileName().toString();
+            return parentTarget.resolve(name.contains(oldProjectName) ? name.replace(oldProjectName, newProjectName) : name);
+        }
+
+        // the root itself or a path whose parent was never planned
+        String relativePath = source.relativize(path).toString();
+        if(relativePath.contains(oldProjectName)) {
+            relativePath = relativePath.replace(oldProjectName, newProjectName);
+        }
+        return target.resolve(relativePath);
+    }
+
+    /**
+     * sourcePath - manifest key for a source file, always uses forward slashes so manifests survive a trip between platforms
+     * @param file the source file
+     * @return path relative to the source directory
+     */
+    public String sourcePath(final Path file) {
+        return source.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * targetPath - manifest value for a target file, same rules as {@see sourcePath}
+     * @param newFile the renamed target file
+     * @return path relative to the target directory
+     */
+    public String targetPath(final Path newFile) {
+        return target.relativize(newFile).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * describe - prints every operation followed by what the plan is going to cost
+     * @param out where to print the plan
+     */
+    public void describe(final PrintStream out) {
+        out.println("Copy plan: " + source + " -> " + target);
+        for(CopyOperation operation : directories) {
+            String targetPath = targetPath(operation.getTarget());
+            out.println(String.format("%-9s %10s  %s", operation.getType(), "", targetPath.isEmpty() ? "." : targetPath));
+        }
+        for(CopyOperation operation : files) {
+            String sourcePath = sourcePath(operation.getSource());
+            String targetPath = targetPath(operation.getTarget());
+            out.println(String.format("%-9s %10s  %s%s", operation.getType(), FileUtils.byteCountToDisplaySize(operation.getSize()), targetPath,
+                    sourcePath.equals(targetPath) ? "" : " <- " + sourcePath));
+        }
+
+        out.println();
+        for(OperationType type : OperationType.values()) {
+            out.println(String.format("%-9s %8d operations %10s", type, getCount(type), FileUtils.byteCountToDisplaySize(getBytes(type))));
+        }
+        // reads and writes are the bulk of the cost, binary files may end up cheaper depending on the transfer strategy
+        out.println(String.format("Estimated cost: %d directories, %d files to write, %s to read and up to %s to write",
+                getCount(OperationType.MKDIR), files.size() - getCount(OperationType.KEEP),
+                FileUtils.byteCountToDisplaySize(getWriteBytes()), FileUtils.byteCountToDisplaySize(getWriteBytes())));
+    }
+}
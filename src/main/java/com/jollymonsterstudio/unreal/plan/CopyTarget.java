@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.plan;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.Assert;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * CopyTarget - a single renamed copy of the source project, the target directory along with the new project name
+ */
+public class CopyTarget {
+
+    // separates the directory from the project name when targets come in from the properties file
+    public static final String SEPARATOR = "=>";
+
+    private final Path directory;
+    private final String projectName;
+
+    /**
+     * CopyTarget
+     * @param directory - the new location for the copied project
+     * @param projectName - the new name for the project
+     */
+    public CopyTarget(final Path directory, final String projectName) {
+        Assert.notNull(directory, "Target directory cannot be empty");
+        Assert.isTrue(StringUtils.isNotEmpty(projectName), "Target project name cannot be empty");
+
+        this.directory = directory;
+        this.projectName = projectName;
+    }
+
+    /**
+     * parse - builds a target out of the properties file format, for example C:/UE4Projects/TeamA=>TeamAProject
+     * @param target the target definition
+     * @return {@see CopyTarget}
+     */
+    public static CopyTarget parse(final String target) {
+        Assert.notNull(target, "Target cannot be null");
+        int separator = target.lastIndexOf(SEPARATOR);
+        Assert.isTrue(separator > 0, "Target must look like directory" + SEPARATOR + "name: " + target);
+
+        return new CopyTarget(Paths.get(target.substring(0, separator).trim()), target.substring(separator + SEPARATOR.length()).trim());
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    @Override
+    public String toString() {
+        return directory + SEPARATOR + projectName;
+    }
+}
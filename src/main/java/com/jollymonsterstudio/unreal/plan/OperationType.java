@@ -0,0 +1,33 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.plan;
+
+/**
+ * OperationType - what has to happen to get a single source path into the target
+ */
+public enum OperationType {
+    // create the renamed directory
+    MKDIR,
+    // copy a binary file verbatim, see {@see com.jollymonsterstudio.unreal.transfer.TransferStrategy}
+    BINARY,
+    // stream an ascii file through the renaming process
+    REWRITE,
+    // rename DefaultEngine.ini and add the game name redirects
+    INI_PATCH,
+    // incremental runs only, the target from the last run is still current
+    KEEP
+}
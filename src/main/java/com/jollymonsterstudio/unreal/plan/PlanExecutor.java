@@ -0,0 +1,855 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.plan;
+
+import com.jollymonsterstudio.unreal.ini.IniRewriter;
+import com.jollymonsterstudio.unreal.ini.IniRewrites;
+import com.jollymonsterstudio.unreal.io.AtomicFile;
+import com.jollymonsterstudio.unreal.io.DiskOrder;
+import com.jollymonsterstudio.unreal.manifest.CopyJournal;
+import com.jollymonsterstudio.unreal.manifest.CopyManifest;
+import com.jollymonsterstudio.unreal.manifest.HashCache;
+import com.jollymonsterstudio.unreal.manifest.ManifestEntry;
+import com.jollymonsterstudio.unreal.metrics.CopyMetrics;
+import com.jollymonsterstudio.unreal.metrics.Phase;
+import com.jollymonsterstudio.unreal.rename.RenameRule;
+import com.jollymonsterstudio.unreal.rename.SearchScanner;
+import com.jollymonsterstudio.unreal.rename.SubstitutionEngine;
+import com.jollymonsterstudio.unreal.transfer.BinaryTransfer;
+import com.jollymonsterstudio.unreal.transfer.ContentStore;
+import com.jollymonsterstudio.unreal.transfer.PackagePatcher;
+import com.jollymonsterstudio.unreal.transfer.RangedCopy;
+import com.jollymonsterstudio.unreal.transfer.TransferStrategy;
+import com.jollymonsterstudio.unreal.visitor.FileType;
+import me.tongfei.progressbar.ProgressBar;
+import me.tongfei.progressbar.ProgressBarStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PlanExecutor - carries out one or more {@see CopyPlan} built by the same walk. directories are created up front on the calling thread,
+ *                files are then scheduled in batches: large files on their own and biggest first so no worker is left
+ *                with a huge asset at the very end, everything else grouped by directory so each worker stays in one place.
+ *                files of a directory are read in the order they sit on disk, and a single worker with nobody to balance against
+ *                sweeps through every file in that order, see {@see DiskOrder}.
+ *                binary files that are big enough are split into ranges so idle workers can help out, see {@see RangedCopy}.
+ *                with several plans every source file is read once and written to all of its targets, so the source is
+ *                read the same amount no matter how many renamed copies are made.
+ */
+public class PlanExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PlanExecutor.class);
+
+    // files at least this big get a batch of their own
+    static final long LARGE_FILE_SIZE = 4 * 1024 * 1024;
+    // upper bound of files per batch so a single huge directory still spreads over the workers
+    static final int BATCH_SIZE = 64;
+    // default cap on bytes held in memory by large file ranges being copied
+    public static final long DEFAULT_IN_FLIGHT_BYTES = 64L * 1024 * 1024;
+    // size of the char buffer used when streaming ascii files through the renaming process
+    private static final int REWRITE_BUFFER_SIZE = 8192;
+    // progress is tracked in bytes but displayed in MB
+    private static final int PROGRESS_UPDATE_INTERVAL = 1000;
+    private static final int BYTES_PER_MB = 1024 * 1024;
+
+    /**
+     * Target - a single file operation along with the plan it belongs to
+     */
+    private static final class Target {
+        private final CopyPlan plan;
+        private final CopyOperation operation;
+        private final CopyJournal journal;
+
+        private Target(final CopyPlan plan, final CopyOperation operation, final CopyJournal journal) {
+            this.plan = plan;
+            this.operation = operation;
+            this.journal = journal;
+        }
+    }
+
+    private final List<CopyPlan> plans;
+    private final BinaryTransfer binaryTransfer;
+    // ascii files the rules would not change, never hardlinked or stored since editing the clone must not touch the source
+    private final BinaryTransfer verbatimTransfer;
+    // null when the targets do not all look for the same terms
+    private final SearchScanner searchScanner;
+    private final ContentStore contentStore;
+    private final PackagePatcher packagePatcher;
+    private final HashCache hashCache;
+    private final CopyMetrics metrics;
+    private final int threads;
+    private final boolean resume;
+
+    private ProgressBar progressBar;
+    // applying changes to targets that already hold a copy, see {@see apply}
+    private boolean mirroring;
+    private final List<CopyJournal> journals = new ArrayList<>();
+
+    private final AtomicLong targetBytes = new AtomicLong();
+    private final AtomicLong unchangedFiles = new AtomicLong();
+    private final AtomicLong copiedFiles = new AtomicLong();
+    private final AtomicLong resumedFiles = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+    private final AtomicLong verbatimFiles = new AtomicLong();
+
+    /**
+     * PlanExecutor
+     * @param plan - {@see CopyPlan}
+     * @param threads - number of worker threads copying files ( 1 or less copies everything on the calling thread )
+     * @param binaryStrategy - how binary files get into the target, see {@see TransferStrategy}
+     * @param metrics - where timings and counters of the run are collected
+     */
+    public PlanExecutor(final CopyPlan plan, final int threads, final TransferStrategy binaryStrategy, final CopyMetrics metrics) {
+        this(Collections.singletonList(plan), threads, binaryStrategy, new RangedCopy(DEFAULT_IN_FLIGHT_BYTES), null, null, null, false, metrics);
+    }
+
+    /**
+     * PlanExecutor
+     * @param plans - {@see CopyPlan} for every target, all of them built by the same walk
+     * @param threads - number of worker threads copying files ( 1 or less copies everything on the calling thread )
+     * @param binaryStrategy - how binary files get into the target, see {@see TransferStrategy}
+     * @param rangedCopy - copies large files as parallel ranges within its memory budget, share one between executors so the budget holds, see {@see RangedCopy}
+     * @param contentStore - deduplicates binary files between clones or null, see {@see ContentStore}
+     * @param packagePatcher - rewrites project references inside uasset / umap packages or null to copy them verbatim, see {@see PackagePatcher}
+     * @param hashCache - source hashes kept between runs of the same source or null, see {@see HashCache}
+     * @param resume - continue an interrupted run into the same targets, files its journal lists as complete are left alone
+     * @param metrics - where timings and counters of the run are collected
+     */
+    public PlanExecutor(final List<CopyPlan> plans, final int threads, final TransferStrategy binaryStrategy, final RangedCopy rangedCopy,
+                        final ContentStore contentStore, final PackagePatcher packagePatcher, final HashCache hashCache,
+                        final boolean resume, final CopyMetrics metrics) {
+        this.plans = plans;
+        this.binaryTransfer = new BinaryTransfer(binaryStrategy, rangedCopy, contentStore);
+        this.verbatimTransfer = new BinaryTransfer(TransferStrategy.HARDLINK.equals(binaryStrategy) ? TransferStrategy.TRANSFER : binaryStrategy);
+        this.searchScanner = sameSearches(plans) ? new SearchScanner(plans.get(0).getSubstitutionEngine(), Charset.defaultCharset()) : null;
+        this.contentStore = contentStore;
+        this.packagePatcher = packagePatcher;
+        this.hashCache = hashCache;
+        this.metrics = metrics;
+        this.threads = threads;
+        this.resume = resume;
+    }
+
+    /**
+     * execute - runs every plan and waits for them to finish
+     */
+    public void execute() {
+        mirroring = false;
+        run();
+    }
+
+    /**
+     * apply - runs plans that only cover what changed in a source since it was copied into the same targets, see {@see LiveMirror}.
+     *         directories that already exist are expected and files that already exist are replaced,
+     *         nothing is journaled and no progress is shown since a handful of files is over before anyone could read it
+     */
+    public void apply() {
+        mirroring = true;
+        run();
+    }
+
+    private void run() {
+        long totalBytes = 0;
+        for(CopyPlan plan : plans) {
+            totalBytes += plan.getSourceBytes();
+        }
+        progressBar = mirroring ? null
+                : new ProgressBar("File Copy Progress: ", totalBytes, PROGRESS_UPDATE_INTERVAL, System.err, ProgressBarStyle.ASCII, "MB", BYTES_PER_MB);
+
+        List<List<Path>> blockedDirs = new ArrayList<>();
+        for(CopyPlan plan : plans) {
+            List<Path> blocked = createDirectories(plan);
+            blockedDirs.add(blocked);
+            journals.add(mirroring || blocked.contains(plan.getTarget()) ? null : openJournal(plan));
+        }
+        // whatever made it into the journals so far survives a ctrl+c
+        Thread flushJournals = new Thread(this::flushJournals);
+        Runtime.getRuntime().addShutdownHook(flushJournals);
+
+        // gather every target of each source file, the first one stands in for the whole group when scheduling
+        List<CopyOperation> copies = new ArrayList<>();
+        Map<CopyOperation, List<Target>> targetsBySource = new IdentityHashMap<>();
+        int fileCount = plans.get(0).getFiles().size();
+        for(int index = 0; index < fileCount; index++) {
+            List<Target> targets = new ArrayList<>(plans.size());
+            for(int planIndex = 0; planIndex < plans.size(); planIndex++) {
+                CopyPlan plan = plans.get(planIndex);
+                CopyOperation operation = plan.getFiles().get(index);
+                if(isBlocked(operation.getTarget(), blockedDirs.get(planIndex))) {
+                    continue;
+                }
+                CopyJournal journal = journals.get(planIndex);
+                if(OperationType.KEEP.equals(operation.getType())) {
+                    keep(plan, operation);
+                } else if(resume && journal != null && journal.isComplete(plan.targetPath(operation.getTarget()), operation.getTarget(), operation.getLastModified())) {
+                    // written by the interrupted run
+                    resumedFiles.incrementAndGet();
+                    step(operation.getSize());
+                } else {
+                    targets.add(new Target(plan, operation, journal));
+                }
+            }
+            if(!targets.isEmpty()) {
+                copies.add(targets.get(0).operation);
+                targetsBySource.put(targets.get(0).operation, targets);
+            }
+        }
+
+        List<List<CopyOperation>> batches = schedule(copies, threads);
+        if(threads > 1) {
+            ForkJoinPool copyPool = new ForkJoinPool(threads);
+            for(List<CopyOperation> batch : batches) {
+                copyPool.execute(() -> copyBatch(batch, targetsBySource));
+            }
+            copyPool.shutdown();
+            try {
+                copyPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.error("Interrupted while waiting for file copies to finish", e);
+            }
+        } else {
+            for(List<CopyOperation> batch : batches) {
+                copyBatch(batch, targetsBySource);
+            }
+        }
+
+        metrics.finished();
+        Runtime.getRuntime().removeShutdownHook(flushJournals);
+        if(mirroring) {
+            if(failedFiles.get() > 0) {
+                LOGGER.error("{} changed files could not be copied, fix the errors above and save them again", failedFiles.get());
+            }
+            return;
+        }
+
+        progressBar.close();
+        binaryTransfer.logSummary();
+        if(verbatimFiles.get() > 0) {
+            LOGGER.info("{} ascii files had nothing to rename and were copied as is", verbatimFiles.get());
+        }
+        if(packagePatcher != null) {
+            packagePatcher.logSummary();
+        }
+
+        closeJournals();
+
+        if(contentStore != null) {
+            contentStore.logSummary();
+            try {
+                contentStore.save();
+            } catch (IOException e) {
+                LOGGER.error("Unable to save content store index, the next run will hash every binary file again", e);
+            }
+        }
+
+        for(CopyPlan plan : plans) {
+            CopyManifest manifest = plan.getManifest();
+            if(manifest == null) {
+                continue;
+            }
+            // anything the last run wrote that no longer has a source gets cleaned up
+            List<String> staleTargets = manifest.staleTargets();
+            for(String staleTarget : staleTargets) {
+                deleteStaleTarget(plan.getTarget(), plan.getTarget().resolve(staleTarget));
+            }
+            try {
+                manifest.save();
+            } catch (IOException e) {
+                LOGGER.error("Unable to save manifest, the next run will copy everything again", e);
+            }
+            LOGGER.info("Incremental copy into {}: {} files removed", plan.getTarget(), staleTargets.size());
+        }
+        if(unchangedFiles.get() > 0 || copiedFiles.get() > 0) {
+            LOGGER.info("Incremental copy: {} files unchanged, {} files copied", unchangedFiles.get(), copiedFiles.get());
+        }
+        if(resume) {
+            LOGGER.info("Resumed copy: {} files already completed by the interrupted run", resumedFiles.get());
+        }
+    }
+
+    /**
+     * openJournal - starts the journal of a target, or picks it up again when resuming
+     * @param plan {@see CopyPlan}
+     * @return {@see CopyJournal} or null if the target can not be journaled, in which case the copy goes ahead regardless
+     */
+    private CopyJournal openJournal(final CopyPlan plan) {
+        // a journal left by a different source or different rules never matches
+        String run = String.join("\t", plan.getSource().toAbsolutePath().toString(), plan.getNewProjectName(), plan.rulesFor(FileType.ASCII));
+        try {
+            return resume ? CopyJournal.resume(plan.getTarget(), run) : CopyJournal.create(plan.getTarget(), run);
+        } catch (IOException e) {
+            LOGGER.error("Unable to open journal in {} an interrupted copy will have to start over", plan.getTarget(), e);
+            return null;
+        }
+    }
+
+    private void flushJournals() {
+        for(CopyJournal journal : journals) {
+            if(journal != null) {
+                try {
+                    journal.flush();
+                } catch (IOException e) {
+                    LOGGER.error("Unable to flush journal", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * closeJournals - a complete run has nothing left to resume, otherwise the journals stay so the failed files can be retried
+     */
+    private void closeJournals() {
+        for(CopyJournal journal : journals) {
+            if(journal == null) {
+                continue;
+            }
+            try {
+                if(failedFiles.get() == 0) {
+                    journal.complete();
+                } else {
+                    journal.close();
+                }
+            } catch (IOException e) {
+                LOGGER.error("Unable to close journal", e);
+            }
+        }
+        if(failedFiles.get() > 0) {
+            LOGGER.error("{} files could not be copied, fix the errors above and run again with --resume to copy only what is missing", failedFiles.get());
+        }
+    }
+
+    /**
+     * getFailedFiles - files that could not be copied, only complete once {@see execute} or {@see apply} returns
+     * @return count of source files
+     */
+    public long getFailedFiles() {
+        return failedFiles.get();
+    }
+
+    /**
+     * getTargetBytes - combined size of everything written to the targets, only complete once {@see execute} returns
+     * @return size in bytes
+     */
+    public long getTargetBytes() {
+        return targetBytes.get();
+    }
+
+    /**
+     * schedule - orders the copies for execution, see the class description
+     * @param copies file operations in walk order
+     * @param threads number of worker threads the batches are spread over
+     * @return batches in the order they should be started
+     */
+    static List<List<CopyOperation>> schedule(final List<CopyOperation> copies, final int threads) {
+        if(threads > 1 || copies.isEmpty() || copies.get(0).getDiskOrder() == DiskOrder.UNKNOWN) {
+            return schedule(copies);
+        }
+
+        // a single worker is never left waiting on anyone, one sweep across the disk beats any balancing
+        List<CopyOperation> sweep = new ArrayList<>(copies);
+        sweep.sort(Comparator.comparingLong(CopyOperation::getDiskOrder));
+        return Collections.singletonList(sweep);
+    }
+
+    /**
+     * schedule - orders the copies for execution over several workers, see the class description
+     * @param copies file operations in walk order
+     * @return batches in the order they should be started
+     */
+    static List<List<CopyOperation>> schedule(final List<CopyOperation> copies) {
+        List<CopyOperation> largeFiles = new ArrayList<>();
+        Map<Path, List<CopyOperation>> byDirectory = new LinkedHashMap<>();
+        for(CopyOperation operation : copies) {
+            if(operation.getSize() >= LARGE_FILE_SIZE) {
+                largeFiles.add(operation);
+            } else {
+                byDirectory.computeIfAbsent(operation.getTarget().getParent(), key -> new ArrayList<>()).add(operation);
+            }
+        }
+
+        List<List<CopyOperation>> batches = new ArrayList<>();
+        largeFiles.sort(Comparator.comparingLong(CopyOperation::getSize).reversed());
+        for(CopyOperation operation : largeFiles) {
+            List<CopyOperation> batch = new ArrayList<>(1);
+            batch.add(operation);
+            batches.add(batch);
+        }
+
+        List<List<CopyOperation>> smallBatches = new ArrayList<>();
+        for(List<CopyOperation> directory : byDirectory.values()) {
+            // disk order where the filesystem tells us, otherwise name order keeps neighbouring files together more often than not
+            directory.sort(Comparator.comparingLong(CopyOperation::getDiskOrder).thenComparing(operation -> operation.getSource().getFileName().toString()));
+            for(int start = 0; start < directory.size(); start += BATCH_SIZE) {
+                smallBatches.add(new ArrayList<>(directory.subList(start, Math.min(start + BATCH_SIZE, directory.size()))));
+            }
+        }
+        smallBatches.sort(Comparator.comparingLong(PlanExecutor::batchBytes).reversed());
+        batches.addAll(smallBatches);
+        return batches;
+    }
+
+    private static long batchBytes(final List<CopyOperation> batch) {
+        long bytes = 0;
+        for(CopyOperation operation : batch) {
+            bytes += operation.getSize();
+        }
+        return bytes;
+    }
+
+    /**
+     * createDirectories - creates every directory of a plan, parents come first so a plain createDirectory is enough
+     *                     a single mkdir per directory, nothing about the source directory is looked at again
+     * @param plan {@see CopyPlan}
+     * @return target directories that already existed outside of an incremental run, nothing gets written into those
+     */
+    private List<Path> createDirectories(final CopyPlan plan) {
+        List<Path> blockedDirs = new ArrayList<>();
+        for(CopyOperation operation : plan.getDirectories()) {
+            if(isBlocked(operation.getTarget(), blockedDirs)) {
+                continue;
+            }
+            long start = metrics.start();
+            try{
+                Files.createDirectory(operation.getTarget());
+            }
+            catch (FileAlreadyExistsException ioException){
+                // an incremental or resumed copy expects the directories from the last run to still be there
+                if(plan.getManifest() == null && !resume && !mirroring) {
+                    LOGGER.error("Dir or file already exist: {}", ioException.getLocalizedMessage());
+                    //log it and move on
+                    blockedDirs.add(operation.getTarget());
+                }
+            }
+            catch (IOException ioException){
+                LOGGER.error(ioException.getLocalizedMessage(), ioException);
+                blockedDirs.add(operation.getTarget());
+            }
+            finally {
+                metrics.record(Phase.MKDIR, start);
+            }
+        }
+        return blockedDirs;
+    }
+
+    private boolean isBlocked(final Path path, final List<Path> blockedDirs) {
+        for(Path blockedDir : blockedDirs) {
+            if(path.startsWith(blockedDir)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void copyBatch(final List<CopyOperation> batch, final Map<CopyOperation, List<Target>> targetsBySource) {
+        for(CopyOperation operation : batch) {
+            List<Target> targets = targetsBySource.get(operation);
+            try {
+                copyFile(targets);
+            } finally {
+                step(operation.getSize() * targets.size());
+            }
+        }
+    }
+
+    /**
+     * keep - an incremental run found the target from the last run to still be current
+     * @param plan {@see CopyPlan} the operation belongs to
+     * @param operation {@see CopyOperation}
+     */
+    private void keep(final CopyPlan plan, final CopyOperation operation) {
+        plan.getManifest().record(plan.getManifest().previous(plan.sourcePath(operation.getSource())));
+        unchangedFiles.incrementAndGet();
+        metrics.unchanged(operation.getFileType());
+        step(operation.getSize());
+    }
+
+    private void step(final long bytes) {
+        if(progressBar != null) {
+            progressBar.stepBy(bytes);
+        }
+    }
+
+    /**
+     * copyFile - copy a single whitelisted file to all of its targets, renaming the contents of ascii files along the way
+     *            the source is read once no matter how many targets there are
+     *            safe to call from any thread as long as the parent directories of the new files already exist
+     * @param allTargets every target of the same source file, see {@see Target}
+     */
+    private void copyFile(final List<Target> allTargets) {
+        CopyOperation first = allTargets.get(0).operation;
+        Path file = first.getSource();
+        FileType fileType = first.getFileType();
+        long size = first.getSize();
+        try{
+            // timestamps moved but the contents may not have, hashing is a lot cheaper than writing the file again
+            List<Target> targets = new ArrayList<>(allTargets.size());
+            String[] sourceHash = new String[1];
+            for(Target target : allTargets) {
+                CopyManifest manifest = target.plan.getManifest();
+                if(manifest != null) {
+                    String unchangedHash = unchangedContentHash(target, sourceHash);
+                    if(unchangedHash != null) {
+                        recordCopy(target, unchangedHash);
+                        unchangedFiles.incrementAndGet();
+                        metrics.unchanged(fileType);
+                        continue;
+                    }
+                }
+                targets.add(target);
+            }
+            if(targets.isEmpty()) {
+                return;
+            }
+
+            String hash = ManifestEntry.NO_HASH;
+            boolean hashNeeded = false;
+            for(Target target : targets) {
+                hashNeeded |= target.plan.getManifest() != null;
+            }
+
+            long start = metrics.start();
+            // ascii files that never mention anything the rules look for would come out exactly as they went in
+            // a raw scan is a lot cheaper than decoding, renaming and encoding them, and the copy can skip user space altogether
+            MessageDigest digest = hashNeeded ? CopyManifest.newDigest() : null;
+            boolean verbatim = searchScanner != null && OperationType.REWRITE.equals(first.getType()) && !searchScanner.containsAny(file, digest);
+
+            // clear out the copy from the last run so the new one can take its place, or whatever the interrupted run left behind
+            // rewritten files replace it atomically once they are complete, so the old copy stays intact until then
+            if(FileType.BINARY.equals(fileType) || verbatim) {
+                for(Target target : targets) {
+                    if(target.plan.getManifest() != null || resume || mirroring) {
+                        Files.deleteIfExists(target.operation.getTarget());
+                    }
+                }
+            }
+
+            long[] newSizes = new long[targets.size()];
+            if(verbatim) {
+                List<Path> newFiles = new ArrayList<>(targets.size());
+                for(Target target : targets) {
+                    newFiles.add(target.operation.getTarget());
+                }
+                verbatimTransfer.transferAll(file, newFiles);
+                if(digest != null) {
+                    hash = CopyManifest.toHex(digest.digest());
+                }
+                Arrays.fill(newSizes, size);
+                verbatimFiles.incrementAndGet();
+                metrics.record(Phase.ASCII_VERBATIM, start, size);
+            } else if(FileType.BINARY.equals(fileType)) {
+                // packages referencing the project get patched copies, everything else is copied over verbatim
+                // names of a different length can never be patched, no point reading the package for them
+                boolean patchable = false;
+                if(packagePatcher != null && packagePatcher.appliesTo(file)) {
+                    for(Target target : targets) {
+                        patchable |= packagePatcher.canPatch(target.plan.getNewProjectName());
+                    }
+                }
+                long[] references = patchable ? packagePatcher.find(file) : null;
+                List<Path> newFiles = new ArrayList<>(targets.size());
+                for(Target target : targets) {
+                    if(references != null && references.length > 0 && packagePatcher.canPatch(target.plan.getNewProjectName())) {
+                        packagePatcher.copy(file, target.operation.getTarget(), references, target.plan.getNewProjectName());
+                    } else {
+                        newFiles.add(target.operation.getTarget());
+                    }
+                }
+                if(!newFiles.isEmpty()) {
+                    binaryTransfer.transferAll(file, newFiles);
+                }
+                Arrays.fill(newSizes, size);
+                metrics.record(Phase.BINARY_COPY, start, size);
+            } else if(targets.size() == 1) {
+                // ascii files are renamed as they stream from the source to the new location
+                Target target = targets.get(0);
+                hash = rewriteFile(file, target, hashNeeded);
+                newSizes[0] = Files.size(target.operation.getTarget());
+                metrics.record(OperationType.INI_PATCH.equals(first.getType()) ? Phase.INI_PATCH : Phase.ASCII_REWRITE, start, size);
+            } else if(OperationType.INI_PATCH.equals(first.getType())) {
+                // the few config files with section rewrites are small, each target simply streams them again
+                for(int i = 0; i < targets.size(); i++) {
+                    Target target = targets.get(i);
+                    String targetHash = rewriteFile(file, target, hashNeeded && i == 0);
+                    hash = i == 0 ? targetHash : hash;
+                    newSizes[i] = Files.size(target.operation.getTarget());
+                }
+                metrics.record(Phase.INI_PATCH, start, size);
+            } else {
+                // the source is streamed once and every target renames the same characters on their way through
+                hash = rewriteFiles(file, targets, hashNeeded);
+                for(int i = 0; i < targets.size(); i++) {
+                    newSizes[i] = Files.size(targets.get(i).operation.getTarget());
+                }
+                metrics.record(Phase.ASCII_REWRITE, start, size);
+            }
+            if(hashCache != null && !ManifestEntry.NO_HASH.equals(hash)) {
+                // hashed on the way through, the next run of the same source does not have to read it again
+                hashCache.put(file, size, first.getLastModified(), hash);
+            }
+
+            for(int i = 0; i < targets.size(); i++) {
+                Target target = targets.get(i);
+                targetBytes.addAndGet(newSizes[i]);
+                metrics.copied(fileType, size, newSizes[i]);
+
+                if(target.plan.getManifest() != null) {
+                    recordCopy(target, hash);
+                    copiedFiles.incrementAndGet();
+                }
+                if(target.journal != null) {
+                    target.journal.record(target.plan.targetPath(target.operation.getTarget()), newSizes[i], target.operation.getLastModified(),
+                            Files.getLastModifiedTime(target.operation.getTarget()).toMillis());
+                }
+            }
+        }
+        catch (IOException | RuntimeException exception){
+            //log it and move, anything unchecked would otherwise take the rest of the batch down with it on a pool thread
+            LOGGER.error(exception.getLocalizedMessage(), exception);
+            failedFiles.incrementAndGet();
+            // whatever the last run left in the targets is still better than nothing, it must not be cleaned up as stale
+            for(Target target : allTargets) {
+                if(target.plan.getManifest() != null) {
+                    target.plan.getManifest().carryForward(target.plan.sourcePath(file));
+                }
+            }
+        }
+    }
+
+    /**
+     * sameSearches - whether every target looks for the same terms, in which case a single scan tells whether any of them renames a file
+     * @param plans {@see CopyPlan} for every target
+     * @return true if a file without hits for the first plan has none for the others either
+     */
+    private static boolean sameSearches(final List<CopyPlan> plans) {
+        List<String> searches = searches(plans.get(0).getSubstitutionEngine());
+        for(CopyPlan plan : plans) {
+            if(!searches.equals(searches(plan.getSubstitutionEngine()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> searches(final SubstitutionEngine substitutionEngine) {
+        List<String> searches = new ArrayList<>();
+        for(RenameRule rule : substitutionEngine.getRules()) {
+            searches.add(rule.getSearch());
+        }
+        return searches;
+    }
+
+    /**
+     * rewriteFile - streams an ascii file from the source straight into the new file, replacing old project names on the way through
+     *               memory use stays at a single fixed size buffer no matter how large the file is
+     *               every rename rule is applied in the same pass, see {@see SubstitutionEngine}
+     *               config files with section rewrites go through {@see IniRewriter} instead, which only holds on to the section it rewrites
+     *               the source is read once and the target written once, through a temp file that is renamed into place when complete
+     * @param file the source file
+     * @param target {@see Target} with the renamed file and its rename rules
+     * @param hashNeeded whether the source contents have to be hashed for the manifest
+     * @return md5 of the source contents when running incrementally, otherwise {@see ManifestEntry.NO_HASH}
+     * @throws IOException in case touching the disk blows up
+     */
+    private String rewriteFile(final Path file, final Target target, final boolean hashNeeded) throws IOException {
+        SubstitutionEngine substitutionEngine = target.plan.getSubstitutionEngine();
+        // hash the source on the way through so incremental runs never have to read it twice
+        MessageDigest digest = hashNeeded ? CopyManifest.newDigest() : null;
+        AtomicFile.write(target.operation.getTarget(), outputStream -> {
+            try(InputStream inputStream = digest != null ? new DigestInputStream(Files.newInputStream(file), digest) : Files.newInputStream(file)) {
+                if(OperationType.INI_PATCH.equals(target.operation.getType())) {
+                    rewriteIni(inputStream, outputStream, target);
+                    return;
+                }
+                try(Reader reader = new InputStreamReader(inputStream, Charset.defaultCharset());
+                    Writer writer = substitutionEngine.newWriter(new BufferedWriter(new OutputStreamWriter(outputStream, Charset.defaultCharset()), REWRITE_BUFFER_SIZE))) {
+                    char[] buffer = new char[REWRITE_BUFFER_SIZE];
+                    int read;
+                    while((read = reader.read(buffer)) != -1) {
+                        writer.write(buffer, 0, read);
+                    }
+                }
+            }
+        });
+        return digest != null ? CopyManifest.toHex(digest.digest()) : ManifestEntry.NO_HASH;
+    }
+
+    /**
+     * rewriteFiles - {@see rewriteFile} for several targets at once, the source is read a single time and every buffer of it goes
+     *                through the rename rules of each target. memory use is a fixed size buffer per target no matter how large the file is
+     * @param file the source file
+     * @param targets {@see Target} every renamed file of the source
+     * @param hashNeeded whether the source contents have to be hashed for the manifest
+     * @return md5 of the source contents when running incrementally, otherwise {@see ManifestEntry.NO_HASH}
+     * @throws IOException in case touching the disk blows up, no temp file is left behind
+     */
+    private String rewriteFiles(final Path file, final List<Target> targets, final boolean hashNeeded) throws IOException {
+        MessageDigest digest = hashNeeded ? CopyManifest.newDigest() : null;
+        List<Path> tempFiles = new ArrayList<>(targets.size());
+        List<Writer> writers = new ArrayList<>(targets.size());
+        try {
+            try(InputStream inputStream = digest != null ? new DigestInputStream(Files.newInputStream(file), digest) : Files.newInputStream(file);
+                Reader reader = new InputStreamReader(inputStream, Charset.defaultCharset())) {
+                for(Target target : targets) {
+                    Path tempFile = AtomicFile.tempFor(target.operation.getTarget());
+                    tempFiles.add(tempFile);
+                    OutputStream outputStream = Files.newOutputStream(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                    writers.add(target.plan.getSubstitutionEngine().newWriter(
+                            new BufferedWriter(new OutputStreamWriter(outputStream, Charset.defaultCharset()), REWRITE_BUFFER_SIZE)));
+                }
+                char[] buffer = new char[REWRITE_BUFFER_SIZE];
+                int read;
+                while((read = reader.read(buffer)) != -1) {
+                    for(Writer writer : writers) {
+                        writer.write(buffer, 0, read);
+                    }
+                }
+            }
+            // pushes out whatever was still pending a possible match
+            for(Writer writer : writers) {
+                writer.close();
+            }
+            for(int i = 0; i < targets.size(); i++) {
+                AtomicFile.commit(tempFiles.get(i), targets.get(i).operation.getTarget());
+            }
+        } catch (IOException | RuntimeException e) {
+            for(Writer writer : writers) {
+                try {
+                    writer.close();
+                } catch (IOException closeException) {
+                    e.addSuppressed(closeException);
+                }
+            }
+            for(Path tempFile : tempFiles) {
+                Files.deleteIfExists(tempFile);
+            }
+            throw e;
+        }
+        return digest != null ? CopyManifest.toHex(digest.digest()) : ManifestEntry.NO_HASH;
+    }
+
+    /**
+     * rewriteIni - renames a config file line by line and applies its section rewrites, see {@see IniRewrites}
+     * @param inputStream the source contents
+     * @param outputStream where the renamed contents go
+     * @param target {@see Target}
+     * @throws IOException in case touching the disk blows up
+     */
+    private void rewriteIni(final InputStream inputStream, final OutputStream outputStream, final Target target) throws IOException {
+        CopyPlan plan = target.plan;
+        IniRewriter iniRewriter = new IniRewriter(plan.getSubstitutionEngine(),
+                IniRewrites.forFile(target.operation.getSource().getFileName().toString(), plan.getOldProjectName(), plan.getNewProjectName()));
+        Reader reader = new InputStreamReader(inputStream, Charset.defaultCharset());
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, Charset.defaultCharset()), REWRITE_BUFFER_SIZE);
+        iniRewriter.rewrite(reader, writer);
+    }
+
+    /**
+     * unchangedContentHash - checks whether a file that was touched since the last run actually has different contents
+     * @param target {@see Target}
+     * @param sourceHash hash of the source shared between all targets of the same file, filled in the first time it is needed
+     * @return the hash of the unchanged source or null if the file needs to be copied again
+     * @throws IOException in case touching the disk blows up
+     */
+    private String unchangedContentHash(final Target target, final String[] sourceHash) throws IOException {
+        CopyPlan plan = target.plan;
+        CopyOperation operation = target.operation;
+        ManifestEntry previous = plan.getManifest().previous(plan.sourcePath(operation.getSource()));
+        if(previous == null || previous.getSize() != operation.getSize() || !previous.getRules().equals(plan.rulesFor(operation.getFileType()))
+                || !previous.getTargetPath().equals(plan.targetPath(operation.getTarget())) || !Files.exists(operation.getTarget())) {
+            return null;
+        }
+
+        String previousHash = previous.getHash();
+        if(!previous.hasHash()) {
+            // binary files are copied verbatim so the existing target tells us what the source used to be
+            if(!FileType.BINARY.equals(operation.getFileType())) {
+                return null;
+            }
+            previousHash = CopyManifest.hash(operation.getTarget());
+        }
+
+        if(sourceHash[0] == null) {
+            sourceHash[0] = hashCache != null ? hashCache.hash(operation.getSource()) : CopyManifest.hash(operation.getSource());
+        }
+        return sourceHash[0].equals(previousHash) ? sourceHash[0] : null;
+    }
+
+    /**
+     * recordCopy - remembers what we wrote so the next incremental run can skip it
+     * @param target {@see Target}
+     * @param hash md5 of the source contents or {@see ManifestEntry.NO_HASH}
+     */
+    private void recordCopy(final Target target, final String hash) {
+        CopyPlan plan = target.plan;
+        CopyOperation operation = target.operation;
+        plan.getManifest().record(new ManifestEntry(plan.sourcePath(operation.getSource()), plan.targetPath(operation.getTarget()), operation.getSize(),
+                operation.getLastModified(), hash, plan.rulesFor(operation.getFileType())));
+    }
+
+    /**
+     * deleteStaleTarget - removes a file left behind by the last run along with any directories that end up empty because of it
+     * @param target the target directory
+     * @param staleFile the target file to remove
+     */
+    private void deleteStaleTarget(final Path target, final Path staleFile) {
+        try {
+            Files.deleteIfExists(staleFile);
+            Path parent = staleFile.getParent();
+            while(parent != null && !parent.equals(target) && parent.startsWith(target) && isEmptyDirectory(parent)) {
+                Files.delete(parent);
+                parent = parent.getParent();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Unable to remove stale file: {}", staleFile, e);
+        }
+    }
+
+    private boolean isEmptyDirectory(final Path dir) throws IOException {
+        try(DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            return !entries.iterator().hasNext();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.rename;
+
+import org.springframework.util.Assert;
+
+/**
+ * RenameRule - a single search / replacement pair applied to the contents of ascii files
+ */
+public class RenameRule {
+
+    // separates the search term from the replacement when rules come in from the properties file
+    public static final String SEPARATOR = "=>";
+
+    private final String search;
+    private final String replacement;
+
+    /**
+     * RenameRule
+     * @param search - the exact ( case sensitive ) text to look for
+     * @param replacement - what the text gets replaced with
+     */
+    public RenameRule(final String search, final String replacement) {
+        Assert.hasLength(search, "Rename rule search term cannot be empty");
+        Assert.notNull(replacement, "Rename rule replacement cannot be null");
+
+        this.search = search;
+        this.replacement = replacement;
+    }
+
+    /**
+     * parse - builds a rule out of the properties file format, for example OldModule=>NewModule
+     * @param rule the rule definition
+     * @return {@see RenameRule}
+     */
+    public static RenameRule parse(final String rule) {
+        Assert.notNull(rule, "Rename rule cannot be null");
+        int separator = rule.indexOf(SEPARATOR);
+        Assert.isTrue(separator > 0, "Rename rule must look like search" + SEPARATOR + "replacement: " + rule);
+
+        return new RenameRule(rule.substring(0, separator), rule.substring(separator + SEPARATOR.length()));
+    }
+
+    public String getSearch() {
+        return search;
+    }
+
+    public String getReplacement() {
+        return replacement;
+    }
+
+    @Override
+    public String toString() {
+        return search + SEPARATOR + replacement;
+    }
+}
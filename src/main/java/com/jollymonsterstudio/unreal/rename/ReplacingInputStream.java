@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.rename;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * ReplacingInputStream - the pull side of {@see ReplacingWriter}, for consumers that want to read renamed contents rather than
+ *                        have them written to them ( archive entries ). every read decodes the next chunk of the source, runs it
+ *                        through the writer and hands out whatever came out the other end, so memory use stays at a chunk
+ *                        no matter how large the file is. not thread safe.
+ */
+public class ReplacingInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Chunk - renamed bytes waiting to be read, exposes its buffer so nothing is copied on the way out
+     */
+    private static final class Chunk extends ByteArrayOutputStream {
+        private Chunk() {
+            super(CHUNK_SIZE);
+        }
+
+        private byte[] buffer() {
+            return buf;
+        }
+    }
+
+    private final Reader reader;
+    private final Writer writer;
+    private final Chunk chunk = new Chunk();
+    private final char[] chars = new char[CHUNK_SIZE];
+
+    private int position = 0;
+    private boolean endOfInput = false;
+
+    /**
+     * ReplacingInputStream
+     * @param in - the original contents, closed along with this stream
+     * @param charset - what the contents are decoded and encoded with
+     * @param engine - the compiled rules to apply
+     */
+    public ReplacingInputStream(final InputStream in, final Charset charset, final SubstitutionEngine engine) {
+        this.reader = new InputStreamReader(in, charset);
+        this.writer = engine.newWriter(new OutputStreamWriter(chunk, charset));
+    }
+
+    @Override
+    public int read() throws IOException {
+        return fill() ? chunk.buffer()[position++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+        if(!fill()) {
+            return -1;
+        }
+        int read = Math.min(len, chunk.size() - position);
+        System.arraycopy(chunk.buffer(), position, b, off, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return chunk.size() - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * fill - renames source chunks until there is something to read, a chunk may well rename to nothing while a match is pending
+     * @return false once everything has been read
+     * @throws IOException in case touching the disk blows up
+     */
+    private boolean fill() throws IOException {
+        while(position == chunk.size()) {
+            if(endOfInput) {
+                return false;
+            }
+            chunk.reset();
+            position = 0;
+            int read = reader.read(chars);
+            if(read == -1) {
+                // hands out whatever the writer was still holding on to
+                writer.close();
+                endOfInput = true;
+            } else {
+                writer.write(chars, 0, read);
+                writer.flush();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.rename;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * ReplacingWriter - replaces search terms while characters stream through it so we never need the whole file in memory.
+ *                   only the characters that could still be part of a match are held back, which means matches that
+ *                   span two writes are still picked up. see {@see SubstitutionEngine} for how matches are resolved.
+ */
+public class ReplacingWriter extends FilterWriter {
+
+    private final SubstitutionEngine engine;
+    private final int longestSearch;
+
+    // characters we have seen but not written out yet, everything before emitted has already been handled
+    private char[] pending;
+    private int length = 0;
+    private int emitted = 0;
+    private int scanned = 0;
+
+    private int state = SubstitutionEngine.ROOT;
+    // best match seen so far that we can not commit to yet as a better one could still show up
+    private int candidate = SubstitutionEngine.NO_MATCH;
+    private int candidateStart = 0;
+
+    /**
+     * ReplacingWriter
+     * @param out - where the replaced content ends up
+     * @param engine - the compiled rules to apply
+     */
+    public ReplacingWriter(final Writer out, final SubstitutionEngine engine) {
+        super(out);
+        this.engine = engine;
+        this.longestSearch = engine.longestSearch();
+        this.pending = new char[longestSearch * 2];
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+        ensureCapacity(1);
+        pending[length++] = (char) c;
+        scan(false);
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+        ensureCapacity(len);
+        System.arraycopy(cbuf, off, pending, length, len);
+        length += len;
+        scan(false);
+    }
+
+    @Override
+    public void write(final String str, final int off, final int len) throws IOException {
+        ensureCapacity(len);
+        str.getChars(off, off + len, pending, length);
+        length += len;
+        scan(false);
+    }
+
+    /**
+     * flush - pushes out whatever has already been replaced, anything that could still be part of a match stays pending until close
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        scan(true);
+        out.close();
+    }
+
+    /**
+     * scan - runs the pending characters through the automaton and writes out everything that can no longer change
+     * @param endOfInput true once no more characters are coming so the tail can be flushed
+     * @throws IOException in case touching the disk blows up
+     */
+    private void scan(final boolean endOfInput) throws IOException {
+        while(scanned < length || (endOfInput && candidate != SubstitutionEngine.NO_MATCH)) {
+            if(scanned < length) {
+                state = engine.next(state, pending[scanned]);
+                int rule = engine.match(state);
+                if(rule != SubstitutionEngine.NO_MATCH) {
+                    int start = scanned - engine.searchLength(rule) + 1;
+                    if(candidate == SubstitutionEngine.NO_MATCH || start < candidateStart
+                            || (start == candidateStart && engine.searchLength(rule) > engine.searchLength(candidate))) {
+                        candidate = rule;
+                        candidateStart = start;
+                    }
+                }
+                scanned++;
+            }
+
+            // once we are a full search term past the candidate nothing can start earlier or run longer
+            if(candidate != SubstitutionEngine.NO_MATCH && (scanned - candidateStart >= longestSearch || (endOfInput && scanned == length))) {
+                out.write(pending, emitted, candidateStart - emitted);
+                out.write(engine.replacement(candidate));
+
+                // start over right after the match, replaced text is never examined again
+                emitted = candidateStart + engine.searchLength(candidate);
+                scanned = emitted;
+                state = SubstitutionEngine.ROOT;
+                candidate = SubstitutionEngine.NO_MATCH;
+            }
+        }
+
+        // write out everything that can no longer be part of a match
+        int safe;
+        if(candidate != SubstitutionEngine.NO_MATCH) {
+            safe = candidateStart;
+        } else if(endOfInput) {
+            safe = length;
+        } else {
+            safe = scanned - longestSearch + 1;
+        }
+        if(safe > emitted) {
+            out.write(pending, emitted, safe - emitted);
+            emitted = safe;
+        }
+        compact();
+    }
+
+    private void compact() {
+        if(emitted > 0) {
+            System.arraycopy(pending, emitted, pending, 0, length - emitted);
+            length -= emitted;
+            scanned -= emitted;
+            candidateStart -= emitted;
+            emitted = 0;
+        }
+    }
+
+    private void ensureCapacity(final int extra) {
+        if(length + extra > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, length + extra));
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.rename;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SearchScanner - tells whether a file contains any search term of a {@see SubstitutionEngine} without decoding it, files that do
+ *                 not would come out of the renaming process exactly as they went in so they can be copied as is.
+ *                 search terms are encoded once and looked for in the raw bytes eight at a time: every word is compared against
+ *                 the first byte of each term in a handful of long operations and only the spots that hit are checked in full.
+ *                 larger files are memory mapped, smaller ones are read into a buffer kept per thread since a mapping costs
+ *                 more than the read for them.
+ *                 may report a match that decoding would not produce ( multi byte charsets ), which only costs a regular rewrite,
+ *                 but never misses one. immutable and safe to share between threads.
+ */
+public class SearchScanner {
+
+    // below this a plain read beats setting up and tearing down a mapping
+    static final int MAP_THRESHOLD = 64 * 1024;
+    // how much of a file is mapped at a time
+    private static final long MAP_WINDOW = 256L * 1024 * 1024;
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private static final ThreadLocal<ByteBuffer> READ_BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAP_THRESHOLD).order(ByteOrder.LITTLE_ENDIAN));
+
+    private final byte[][] searches;
+    // the first byte of every search term repeated across a long, one entry per distinct first byte
+    private final long[] firstBytes;
+    private final int longestSearch;
+    private final boolean enabled;
+
+    /**
+     * SearchScanner
+     * @param substitutionEngine - the rules whose search terms we look for
+     * @param charset - the charset the renaming process decodes files with
+     */
+    public SearchScanner(final SubstitutionEngine substitutionEngine, final Charset charset) {
+        CharsetEncoder encoder = charset.newEncoder();
+        List<byte[]> encoded = new ArrayList<>();
+        Set<Long> first = new LinkedHashSet<>();
+        boolean encodable = true;
+        int longest = 1;
+        for(RenameRule rule : substitutionEngine.getRules()) {
+            String search = rule.getSearch();
+            if(search.isEmpty() || !encoder.canEncode(search)) {
+                encodable = false;
+                break;
+            }
+            byte[] bytes = search.getBytes(charset);
+            encoded.add(bytes);
+            first.add((bytes[0] & 0xFFL) * ONES);
+            longest = Math.max(longest, bytes.length);
+        }
+
+        this.searches = encoded.toArray(new byte[0][]);
+        this.firstBytes = new long[first.size()];
+        int index = 0;
+        for(Long mask : first) {
+            firstBytes[index++] = mask;
+        }
+        this.longestSearch = longest;
+        // a term the file could not even contain in this charset leaves no way to tell, every file goes through the rules
+        this.enabled = encodable;
+    }
+
+    /**
+     * containsAny - whether a file contains any of the search terms
+     * @param file the file
+     * @param digest fed the whole contents when nothing is found so callers do not have to read the file again, may be null
+     * @return true if the file has to go through the renaming process
+     * @throws IOException in case touching the disk blows up
+     */
+    public boolean containsAny(final Path file, final MessageDigest digest) throws IOException {
+        if(!enabled) {
+            return true;
+        }
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size <= MAP_THRESHOLD) {
+                ByteBuffer buffer = READ_BUFFERS.get();
+                buffer.clear();
+                while(buffer.hasRemaining() && channel.read(buffer) != -1) {
+                    // keep going, a file that grew since we looked at its size is cut off like every other copy of it
+                }
+                buffer.flip();
+                if(containsAny(buffer, buffer.limit())) {
+                    return true;
+                }
+                if(digest != null) {
+                    digest.update(buffer.array(), 0, buffer.limit());
+                }
+                return false;
+            }
+
+            for(long position = 0; position < size; position += MAP_WINDOW) {
+                // windows overlap by the longest term so nothing is missed on the edges
+                long length = Math.min(MAP_WINDOW + longestSearch - 1, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                window.order(ByteOrder.LITTLE_ENDIAN);
+                int limit = (int) Math.min(MAP_WINDOW, length);
+                if(containsAny(window, limit)) {
+                    return true;
+                }
+                if(digest != null) {
+                    ByteBuffer contents = window.duplicate();
+                    contents.limit(limit);
+                    digest.update(contents);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * containsAny - looks for a search term starting anywhere before the limit, terms may run past it up to the end of the buffer
+     * @param buffer the bytes to look at in little endian order
+     * @param limit where the last search may start
+     * @return true if a term was found
+     */
+    boolean containsAny(final ByteBuffer buffer, final int limit) {
+        int length = buffer.limit();
+        int i = 0;
+        for(; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long word = buffer.getLong(i);
+            for(long firstByte : firstBytes) {
+                // classic has zero byte trick on the xor, the lowest flagged byte is always a real hit while the ones above
+                // it may be borrow noise, every flagged spot is checked in full anyway
+                long candidates = word ^ firstByte;
+                candidates = (candidates - ONES) & ~candidates & HIGHS;
+                while(candidates != 0) {
+                    if(matchesAt(buffer, i + (Long.numberOfTrailingZeros(candidates) >>> 3), length)) {
+                        return true;
+                    }
+                    candidates &= candidates - 1;
+                }
+            }
+        }
+        for(; i < limit; i++) {
+            if(matchesAt(buffer, i, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesAt(final ByteBuffer buffer, final int index, final int length) {
+        for(byte[] search : searches) {
+            if(index + search.length > length || buffer.get(index) != search[0]) {
+                continue;
+            }
+            int matched = 1;
+            while(matched < search.length && buffer.get(index + matched) == search[matched]) {
+                matched++;
+            }
+            if(matched == search.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.rename;
+
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * SubstitutionEngine - a precompiled Aho-Corasick automaton over a table of {@see RenameRule}s so every rule is applied
+ *                      in a single linear pass over the content, no matter how many rules there are.
+ *
+ *                      matches are resolved the same way every time:
+ *                      - the match starting earliest wins
+ *                      - when two matches start at the same spot the longest one wins
+ *                      - when the same search term shows up more than once the first rule in the table wins
+ *                      - replaced text is never examined again
+ *
+ *                      the engine is immutable and can be shared between threads, all scanning state lives in {@see ReplacingWriter}
+ */
+public class SubstitutionEngine {
+
+    static final int ROOT = 0;
+    static final int NO_MATCH = -1;
+
+    // ascii gets a dense lookup, anything else falls back to the map
+    private static final int DENSE_CHARS = 128;
+
+    private final List<RenameRule> rules;
+    private final int longestSearch;
+
+    private final int[] denseClasses = new int[DENSE_CHARS];
+    private final Map<Character, Integer> sparseClasses = new HashMap<>();
+    private final int alphabetSize;
+
+    // transitions[state * alphabetSize + charClass] -> next state, char class 0 means the char is not part of any rule
+    private final int[] transitions;
+    // longest rule that ends at each state, either directly or through its failure links
+    private final int[] matches;
+
+    /**
+     * SubstitutionEngine
+     * @param rules - rename rules in order of priority, duplicate search terms after the first one are ignored
+     */
+    public SubstitutionEngine(final List<RenameRule> rules) {
+        Assert.notNull(rules, "Rename rules cannot be null");
+
+        // drop duplicate search terms so the first rule for a term always wins
+        Set<String> searches = new LinkedHashSet<>();
+        List<RenameRule> uniqueRules = new ArrayList<>();
+        for(RenameRule rule : rules) {
+            if(searches.add(rule.getSearch())) {
+                uniqueRules.add(rule);
+            }
+        }
+        this.rules = Collections.unmodifiableList(uniqueRules);
+
+        // figure out which characters actually matter
+        int classes = 1;
+        int longest = 1;
+        for(RenameRule rule : this.rules) {
+            String search = rule.getSearch();
+            longest = Math.max(longest, search.length());
+            for(int i = 0; i < search.length(); i++) {
+                char c = search.charAt(i);
+                if(charClass(c) == 0) {
+                    if(c < DENSE_CHARS) {
+                        denseClasses[c] = classes++;
+                    } else {
+                        sparseClasses.put(c, classes++);
+                    }
+                }
+            }
+        }
+        this.alphabetSize = classes;
+        this.longestSearch = longest;
+
+        // build the trie
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> output = new ArrayList<>();
+        trie.add(newNode());
+        output.add(NO_MATCH);
+        for(int ruleIndex = 0; ruleIndex < this.rules.size(); ruleIndex++) {
+            String search = this.rules.get(ruleIndex).getSearch();
+            int state = ROOT;
+            for(int i = 0; i < search.length(); i++) {
+                int charClass = charClass(search.charAt(i));
+                if(trie.get(state)[charClass] == ROOT) {
+                    trie.get(state)[charClass] = trie.size();
+                    trie.add(newNode());
+                    output.add(NO_MATCH);
+                }
+                state = trie.get(state)[charClass];
+            }
+            output.set(state, ruleIndex);
+        }
+
+        // breadth first over the trie to turn it into a full transition table using failure links
+        int states = trie.size();
+        this.transitions = new int[states * alphabetSize];
+        this.matches = new int[states];
+        int[] failure = new int[states];
+
+        Queue<Integer> queue = new ArrayDeque<>();
+        matches[ROOT] = NO_MATCH;
+        for(int charClass = 1; charClass < alphabetSize; charClass++) {
+            int child = trie.get(ROOT)[charClass];
+            transitions[charClass] = child;
+            if(child != ROOT) {
+                failure[child] = ROOT;
+                queue.add(child);
+            }
+        }
+        while(!queue.isEmpty()) {
+            int state = queue.poll();
+            // a rule ending exactly here is always longer than anything reachable through the failure link
+            matches[state] = output.get(state) != NO_MATCH ? output.get(state) : matches[failure[state]];
+            for(int charClass = 1; charClass < alphabetSize; charClass++) {
+                int child = trie.get(state)[charClass];
+                if(child != ROOT) {
+                    failure[child] = transitions[failure[state] * alphabetSize + charClass];
+                    transitions[state * alphabetSize + charClass] = child;
+                    queue.add(child);
+                } else {
+                    transitions[state * alphabetSize + charClass] = transitions[failure[state] * alphabetSize + charClass];
+                }
+            }
+        }
+    }
+
+    /**
+     * forProject - the rules we always apply when renaming a project, followed by any extra rules from the properties file
+     * @param oldProjectName the name of the original project
+     * @param newProjectName the new name for our project
+     * @param extraRules any additional rules in search=>replacement form, may be null
+     * @return {@see SubstitutionEngine}
+     */
+    public static SubstitutionEngine forProject(final String oldProjectName, final String newProjectName, final String[] extraRules) {
+        List<RenameRule> rules = new ArrayList<>();
+        rules.add(new RenameRule(oldProjectName, newProjectName));
+        // the export macro is upper case so it never matches the project name itself
+        rules.add(new RenameRule(oldProjectName.toUpperCase() + "_API", newProjectName.toUpperCase() + "_API"));
+        if(extraRules != null) {
+            for(String extraRule : extraRules) {
+                rules.add(RenameRule.parse(extraRule));
+            }
+        }
+        return new SubstitutionEngine(rules);
+    }
+
+    /**
+     * newWriter - wraps a writer so the rules get applied as content streams through it
+     * @param out where the replaced content ends up
+     * @return {@see ReplacingWriter}
+     */
+    public Writer newWriter(final Writer out) {
+        return new ReplacingWriter(out, this);
+    }
+
+    /**
+     * replace - convenience for content that is already in memory
+     * @param content the content to run through the rules
+     * @return the replaced content
+     */
+    public String replace(final String content) {
+        StringWriter result = new StringWriter(content.length());
+        try(Writer writer = newWriter(result)) {
+            writer.write(content);
+        } catch (IOException e) {
+            // string writers do not throw
+            throw new UncheckedIOException(e);
+        }
+        return result.toString();
+    }
+
+    public List<RenameRule> getRules() {
+        return rules;
+    }
+
+    int next(final int state, final char c) {
+        return transitions[state * alphabetSize + charClass(c)];
+    }
+
+    int match(final int state) {
+        return matches[state];
+    }
+
+    int searchLength(final int rule) {
+        return rules.get(rule).getSearch().length();
+    }
+
+    String replacement(final int rule) {
+        return rules.get(rule).getReplacement();
+    }
+
+    int longestSearch() {
+        return longestSearch;
+    }
+
+    private int charClass(final char c) {
+        if(c < DENSE_CHARS) {
+            return denseClasses[c];
+        }
+        Integer charClass = sparseClasses.get(c);
+        return charClass != null ? charClass : 0;
+    }
+
+    private int[] newNode() {
+        return new int[Math.max(alphabetSize, 1)];
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.server;
+
+import com.jollymonsterstudio.unreal.service.CopyRequest;
+import com.jollymonsterstudio.unreal.service.CopyResult;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * CloneJob - a single copy submitted to the {@see CloneServer} and how far along it is.
+ *            status changes come from the job thread while the server reads them, so they are kept volatile.
+ */
+public class CloneJob {
+
+    public enum Status {
+        // waiting for a free job thread
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    private final long id;
+    private final CopyRequest request;
+    // every directory the job writes to, two active jobs never share one
+    private final List<Path> targets;
+    private final Instant submitted = Instant.now();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant started;
+    private volatile Instant finished;
+    private volatile CopyResult result;
+
+    /**
+     * CloneJob
+     * @param id - unique within the server
+     * @param request - {@see CopyRequest}
+     * @param targets - absolute target directories of the request
+     */
+    public CloneJob(final long id, final CopyRequest request, final List<Path> targets) {
+        this.id = id;
+        this.request = request;
+        this.targets = targets;
+    }
+
+    void started() {
+        started = Instant.now();
+        status = Status.RUNNING;
+    }
+
+    void finished(final CopyResult result) {
+        this.result = result;
+        finished = Instant.now();
+        status = result.isSucceeded() ? Status.SUCCEEDED : Status.FAILED;
+        done.countDown();
+    }
+
+    /**
+     * await - blocks until the job is done
+     * @throws InterruptedException in case the waiting thread is interrupted
+     */
+    void await() throws InterruptedException {
+        done.await();
+    }
+
+    /**
+     * isActive - whether the job is still going to write to its targets
+     * @return true while queued or running
+     */
+    public boolean isActive() {
+        return status == Status.QUEUED || status == Status.RUNNING;
+    }
+
+    /**
+     * describe - the job in the same key=value form jobs are submitted in
+     * @return properties in a stable order
+     */
+    public Map<String, String> describe() {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("job.id", Long.toString(id));
+        properties.put("job.status", status.name());
+        properties.put("job.submitted", submitted.toString());
+        properties.put("job.started", started != null ? started.toString() : "");
+        properties.put("job.finished", finished != null ? finished.toString() : "");
+        properties.put("project.source.directory", request.getSourceDir());
+        properties.put("project.target.directory", request.getTargetDir());
+        properties.put("project.target.name", request.getTargetName());
+        CopyResult copyResult = result;
+        if(copyResult != null) {
+            properties.put("job.message", copyResult.getMessage());
+            properties.put("job.files", Long.toString(copyResult.getFiles()));
+            properties.put("job.source.bytes", Long.toString(copyResult.getSourceBytes()));
+            properties.put("job.target.bytes", Long.toString(copyResult.getTargetBytes()));
+        }
+        return properties;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public CopyRequest getRequest() {
+        return request;
+    }
+
+    public List<Path> getTargets() {
+        return targets;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public CopyResult getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.server;
+
+import com.jollymonsterstudio.unreal.plan.CopyTarget;
+import com.jollymonsterstudio.unreal.service.CopyCaches;
+import com.jollymonsterstudio.unreal.service.CopyRequest;
+import com.jollymonsterstudio.unreal.service.CopyResult;
+import com.jollymonsterstudio.unreal.service.CopyService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CloneServer - keeps the tool running and takes copies as jobs over http so repeated clones skip jvm and spring startup
+ *               and share warm caches, see {@see CopyCaches}. only listens on the loopback interface since a job can delete
+ *               any directory the process can write to. loopback alone keeps nobody out, any web page open in a browser on the
+ *               same machine can post to it, so every request has to carry the token the server made up when it started in its
+ *               X-Clone-Token header and requests a browser sent on behalf of a page ( they carry an Origin header ) are refused.
+ *
+ *               POST /jobs             submit a job, the body lists properties in the application.properties format and anything
+ *                                      left out comes from the application properties. add ?wait=true to only answer once the
+ *                                      job is done, failed jobs then answer 500 so curl --fail notices
+ *               GET  /jobs             every job the server remembers, one per line
+ *               GET  /jobs/{id}        a single job as key=value lines
+ *
+ *               jobs run on a fixed number of job threads, two active jobs never write to the same target directory.
+ */
+@Component
+public class CloneServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CloneServer.class);
+
+    private static final String JOBS_PATH = "/jobs";
+    static final String TOKEN_HEADER = "X-Clone-Token";
+    // finished jobs beyond this are forgotten, oldest first
+    private static final int FINISHED_JOBS_KEPT = 100;
+
+    @Value("${config.server.port:0}")
+    private int port;
+
+    @Value("${config.server.jobs:1}")
+    private int jobThreads;
+
+    @Value("${config.server.token.file:}")
+    private String tokenFile;
+
+    private final CopyService copyService;
+    private final CopyCaches caches = new CopyCaches();
+
+    private final AtomicLong nextId = new AtomicLong(1);
+    // guarded by itself, in submission order
+    private final Map<Long, CloneJob> jobs = new LinkedHashMap<>();
+
+    // made up on start, every request has to carry it
+    private String token;
+
+    private HttpServer httpServer;
+    private ExecutorService httpExecutor;
+    private ExecutorService executor;
+
+    public CloneServer(@Autowired final CopyService copyService) {
+        this.copyService = copyService;
+    }
+
+    /**
+     * isEnabled - whether the tool runs as a server instead of copying once
+     * @return true if a port has been configured
+     */
+    public boolean isEnabled() {
+        return port > 0;
+    }
+
+    /**
+     * start - starts listening, returns right away. the http threads keep the application alive until it is shut down
+     * @throws IOException in case the port can not be bound or the token file can not be written
+     */
+    public void start() throws IOException {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        StringBuilder hex = new StringBuilder();
+        for(byte b : secret) {
+            hex.append(String.format("%02x", b));
+        }
+        token = hex.toString();
+        if(StringUtils.isNotEmpty(tokenFile)) {
+            writeToken(Paths.get(tokenFile));
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, jobThreads), runnable -> new Thread(runnable, "clone-job-" + threadCount.incrementAndGet()));
+
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext(JOBS_PATH, this::handle);
+        httpExecutor = Executors.newCachedThreadPool();
+        httpServer.setExecutor(httpExecutor);
+        httpServer.start();
+        LOGGER.info("Clone server listening on http://{}:{}{} with {} job thread(s)", InetAddress.getLoopbackAddress().getHostAddress(), getPort(), JOBS_PATH, Math.max(1, jobThreads));
+        if(StringUtils.isNotEmpty(tokenFile)) {
+            LOGGER.info("Send the token in {} as the {} header of every request", Paths.get(tokenFile).toAbsolutePath(), TOKEN_HEADER);
+        } else {
+            LOGGER.info("Send {}: {} with every request", TOKEN_HEADER, token);
+        }
+    }
+
+    /**
+     * writeToken - leaves the token where only the user running the server can read it
+     * @param file where the token goes, replaced if it exists
+     * @throws IOException in case the file can not be written
+     */
+    private void writeToken(final Path file) throws IOException {
+        Files.deleteIfExists(file);
+        if(file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            // created without any access for others so there is no moment where the token can be read
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file);
+        }
+        Files.write(file, token.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * getPort - the port the server listens on, only differs from config.server.port when the system picked it
+     * @return port or 0 when not started
+     */
+    public int getPort() {
+        return httpServer != null ? httpServer.getAddress().getPort() : 0;
+    }
+
+    /**
+     * getToken - what every request has to send in its X-Clone-Token header
+     * @return token or null when not started
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * stop - stops taking jobs, queued jobs are dropped while a running copy is left to its journal in case the process goes down with it
+     */
+    public void stop() {
+        if(httpServer == null) {
+            return;
+        }
+        httpServer.stop(0);
+        httpExecutor.shutdown();
+        List<Runnable> dropped = executor.shutdownNow();
+        if(StringUtils.isNotEmpty(tokenFile)) {
+            try {
+                Files.deleteIfExists(Paths.get(tokenFile));
+            } catch (IOException e) {
+                LOGGER.warn("Unable to delete token file {}", tokenFile, e);
+            }
+        }
+        LOGGER.info("Clone server stopped, {} queued job(s) dropped", dropped.size());
+    }
+
+    /**
+     * submit - queues a job
+     * @param properties the job, see {@see CopyRequest}
+     * @return {@see CloneJob}
+     * @throws IllegalArgumentException in case the job is missing its target or clashes with an active job
+     */
+    public CloneJob submit(final Properties properties) {
+        CopyRequest request = copyService.request(properties);
+        if(StringUtils.isEmpty(request.getTargetDir())) {
+            throw new IllegalArgumentException("Target directory cannot be empty");
+        }
+        List<Path> targets = new ArrayList<>();
+        targets.add(Paths.get(request.getTargetDir()).toAbsolutePath().normalize());
+        for(String extraTarget : request.getExtraTargets()) {
+            if(StringUtils.isNotBlank(extraTarget)) {
+                targets.add(CopyTarget.parse(extraTarget).getDirectory().toAbsolutePath().normalize());
+            }
+        }
+
+        CloneJob job;
+        synchronized(jobs) {
+            for(CloneJob other : jobs.values()) {
+                if(other.isActive()) {
+                    for(Path target : targets) {
+                        if(other.getTargets().contains(target)) {
+                            throw new IllegalStateException("Job " + other.getId() + " is already copying to " + target);
+                        }
+                    }
+                }
+            }
+            job = new CloneJob(nextId.getAndIncrement(), request, targets);
+            jobs.put(job.getId(), job);
+            forgetFinishedJobs();
+        }
+
+        CloneJob submitted = job;
+        executor.execute(() -> run(submitted));
+        LOGGER.info("Job {} queued: {} to {}", job.getId(), request.getSourceDir(), request.getTargetDir());
+        return job;
+    }
+
+    private void run(final CloneJob job) {
+        job.started();
+        LOGGER.info("Job {} started", job.getId());
+        CopyResult result;
+        try {
+            result = copyService.copy(job.getRequest(), caches);
+        } catch (RuntimeException e) {
+            LOGGER.error("Job {} blew up", job.getId(), e);
+            result = CopyResult.failed(e.getLocalizedMessage());
+        }
+        job.finished(result);
+        LOGGER.info("Job {} {}: {}", job.getId(), job.getStatus(), result.getMessage());
+    }
+
+    // guarded by jobs
+    private void forgetFinishedJobs() {
+        int finished = 0;
+        for(CloneJob job : jobs.values()) {
+            finished += job.isActive() ? 0 : 1;
+        }
+        Iterator<CloneJob> iterator = jobs.values().iterator();
+        while(finished > FINISHED_JOBS_KEPT && iterator.hasNext()) {
+            if(!iterator.next().isActive()) {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+
+    /**
+     * handle - routes a single http request
+     * @param exchange {@see HttpExchange}
+     * @throws IOException in case the client goes away
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if(exchange.getRequestHeaders().containsKey("Origin")) {
+                // a browser running some web page, never a client of ours
+                send(exchange, 403, "Requests from web pages are not accepted\n");
+            } else if(!isAuthorized(exchange.getRequestHeaders().getFirst(TOKEN_HEADER))) {
+                send(exchange, 401, "Missing or wrong " + TOKEN_HEADER + " header\n");
+            } else if(JOBS_PATH.equals(path) || (JOBS_PATH + "/").equals(path)) {
+                if("POST".equals(method)) {
+                    handleSubmit(exchange);
+                } else if("GET".equals(method)) {
+                    handleList(exchange);
+                } else {
+                    send(exchange, 405, "Use GET or POST\n");
+                }
+            } else if("GET".equals(method)) {
+                handleJob(exchange, path.substring(JOBS_PATH.length() + 1));
+            } else {
+                send(exchange, 405, "Use GET\n");
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to handle {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            send(exchange, 500, e.getLocalizedMessage() + "\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean isAuthorized(final String sentToken) {
+        // compared in constant time so the token can not be guessed byte by byte
+        return sentToken != null && MessageDigest.isEqual(token.getBytes(StandardCharsets.US_ASCII), sentToken.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void handleSubmit(final HttpExchange exchange) throws IOException {
+        Properties properties = new Properties();
+        try(InputStreamReader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        CloneJob job;
+        try {
+            job = submit(properties);
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, e.getLocalizedMessage() + "\n");
+            return;
+        } catch (IllegalStateException e) {
+            send(exchange, 409, e.getLocalizedMessage() + "\n");
+            return;
+        }
+
+        String query = exchange.getRequestURI().getQuery();
+        if(query != null && query.contains("wait=true")) {
+            try {
+                job.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            send(exchange, job.getStatus() == CloneJob.Status.SUCCEEDED ? 200 : 500, format(job.describe()));
+        } else {
+            send(exchange, 202, format(job.describe()));
+        }
+    }
+
+    private void handleList(final HttpExchange exchange) throws IOException {
+        StringBuilder body = new StringBuilder();
+        synchronized(jobs) {
+            for(CloneJob job : jobs.values()) {
+                body.append(job.getId()).append('\t').append(job.getStatus()).append('\t')
+                        .append(job.getRequest().getSourceDir()).append('\t').append(job.getRequest().getTargetDir()).append('\n');
+            }
+        }
+        send(exchange, 200, body.toString());
+    }
+
+    private void handleJob(final HttpExchange exchange, final String id) throws IOException {
+        CloneJob job = null;
+        if(StringUtils.isNumeric(id)) {
+            synchronized(jobs) {
+                job = jobs.get(Long.parseLong(id));
+            }
+        }
+        if(job == null) {
+            send(exchange, 404, "No such job " + id + "\n");
+        } else {
+            send(exchange, 200, format(job.describe()));
+        }
+    }
+
+    private static String format(final Map<String, String> properties) {
+        StringBuilder body = new StringBuilder();
+        for(Map.Entry<String, String> entry : properties.entrySet()) {
+            body.append(entry.getKey()).append('=').append(entry.getValue().replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        }
+        return body.toString();
+    }
+
+    private static void send(final HttpExchange exchange, final int status, final String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        // a length of 0 would mean a chunked response, -1 is how an empty one is announced
+        exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+        try(OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.service;
+
+import com.jollymonsterstudio.unreal.manifest.HashCache;
+import com.jollymonsterstudio.unreal.transfer.ContentStore;
+import com.jollymonsterstudio.unreal.visitor.ListingCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CopyCaches - everything worth keeping between copies when the process stays alive, see {@see com.jollymonsterstudio.unreal.server.CloneServer}.
+ *              every cache checks sizes and timestamps before trusting what it has, so sources can change between copies.
+ *              safe to share between copies running at the same time.
+ */
+public class CopyCaches {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CopyCaches.class);
+
+    private final ListingCache listings = new ListingCache();
+    private final HashCache hashes = new HashCache();
+    // opened once, their index stays in memory instead of being read for every copy
+    private final Map<Path, ContentStore> contentStores = new ConcurrentHashMap<>();
+
+    public ListingCache getListings() {
+        return listings;
+    }
+
+    public HashCache getHashes() {
+        return hashes;
+    }
+
+    /**
+     * contentStore - the store in a directory, opened the first time it is asked for
+     * @param root the store directory
+     * @return {@see ContentStore}
+     * @throws IOException in case the directory can not be created
+     */
+    public ContentStore contentStore(final Path root) throws IOException {
+        Path key = root.toAbsolutePath().normalize();
+        ContentStore contentStore = contentStores.get(key);
+        if(contentStore == null) {
+            synchronized(contentStores) {
+                contentStore = contentStores.get(key);
+                if(contentStore == null) {
+                    contentStore = ContentStore.open(key);
+                    contentStores.put(key, contentStore);
+                }
+            }
+        }
+        return contentStore;
+    }
+
+    /**
+     * logSummary - reports how much the caches saved so far
+     */
+    public void logSummary() {
+        LOGGER.info("Warm caches: {} directories listed / {} reused, {} source hashes computed / {} reused, {} content stores open",
+                listings.getListed(), listings.getReused(), hashes.getMisses(), hashes.getHits(), contentStores.size());
+    }
+}
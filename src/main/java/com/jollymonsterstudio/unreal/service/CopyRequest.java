@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.service;
+
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.util.StringUtils;
+
+import java.util.Properties;
+
+/**
+ * CopyRequest - what to copy where, read from the same properties as application.properties.
+ *               a single run takes everything from the application properties while jobs submitted to the server only list
+ *               what differs for them, anything left out falls back to the application properties.
+ *               settings of the copy machinery itself ( threads, buffers, transfer strategy, dedup store, ... ) are shared by
+ *               every copy and stay with {@see CopyService}
+ */
+public class CopyRequest {
+
+    static final String SOURCE_DIRECTORY = "project.source.directory";
+    static final String SOURCE_NAME = "project.source.name";
+    static final String TARGET_DIRECTORY = "project.target.directory";
+    static final String TARGET_NAME = "project.target.name";
+    static final String EXTRA_TARGETS = "project.extra.targets";
+    static final String WHITELIST_DIRECTORIES = "whitelist.directories";
+    static final String WHITELIST_BINARY = "whitelist.extension.binary";
+    static final String WHITELIST_ASCII = "whitelist.extension.ascii";
+    static final String WHITELIST_SNIFF = "whitelist.extension.sniff";
+    static final String RENAME_RULES = "rename.rules";
+    static final String FORCE_DELETE = "config.force.delete";
+    static final String INCREMENTAL = "config.incremental";
+    static final String DRY_RUN = "config.dry.run";
+    static final String RESUME = "config.resume";
+    static final String ARCHIVE_FORMAT = "config.archive.format";
+
+    private final String sourceDir;
+    private final String sourceName;
+    private final String targetDir;
+    private final String targetName;
+    private final String[] extraTargets;
+    private final String[] whitelistDirs;
+    private final String[] whitelistBinary;
+    private final String[] whitelistAscii;
+    private final boolean sniffExtensions;
+    private final String[] renameRules;
+    private final boolean forceDelete;
+    private final boolean incremental;
+    private final boolean dryRun;
+    private final boolean resume;
+    private final String archiveFormat;
+
+    private CopyRequest(final Properties overrides, final PropertyResolver defaults) {
+        this.sourceDir = get(overrides, defaults, SOURCE_DIRECTORY, "");
+        this.sourceName = get(overrides, defaults, SOURCE_NAME, "");
+        this.targetDir = get(overrides, defaults, TARGET_DIRECTORY, "");
+        this.targetName = get(overrides, defaults, TARGET_NAME, "");
+        this.extraTargets = getList(overrides, defaults, EXTRA_TARGETS);
+        this.whitelistDirs = getList(overrides, defaults, WHITELIST_DIRECTORIES);
+        this.whitelistBinary = getList(overrides, defaults, WHITELIST_BINARY);
+        this.whitelistAscii = getList(overrides, defaults, WHITELIST_ASCII);
+        this.sniffExtensions = Boolean.parseBoolean(get(overrides, defaults, WHITELIST_SNIFF, "false"));
+        this.renameRules = getList(overrides, defaults, RENAME_RULES);
+        this.forceDelete = Boolean.parseBoolean(get(overrides, defaults, FORCE_DELETE, "false"));
+        this.incremental = Boolean.parseBoolean(get(overrides, defaults, INCREMENTAL, "false"));
+        this.dryRun = Boolean.parseBoolean(get(overrides, defaults, DRY_RUN, "false"));
+        this.resume = Boolean.parseBoolean(get(overrides, defaults, RESUME, "false"));
+        this.archiveFormat = get(overrides, defaults, ARCHIVE_FORMAT, "");
+    }
+
+    /**
+     * from - reads a request
+     * @param overrides properties that take precedence, for example the body of a submitted job
+     * @param defaults where everything else comes from, normally the application environment
+     * @return {@see CopyRequest}
+     */
+    public static CopyRequest from(final Properties overrides, final PropertyResolver defaults) {
+        return new CopyRequest(overrides, defaults);
+    }
+
+    private static String get(final Properties overrides, final PropertyResolver defaults, final String key, final String fallback) {
+        String value = overrides.getProperty(key);
+        return (value != null ? value : defaults.getProperty(key, fallback)).trim();
+    }
+
+    // comma separated the same way spring splits them for @Value arrays
+    private static String[] getList(final Properties overrides, final PropertyResolver defaults, final String key) {
+        return StringUtils.trimArrayElements(StringUtils.commaDelimitedListToStringArray(get(overrides, defaults, key, "")));
+    }
+
+    public String getSourceDir() {
+        return sourceDir;
+    }
+
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    public String getTargetDir() {
+        return targetDir;
+    }
+
+    public String getTargetName() {
+        return targetName;
+    }
+
+    public String[] getExtraTargets() {
+        return extraTargets;
+    }
+
+    public String[] getWhitelistDirs() {
+        return whitelistDirs;
+    }
+
+    public String[] getWhitelistBinary() {
+        return whitelistBinary;
+    }
+
+    public String[] getWhitelistAscii() {
+        return whitelistAscii;
+    }
+
+    public boolean isSniffExtensions() {
+        return sniffExtensions;
+    }
+
+    public String[] getRenameRules() {
+        return renameRules;
+    }
+
+    public boolean isForceDelete() {
+        return forceDelete;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    public String getArchiveFormat() {
+        return archiveFormat;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.service;
+
+/**
+ * CopyResult - how a copy went, returned instead of shutting down so the server can report it back
+ */
+public class CopyResult {
+
+    private final boolean succeeded;
+    private final String message;
+    private final long files;
+    private final long sourceBytes;
+    private final long targetBytes;
+
+    private CopyResult(final boolean succeeded, final String message, final long files, final long sourceBytes, final long targetBytes) {
+        this.succeeded = succeeded;
+        this.message = message;
+        this.files = files;
+        this.sourceBytes = sourceBytes;
+        this.targetBytes = targetBytes;
+    }
+
+    /**
+     * succeeded - the copy ran to the end
+     * @param message what happened
+     * @param files number of whitelisted source files
+     * @param sourceBytes combined size of the whitelisted source files
+     * @param targetBytes combined size of everything written to the targets
+     * @return {@see CopyResult}
+     */
+    public static CopyResult succeeded(final String message, final long files, final long sourceBytes, final long targetBytes) {
+        return new CopyResult(true, message, files, sourceBytes, targetBytes);
+    }
+
+    /**
+     * failed - the copy stopped before it was done
+     * @param message why
+     * @return {@see CopyResult}
+     */
+    public static CopyResult failed(final String message) {
+        return new CopyResult(false, message, 0, 0, 0);
+    }
+
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    public long getSourceBytes() {
+        return sourceBytes;
+    }
+
+    public long getTargetBytes() {
+        return targetBytes;
+    }
+}
@@ -16,16 +16,31 @@
 
 package com.jollymonsterstudio.unreal.service;
 
+import com.jollymonsterstudio.unreal.archive.ArchiveFormat;
+import com.jollymonsterstudio.unreal.archive.ArchiveWriter;
+import com.jollymonsterstudio.unreal.metrics.CopyMetricsBinder;
+import com.jollymonsterstudio.unreal.plan.CopyPlan;
+import com.jollymonsterstudio.unreal.plan.CopyTarget;
+import com.jollymonsterstudio.unreal.plan.PlanExecutor;
+import com.jollymonsterstudio.unreal.transfer.ContentStore;
+import com.jollymonsterstudio.unreal.transfer.PackagePatcher;
+import com.jollymonsterstudio.unreal.transfer.RangedCopy;
+import com.jollymonsterstudio.unreal.transfer.TransferStrategy;
 import com.jollymonsterstudio.unreal.visitor.UnrealFileVisitor;
+import com.jollymonsterstudio.unreal.watch.LiveMirror;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ExitCodeGenerator;
 import org.springframework.boot.SpringApplication;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
@@ -33,127 +48,406 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
 
 @Service
 public class CopyService {
     private static final Logger LOGGER = LoggerFactory.getLogger(CopyService.class);
 
-    @Value("${project.source.directory}")
-    private String sourceDir;
+    // what to copy where comes from a CopyRequest, everything below is shared by every copy
 
-    @Value("${project.source.name}")
-    private String sourceName;
+    @Value("${config.copy.threads:1}")
+    private int copyThreads;
 
-    @Value("${project.target.directory}")
-    private String targetDir;
+    @Value("${config.copy.buffer.mb:64}")
+    private long copyBufferMb;
 
-    @Value("${project.target.name}")
-    private String targetName;
+    @Value("${config.dedup.directory:}")
+    private String dedupDir;
 
-    @Value("${config.force.delete}")
-    private boolean forceDelete = false;
+    @Value("${config.binary.patch:false}")
+    private boolean binaryPatch;
 
-    @Value("${whitelist.directories}")
-    private String[] whitelistDirs;
-    @Value("${whitelist.extension.binary}")
-    private String[] whitelistBinary;
-    @Value("${whitelist.extension.ascii}")
-    private String[] whitelistAscii;
+    @Value("${config.binary.transfer:copy}")
+    private String binaryTransfer;
+
+    @Value("${config.report.file:}")
+    private String reportFile;
+
+    @Value("${config.watch:false}")
+    private boolean watch;
+
+    @Value("${config.watch.debounce.ms:250}")
+    private long watchDebounceMs;
+
+    // large file ranges of every copy the process runs draw from the same budget, created on first use
+    private RangedCopy rangedCopy;
+    // same for the meters, see metricsBinder
+    private CopyMetricsBinder metricsBinder;
 
-    private UnrealFileVisitor fileVisitor;
     private ApplicationContext applicationContext;
+    private Environment environment;
+    private ObjectProvider<MeterRegistry> meterRegistry;
+    private ObjectProvider<ApplicationArguments> applicationArguments;
 
-    public CopyService(@Autowired final ApplicationContext applicationContext) {
+    public CopyService(@Autowired final ApplicationContext applicationContext, @Autowired final Environment environment,
+                       @Autowired final ObjectProvider<MeterRegistry> meterRegistry, @Autowired final ObjectProvider<ApplicationArguments> applicationArguments) {
         this.applicationContext = applicationContext;
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.applicationArguments = applicationArguments;
     }
 
+    /**
+     * copy - a single copy configured by the application properties, shuts the application down once done
+     */
     public void copy() {
+        Properties options = new Properties();
+        // --dry-run on the command line works the same as config.dry.run=true
+        ApplicationArguments arguments = applicationArguments.getIfAvailable();
+        if(arguments != null && arguments.containsOption("dry-run")) {
+            options.setProperty(CopyRequest.DRY_RUN, "true");
+        }
+        // same for --resume and config.resume=true
+        if(arguments != null && arguments.containsOption("resume")) {
+            options.setProperty(CopyRequest.RESUME, "true");
+        }
+
+        CopyRequest request = request(options);
+        CopyResult result = copy(request, null);
+        // --watch on the command line works the same as config.watch=true
+        if(result.isSucceeded() && (watch || (arguments != null && arguments.containsOption("watch")))) {
+            result = watch(request, result);
+            if(result.isSucceeded()) {
+                // stopped with ctrl+c, the application is already shutting down and exiting now would wait on that forever
+                return;
+            }
+        }
+        exitApplication(result.isSucceeded() ? 0 : 1);
+    }
+
+    /**
+     * watch - keeps the targets of a finished copy in sync with its source until the application is stopped, see {@see LiveMirror}.
+     *         a batch that is being applied when the application is stopped still finishes
+     * @param request {@see CopyRequest} of the finished copy
+     * @param result {@see CopyResult} of the finished copy
+     * @return the result of the copy or a failure if the source could not be watched
+     */
+    private CopyResult watch(final CopyRequest request, final CopyResult result) {
+        if(request.isDryRun() || !ArchiveFormat.DIRECTORY.equals(ArchiveFormat.fromProperty(request.getArchiveFormat()))) {
+            LOGGER.warn("Only copies into directories can be watched, nothing to keep in sync");
+            return result;
+        }
+
+        List<CopyTarget> targets = targets(request);
+        // already validated by the copy that came before
+        TransferStrategy transferStrategy = TransferStrategy.fromProperty(binaryTransfer);
+        PackagePatcher packagePatcher = binaryPatch ? new PackagePatcher(request.getSourceName()) : null;
+        // changes are copied straight from the source, a handful of files is not worth going through the content store
+        try(LiveMirror liveMirror = new LiveMirror(Paths.get(request.getSourceDir()), () -> fileVisitor(request, targets, false),
+                fileVisitor -> new PlanExecutor(fileVisitor.getPlans(), copyThreads, transferStrategy, rangedCopy(),
+                        null, packagePatcher, null, false, fileVisitor.getMetrics()), watchDebounceMs)) {
+            // only asks the watch to stop, it is closed right here once it did
+            Runtime.getRuntime().addShutdownHook(new Thread(liveMirror::stop));
+            liveMirror.watch();
+        } catch (IOException e) {
+            LOGGER.error("Unable to watch {} for changes", request.getSourceDir(), e);
+            return CopyResult.failed("Unable to watch source directory: " + e.getLocalizedMessage());
+        }
+        return result;
+    }
+
+    /**
+     * request - a copy request based on the application properties
+     * @param overrides properties that differ from the application properties
+     * @return {@see CopyRequest}
+     */
+    public CopyRequest request(final Properties overrides) {
+        return CopyRequest.from(overrides, environment);
+    }
+
+    /**
+     * copy - runs a single copy and reports back how it went, never shuts the application down so it can be called again.
+     *        safe to call from multiple threads as long as the copies do not share a target
+     * @param request {@see CopyRequest}
+     * @param caches what previous copies left behind or null when nothing is kept between copies, see {@see CopyCaches}
+     * @return {@see CopyResult}
+     */
+    public CopyResult copy(final CopyRequest request, final CopyCaches caches) {
         LOGGER.info("------------");
         LOGGER.info("  STARTED   ");
         LOGGER.info("------------");
+        try {
+            return run(request, caches);
+        } finally {
+            LOGGER.info("------------");
+            LOGGER.info("  FINISHED  ");
+            LOGGER.info("------------");
+        }
+    }
 
+    private CopyResult run(final CopyRequest request, final CopyCaches caches) {
+        String sourceDir = request.getSourceDir();
+        String sourceName = request.getSourceName();
+        boolean incremental = request.isIncremental();
+        boolean resume = request.isResume();
+
+        List<CopyTarget> targets = new ArrayList<>();
+        ArchiveFormat outputFormat;
+        TransferStrategy transferStrategy;
+        UnrealFileVisitor fileVisitor;
         try {
             Assert.isTrue(StringUtils.isNotEmpty(sourceDir), "Source directory cannot be empty");
             Assert.isTrue(StringUtils.isNotEmpty(sourceName), "Source project name cannot be empty");
 
             Assert.isTrue(new File(sourceDir).exists(), "Source directory does not exist, check your folder configuration");
 
-            Assert.isTrue(StringUtils.isNotEmpty(targetDir), "Target directory cannot be empty");
-            Assert.isTrue(StringUtils.isNotEmpty(targetName), "Source directory cannot be empty");
+            Assert.isTrue(StringUtils.isNotEmpty(request.getTargetDir()), "Target directory cannot be empty");
+            Assert.isTrue(StringUtils.isNotEmpty(request.getTargetName()), "Source directory cannot be empty");
 
-            fileVisitor = new UnrealFileVisitor(Paths.get(sourceDir), sourceName, Paths.get(targetDir), targetName, whitelistDirs, whitelistBinary, whitelistAscii);
+            targets.addAll(targets(request));
+
+            // an archive is always written from scratch, there is nothing to compare against
+            outputFormat = ArchiveFormat.fromProperty(request.getArchiveFormat());
+            // a typo has to stop the copy before anything gets deleted
+            transferStrategy = TransferStrategy.fromProperty(binaryTransfer);
+            if(incremental && !ArchiveFormat.DIRECTORY.equals(outputFormat)) {
+                LOGGER.warn("Incremental copies are not supported for archives, the whole project is archived");
+                incremental = false;
+            }
+            if(resume && (incremental || !ArchiveFormat.DIRECTORY.equals(outputFormat))) {
+                // incremental copies compare against the target anyway and archives are only ever renamed into place once complete
+                LOGGER.info("Nothing to resume for incremental copies or archives, copying as usual");
+                resume = false;
+            }
+            if(binaryPatch && !ArchiveFormat.DIRECTORY.equals(outputFormat)) {
+                LOGGER.warn("Packages are not patched inside archives, they are archived as is");
+            }
+            for(CopyTarget target : targets) {
+                if(binaryPatch && !sourceName.equals(target.getProjectName()) && !new PackagePatcher(sourceName).canPatch(target.getProjectName())) {
+                    // renaming the project within the package would shift every offset after its name table
+                    LOGGER.warn("Packages can only be patched for names as long as {}, {} relies on the DefaultEngine.ini redirects instead", sourceName, target.getProjectName());
+                }
+            }
+
+            fileVisitor = fileVisitor(request, targets, incremental);
 
         } catch (IllegalArgumentException iaeeee) {
             LOGGER.info("------------");
             LOGGER.error("ERROR : {}", iaeeee.getLocalizedMessage());
             LOGGER.info("------------");
-            exitApplication();
+            return CopyResult.failed(iaeeee.getLocalizedMessage());
         }
 
-        // check to make sure old directory exists
+        CopyMetricsBinder binder = metricsBinder();
+        binder.started(fileVisitor.getMetrics());
+        try {
+            return execute(request, caches, targets, outputFormat, transferStrategy, fileVisitor, incremental, resume);
+        } finally {
+            binder.finished(fileVisitor.getMetrics());
+        }
+    }
+
+    /**
+     * execute - carries out a validated copy request
+     * @param request {@see CopyRequest}
+     * @param caches see {@see copy}
+     * @param targets see {@see targets}
+     * @param outputFormat {@see ArchiveFormat} of the request
+     * @param transferStrategy how binary files end up in the targets
+     * @param fileVisitor see {@see fileVisitor}
+     * @param incremental whether to compare against the manifests left in the targets
+     * @param resume whether to continue an interrupted copy
+     * @return {@see CopyResult}
+     */
+    private CopyResult execute(final CopyRequest request, final CopyCaches caches, final List<CopyTarget> targets, final ArchiveFormat outputFormat,
+                               final TransferStrategy transferStrategy, final UnrealFileVisitor fileVisitor, final boolean incremental, final boolean resume) {
+        String sourceDir = request.getSourceDir();
+        String sourceName = request.getSourceName();
         File oldDir = new File(sourceDir);
-        if(oldDir.exists()) {
-            File newDir = new File(targetDir);
 
-            if(forceDelete && newDir.exists()) {
-                LOGGER.info("FORCE DELETE ENABLED - Trying to delete: {}", targetDir);
+        for(CopyTarget target : targets) {
+            File newDir = outputFormat.resolve(target.getDirectory()).toFile();
+
+            if(incremental && newDir.exists()) {
+                // leave the target alone, only what changed since the last run gets copied
+                LOGGER.info("INCREMENTAL ENABLED - Only copying changes into: {}", newDir);
+            } else if(resume && newDir.exists()) {
+                // keep whatever the interrupted run completed, its journal tells us what that is
+                LOGGER.info("RESUME ENABLED - Continuing interrupted copy into: {}", newDir);
+            } else if(request.isDryRun() && newDir.exists()) {
+                // nothing gets deleted or written, the plan shows what would happen to an empty target
+                LOGGER.info("DRY RUN ENABLED - Target directory already exists: {}", newDir);
+            } else if(request.isForceDelete() && newDir.exists()) {
+                LOGGER.info("FORCE DELETE ENABLED - Trying to delete: {}", newDir);
                 try {
-                    FileUtils.deleteDirectory(newDir);
+                    FileUtils.forceDelete(newDir);
                 } catch (IOException e) {
-                    throw new RuntimeException("Unable to delete target directory: " + targetDir + " please delete this directory manually before running the tool again");
+                    LOGGER.error("Unable to delete target directory: {} please delete this directory manually before running the tool again", newDir, e);
+                    return CopyResult.failed("Unable to delete target directory: " + newDir);
                 }
-            } else if(!forceDelete && newDir.exists()) {
-                LOGGER.error("Unable to delete target directory: {} please delete this directory manually before running the tool again", targetDir);
+            } else if(newDir.exists()) {
+                LOGGER.error("Unable to delete target directory: {} please delete this directory manually before running the tool again", newDir);
                 // hard stop
-                exitApplication();
+                return CopyResult.failed("Target directory already exists: " + newDir);
             }
+        }
 
-            LOGGER.info("Processing dir: {} ", oldDir.getAbsolutePath());
-            LOGGER.info("Size of dir: {} ", FileUtils.byteCountToDisplaySize(FileUtils.sizeOf(oldDir)));
+        LOGGER.info("Processing dir: {} ", oldDir.getAbsolutePath());
 
-            LOGGER.info("Copying contents to dir: {} ", newDir.getAbsolutePath());
-            LOGGER.info("This can take a bit depending on the size of your project .... DO NOT PANIC ... and if you do just delete the target directory and start again !");
+        for(CopyTarget target : targets) {
+            LOGGER.info("Copying contents to: {} as {}", outputFormat.resolve(target.getDirectory()).toAbsolutePath(), target.getProjectName());
+        }
+        LOGGER.info("This can take a bit depending on the size of your project .... DO NOT PANIC ... and if you do just run it again with --resume to continue where it stopped !");
 
-            try {
-                // kick off the progress bar
-                fileVisitor.init();
-                // walk the tree using our custom visitor
+        List<CopyPlan> plans = null;
+        long targetBytes = 0;
+        long failedFiles = 0;
+        try {
+            // walk the tree using our custom visitor, this only figures out what needs to happen
+            fileVisitor.init();
+            if(caches != null) {
+                // only directories that changed since the last copy of this source are listed again
+                caches.getListings().walk(Paths.get(sourceDir), fileVisitor);
+            } else {
                 Files.walkFileTree(Paths.get(sourceDir), fileVisitor);
-                // clean up and close off the progress bar
-                fileVisitor.finished();
-            } catch (IOException e) {
-                LOGGER.error("Unable to copy to target directory: {} something blew up, please validate the contents of your source folder and that the correct target permissions exist", targetName);
-                LOGGER.error(e.getLocalizedMessage(), e);
-                // hard stop
-                exitApplication();
+            }
+            plans = fileVisitor.getPlans();
+
+            if(request.isDryRun()) {
+                for(CopyPlan plan : plans) {
+                    plan.describe(System.out);
+                    LOGGER.info("DRY RUN - nothing was written to: {}", plan.getTarget().toAbsolutePath());
+                }
+                return CopyResult.succeeded("Dry run, nothing was written", plans.get(0).getFiles().size(), plans.get(0).getSourceBytes(), 0);
             }
 
-            LOGGER.info("WHEW ! we made it ");
+            // now do the actual work
+            if(ArchiveFormat.DIRECTORY.equals(outputFormat)) {
+                ContentStore contentStore = null;
+                if(StringUtils.isNotEmpty(dedupDir)) {
+                    contentStore = caches != null ? caches.contentStore(Paths.get(dedupDir)) : ContentStore.open(Paths.get(dedupDir));
+                }
+                PackagePatcher packagePatcher = binaryPatch ? new PackagePatcher(sourceName) : null;
+                PlanExecutor planExecutor = new PlanExecutor(plans, copyThreads, transferStrategy,
+                        rangedCopy(), contentStore, packagePatcher,
+                        caches != null ? caches.getHashes() : null, resume, fileVisitor.getMetrics());
+                planExecutor.execute();
+                targetBytes = planExecutor.getTargetBytes();
+                failedFiles = planExecutor.getFailedFiles();
+            } else {
+                // each target gets its own archive, nothing is written to the target directories themselves
+                for(CopyPlan plan : plans) {
+                    ArchiveWriter archiveWriter = new ArchiveWriter(plan, outputFormat, copyThreads, fileVisitor.getMetrics());
+                    archiveWriter.execute();
+                    targetBytes += archiveWriter.getTargetBytes();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Unable to copy to target directory: {} something blew up, please validate the contents of your source folder and that the correct target permissions exist", request.getTargetName());
+            LOGGER.error(e.getLocalizedMessage(), e);
+            // hard stop
+            return CopyResult.failed("Unable to copy to target directory: " + e.getLocalizedMessage());
+        }
 
-            LOGGER.info("New dir location: {}", newDir.getAbsolutePath());
-            LOGGER.info("Size of new dir: {} ", FileUtils.byteCountToDisplaySize(FileUtils.sizeOf(oldDir)));
+        LOGGER.info("WHEW ! we made it ");
 
-            exitApplication();
+        // sizes come from the walk itself and only cover whitelisted content, no need to go over either directory again
+        CopyPlan plan = plans.get(0);
+        LOGGER.info("Processed {} files in {} dirs", plan.getFiles().size(), plan.getDirectories().size());
+        LOGGER.info("Size of dir: {} ", FileUtils.byteCountToDisplaySize(plan.getSourceBytes()));
+        for(CopyPlan targetPlan : plans) {
+            LOGGER.info("New dir location: {}", outputFormat.resolve(targetPlan.getTarget()).toAbsolutePath());
+        }
+        LOGGER.info("Size of new dir{}: {} ", plans.size() > 1 ? "s" : "", FileUtils.byteCountToDisplaySize(targetBytes));
+
+        // where the time went, optionally as json for whoever keeps an eye on our build times
+        fileVisitor.getMetrics().logSummary();
+        if(StringUtils.isNotEmpty(reportFile)) {
+            try {
+                fileVisitor.getMetrics().writeReport(Paths.get(reportFile));
+                LOGGER.info("Metrics report: {}", Paths.get(reportFile).toAbsolutePath());
+            } catch (IOException e) {
+                LOGGER.error("Unable to write metrics report: {}", reportFile, e);
+            }
+        }
+        if(caches != null) {
+            caches.logSummary();
         }
+
+        if(failedFiles > 0) {
+            // everything else made it over but the target is not a complete copy, whoever started us has to know
+            return CopyResult.failed(failedFiles + " files could not be copied to " + outputFormat.resolve(plans.get(0).getTarget()).toAbsolutePath());
+        }
+        return CopyResult.succeeded("Copied to " + outputFormat.resolve(plans.get(0).getTarget()).toAbsolutePath(), plan.getFiles().size(), plan.getSourceBytes(), targetBytes);
     }
 
     /**
-     * exitApplication - helper method to shut down the app when conditions are not met
+     * metricsBinder - the one {@see CopyMetricsBinder} every copy reports through, bound once since a registry keeps the first meter
+     *                 registered under a name. only bound when something like a micrometer registry has been configured, the tool
+     *                 itself does not need one
+     * @return {@see CopyMetricsBinder}
      */
-    private void exitApplication() {
+    private synchronized CopyMetricsBinder metricsBinder() {
+        if(metricsBinder == null) {
+            metricsBinder = new CopyMetricsBinder();
+            meterRegistry.ifAvailable(metricsBinder::bindTo);
+        }
+        return metricsBinder;
+    }
 
-        LOGGER.info("------------");
-        LOGGER.info("  FINISHED  ");
-        LOGGER.info("------------");
+    /**
+     * rangedCopy - the one {@see RangedCopy} shared by every copy, so config.copy.buffer.mb caps the process rather than each copy
+     * @return {@see RangedCopy}
+     */
+    private synchronized RangedCopy rangedCopy() {
+        if(rangedCopy == null) {
+            rangedCopy = new RangedCopy(copyBufferMb * 1024 * 1024);
+        }
+        return rangedCopy;
+    }
 
+    /**
+     * targets - every target of a copy request
+     * @param request {@see CopyRequest}
+     * @return {@see CopyTarget} the primary target always comes first, any extra ones are filled from the same walk
+     */
+    private List<CopyTarget> targets(final CopyRequest request) {
+        List<CopyTarget> targets = new ArrayList<>();
+        targets.add(new CopyTarget(Paths.get(request.getTargetDir()), request.getTargetName()));
+        for(String extraTarget : request.getExtraTargets()) {
+            if(StringUtils.isNotBlank(extraTarget)) {
+                targets.add(CopyTarget.parse(extraTarget));
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * fileVisitor - a visitor for the source of a copy request
+     * @param request {@see CopyRequest}
+     * @param targets see {@see targets}
+     * @param incremental whether to compare against the manifests left in the targets
+     * @return {@see UnrealFileVisitor}
+     */
+    private UnrealFileVisitor fileVisitor(final CopyRequest request, final List<CopyTarget> targets, final boolean incremental) {
+        return new UnrealFileVisitor(Paths.get(request.getSourceDir()), request.getSourceName(), targets, request.getWhitelistDirs(), request.getWhitelistBinary(),
+                request.getWhitelistAscii(), request.getRenameRules(), incremental, request.isSniffExtensions());
+    }
 
-        int exitCode = SpringApplication.exit(applicationContext, new ExitCodeGenerator() {
+    /**
+     * exitApplication - helper method to shut down the app once a single run is over
+     * @param exitCode 0 when the copy went through, anything else when it did not
+     */
+    private void exitApplication(final int exitCode) {
+        int code = SpringApplication.exit(applicationContext, new ExitCodeGenerator() {
             @Override
             public int getExitCode() {
-                // no errors
-                return 0;
+                return exitCode;
             }
         });
-        System.exit(exitCode);
+        System.exit(code);
     }
 }
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.transfer;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BinaryTransfer - moves verbatim ( binary ) files into the target using the configured {@see TransferStrategy}.
+ *                  strategies that are not available for a given file fall back to {@see TransferStrategy.TRANSFER}
+ *                  and every transfer reports which strategy actually did the work. safe to use from multiple threads.
+ */
+public class BinaryTransfer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BinaryTransfer.class);
+
+    // chunk size used when a single read is written to several targets
+    private static final int FAN_OUT_BUFFER_SIZE = 1024 * 1024;
+
+    private final TransferStrategy strategy;
+    // large files are split into ranges copied in parallel, null to always copy files as a whole
+    private final RangedCopy rangedCopy;
+    // binary files go through the store and targets are linked to the stored copy, null to copy straight from the source
+    private final ContentStore contentStore;
+
+    // once a filesystem refuses to clone we stop asking, spawning a process per file that is bound to fail is not cheap
+    private final Map<FileStore, Boolean> reflinkUnsupported = new ConcurrentHashMap<>();
+    private final Map<TransferStrategy, AtomicLong> usage = new EnumMap<>(TransferStrategy.class);
+
+    /**
+     * BinaryTransfer
+     * @param strategy - the preferred way of getting binary files into the target
+     */
+    public BinaryTransfer(final TransferStrategy strategy) {
+        this(strategy, null, null);
+    }
+
+    /**
+     * BinaryTransfer
+     * @param strategy - the preferred way of getting binary files into the target
+     * @param rangedCopy - splits large files into ranges when the strategy actually copies bytes, see {@see RangedCopy}
+     * @param contentStore - deduplicates binary files between clones, see {@see ContentStore}
+     */
+    public BinaryTransfer(final TransferStrategy strategy, final RangedCopy rangedCopy, final ContentStore contentStore) {
+        this.strategy = strategy;
+        this.rangedCopy = rangedCopy;
+        this.contentStore = contentStore;
+        for(TransferStrategy value : TransferStrategy.values()) {
+            usage.put(value, new AtomicLong());
+        }
+    }
+
+    /**
+     * transfer - gets a single file into the target
+     * @param source the source file
+     * @param target the target file, must not exist yet and its parent directory must
+     * @return the strategy that was actually used
+     * @throws IOException in case touching the disk blows up
+     */
+    public TransferStrategy transfer(final Path source, final Path target) throws IOException {
+        // keep the same contract as Files.copy, cp would happily overwrite an existing file
+        if(Files.exists(target)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+
+        TransferStrategy used;
+        switch(strategy) {
+            case REFLINK:
+                used = reflink(source, target) ? TransferStrategy.REFLINK : transferTo(source, target);
+                break;
+            case HARDLINK:
+                used = hardlink(source, target) ? TransferStrategy.HARDLINK : transferTo(source, target);
+                break;
+            case TRANSFER:
+                used = transferTo(source, target);
+                break;
+            default:
+                Files.copy(source, target);
+                used = TransferStrategy.COPY;
+        }
+
+        usage.get(used).incrementAndGet();
+        LOGGER.debug("Transferred {} using {}", target, used);
+        return used;
+    }
+
+    /**
+     * transferAll - gets a single file into several targets at once, strategies that never read the data ( reflink, hardlink )
+     *               handle each target on its own while copies read the source once and write every chunk to all targets.
+     *               large files are copied as parallel ranges when a {@see RangedCopy} was given.
+     *               with a {@see ContentStore} the file is stored once and every target is linked to the stored copy instead
+     * @param source the source file
+     * @param targets the target files, none of them may exist yet and their parent directories must
+     * @return the strategy that was used for the last target
+     * @throws IOException in case touching the disk blows up
+     */
+    public TransferStrategy transferAll(final Path source, final List<Path> targets) throws IOException {
+        if(contentStore != null) {
+            Path object = contentStore.store(source);
+            TransferStrategy used = strategy;
+            for(Path target : targets) {
+                used = fromStore(object, target);
+            }
+            return used;
+        }
+
+        boolean copiesBytes = TransferStrategy.COPY.equals(strategy) || TransferStrategy.TRANSFER.equals(strategy);
+        if(rangedCopy != null && copiesBytes && rangedCopy.isWorthSplitting(Files.size(source))) {
+            for(Path target : targets) {
+                if(Files.exists(target)) {
+                    throw new FileAlreadyExistsException(target.toString());
+                }
+            }
+            rangedCopy.copy(source, targets);
+            usage.get(strategy).addAndGet(targets.size());
+            LOGGER.debug("Transferred {} to {} targets in ranges", source, targets.size());
+            return strategy;
+        }
+
+        if(targets.size() == 1 || TransferStrategy.REFLINK.equals(strategy) || TransferStrategy.HARDLINK.equals(strategy)) {
+            TransferStrategy used = strategy;
+            for(Path target : targets) {
+                used = transfer(source, target);
+            }
+            return used;
+        }
+
+        for(Path target : targets) {
+            if(Files.exists(target)) {
+                throw new FileAlreadyExistsException(target.toString());
+            }
+        }
+
+        List<FileChannel> outs = new ArrayList<>(targets.size());
+        try(FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            for(Path target : targets) {
+                outs.add(FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(FAN_OUT_BUFFER_SIZE);
+            while(in.read(buffer) != -1) {
+                buffer.flip();
+                for(FileChannel out : outs) {
+                    // every target gets the same chunk
+                    ByteBuffer chunk = buffer.duplicate();
+                    while(chunk.hasRemaining()) {
+                        out.write(chunk);
+                    }
+                }
+                buffer.clear();
+            }
+        } finally {
+            for(FileChannel out : outs) {
+                out.close();
+            }
+        }
+
+        usage.get(strategy).addAndGet(targets.size());
+        LOGGER.debug("Transferred {} to {} targets", source, targets.size());
+        return strategy;
+    }
+
+    /**
+     * fromStore - fills a target from the content store, preferring links so the data only ever exists once on disk
+     *             hardlinks are only used when asked for since they tie the target to the stored copy and to every other clone
+     *             linked to it, an in place edit of one would change them all. reflinks do not, anything else gets a real copy
+     * @param object the stored copy
+     * @param target the target file, must not exist yet and its parent directory must
+     * @return the strategy that was actually used
+     * @throws IOException in case touching the disk blows up
+     */
+    private TransferStrategy fromStore(final Path object, final Path target) throws IOException {
+        if(Files.exists(target)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+
+        TransferStrategy used;
+        if(TransferStrategy.HARDLINK.equals(strategy) && hardlink(object, target)) {
+            used = TransferStrategy.HARDLINK;
+        } else if(reflink(object, target)) {
+            used = TransferStrategy.REFLINK;
+        } else {
+            // no reflinks here, or the store is on a different filesystem than the target
+            used = transferTo(object, target);
+        }
+
+        usage.get(used).incrementAndGet();
+        LOGGER.debug("Transferred {} from {} using {}", target, object, used);
+        return used;
+    }
+
+    /**
+     * getUsage - how many files each strategy ended up handling
+     * @param strategy {@see TransferStrategy}
+     * @return number of files
+     */
+    public long getUsage(final TransferStrategy strategy) {
+        return usage.get(strategy).get();
+    }
+
+    /**
+     * logSummary - reports how the binary files made it over
+     */
+    public void logSummary() {
+        StringBuilder summary = new StringBuilder();
+        for(Map.Entry<TransferStrategy, AtomicLong> entry : usage.entrySet()) {
+            if(entry.getValue().get() > 0) {
+                summary.append(summary.length() > 0 ? ", " : "").append(entry.getValue().get()).append(" ").append(entry.getKey());
+            }
+        }
+        LOGGER.info("Binary files transferred ( preferred {} ): {}", strategy, summary.length() > 0 ? summary : "none");
+    }
+
+    /**
+     * reflink - asks the filesystem for a copy on write clone, java has no access to the FICLONE ioctl so we go through cp.
+     *           only a filesystem that can not clone at all ( or a missing cp ) stops us from asking again, anything else such
+     *           as a full disk or a permission problem is specific to this file and left to the regular copy
+     * @param source the source file
+     * @param target the target file
+     * @return true if the clone was created
+     * @throws IOException in case touching the disk blows up
+     */
+    private boolean reflink(final Path source, final Path target) throws IOException {
+        if(!SystemUtils.IS_OS_LINUX) {
+            return false;
+        }
+        FileStore store = Files.getFileStore(target.getParent());
+        if(reflinkUnsupported.containsKey(store)) {
+            return false;
+        }
+
+        ProcessBuilder processBuilder = new ProcessBuilder("cp", "--reflink=always", "--", source.toString(), target.toString())
+                .redirectErrorStream(true);
+        // untranslated messages so we can tell why the clone was refused
+        processBuilder.environment().put("LC_ALL", "C");
+        Process process;
+        try {
+            process = processBuilder.start();
+        } catch (IOException e) {
+            if(reflinkUnsupported.putIfAbsent(store, Boolean.TRUE) == null) {
+                LOGGER.info("Unable to run cp for reflinks ( {} ), falling back to {}", e.getLocalizedMessage(), TransferStrategy.TRANSFER);
+            }
+            return false;
+        }
+
+        String output;
+        try(InputStream inputStream = process.getInputStream()) {
+            output = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+        try {
+            if(process.waitFor() == 0) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+        }
+
+        // cp may leave an empty file behind when the clone is refused
+        Files.deleteIfExists(target);
+        if(!isUnsupported(output)) {
+            LOGGER.debug("Unable to reflink {}: {}", target, output.trim());
+            return false;
+        }
+        if(reflinkUnsupported.putIfAbsent(store, Boolean.TRUE) == null) {
+            LOGGER.info("Reflinks are not supported on {} ( {} ), falling back to {}", store.name(), store.type(), TransferStrategy.TRANSFER);
+        }
+        return false;
+    }
+
+    /**
+     * isUnsupported - whether cp refused to clone because the filesystem can not do it, rather than because of this one file
+     * @param output what cp had to say
+     * @return true for EOPNOTSUPP, ENOTTY, EINVAL ( filesystems without clone support ) and EXDEV ( source on another filesystem )
+     */
+    static boolean isUnsupported(final String output) {
+        return output.contains("Operation not supported") || output.contains("Inappropriate ioctl for device")
+                || output.contains("Invalid argument") || output.contains("Invalid cross-device link");
+    }
+
+    /**
+     * hardlink - links the target to the source data, fails when they live on different filesystems
+     * @param source the source file
+     * @param target the target file
+     * @return true if the link was created
+     */
+    private boolean hardlink(final Path source, final Path target) {
+        try {
+            Files.createLink(target, source);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.debug("Unable to hard link {}: {}", target, e.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    /**
+     * transferTo - zero copy transfer between channels
+     * @param source the source file
+     * @param target the target file
+     * @return {@see TransferStrategy.TRANSFER}
+     * @throws IOException in case touching the disk blows up
+     */
+    private TransferStrategy transferTo(final Path source, final Path target) throws IOException {
+        try(FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+            FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while(position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if(transferred <= 0) {
+                    // source shrunk underneath us, nothing more to read
+                    break;
+                }
+                position += transferred;
+            }
+        }
+        return TransferStrategy.TRANSFER;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.transfer;
+
+import com.jollymonsterstudio.unreal.io.AtomicFile;
+import com.jollymonsterstudio.unreal.manifest.CopyManifest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ContentStore - content addressed cache of binary files shared between clones. every file is stored once under its sha-256
+ *                in objects/ab/abcdef... and targets are filled from there by reflink ( hardlink when asked for ), so cloning the same
+ *                marketplace packs again costs next to no disk space. an index maps source path, size and last modified
+ *                time to the hash so files that did not change are never hashed twice.
+ *                the whole directory is a cache and can be deleted at any time. safe to use from multiple threads.
+ */
+public class ContentStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContentStore.class);
+
+    public static final String INDEX_FILE = "index";
+    public static final String OBJECTS_DIR = "objects";
+
+    private static final String HEADER = "# kopiarka content store v1";
+    private static final String SEPARATOR = "\t";
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * IndexEntry - what the store knew about a source file when it was last hashed
+     */
+    private static final class IndexEntry {
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+
+        private IndexEntry(final long size, final long lastModified, final String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    private final Path root;
+    private final Path objects;
+    // keyed by absolute source path
+    private final Map<String, IndexEntry> index;
+
+    private final AtomicLong hashed = new AtomicLong();
+    private final AtomicLong added = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    private ContentStore(final Path root, final Map<String, IndexEntry> index) {
+        this.root = root;
+        this.objects = root.resolve(OBJECTS_DIR);
+        this.index = index;
+    }
+
+    /**
+     * open - opens the store in a directory, creating it if needed. a missing or unreadable index only means files get hashed again
+     * @param root the store directory
+     * @return {@see ContentStore}
+     * @throws IOException in case the directory can not be created
+     */
+    public static ContentStore open(final Path root) throws IOException {
+        Files.createDirectories(root.resolve(OBJECTS_DIR));
+        Map<String, IndexEntry> index = new ConcurrentHashMap<>();
+
+        Path indexFile = root.resolve(INDEX_FILE);
+        if(Files.exists(indexFile)) {
+            try(BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                String line = reader.readLine();
+                if(HEADER.equals(line)) {
+                    while((line = reader.readLine()) != null) {
+                        // the path goes last and may contain anything but a line break
+                        String[] columns = line.split(SEPARATOR, 4);
+                        if(columns.length == 4) {
+                            index.put(columns[3], new IndexEntry(Long.parseLong(columns[1]), Long.parseLong(columns[2]), columns[0]));
+                        }
+                    }
+                } else {
+                    LOGGER.warn("Unrecognized content store index {} files will be hashed again", indexFile);
+                }
+            } catch (IOException | NumberFormatException e) {
+                LOGGER.warn("Unable to read content store index {} files will be hashed again: {}", indexFile, e.getLocalizedMessage());
+                index.clear();
+            }
+        }
+        LOGGER.info("Opened content store {} with {} indexed files", root, index.size());
+
+        return new ContentStore(root, index);
+    }
+
+    /**
+     * store - makes sure the contents of a source file are in the store
+     * @param source the source file
+     * @return the stored object, never modify it in place
+     * @throws IOException in case touching the disk blows up
+     */
+    public Path store(final Path source) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+        String key = source.toAbsolutePath().normalize().toString();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+
+        IndexEntry entry = index.get(key);
+        if(entry == null || entry.size != attrs.size() || entry.lastModified != lastModified) {
+            entry = new IndexEntry(attrs.size(), lastModified, hash(source));
+            index.put(key, entry);
+            hashed.incrementAndGet();
+        }
+
+        Path object = objectFor(entry.hash);
+        if(Files.exists(object)) {
+            reused.incrementAndGet();
+            return object;
+        }
+
+        // copied next to the object and renamed into place, two threads storing the same contents simply race to the same result
+        Files.createDirectories(object.getParent());
+        Path tempFile = Files.createTempFile(object.getParent(), "." + entry.hash, AtomicFile.TEMP_SUFFIX);
+        try {
+            try(FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                long position = 0;
+                while(position < size) {
+                    long transferred = in.transferTo(position, size - position, out);
+                    if(transferred <= 0) {
+                        break;
+                    }
+                    position += transferred;
+                }
+            }
+            try {
+                Files.move(tempFile, object, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, object, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        added.incrementAndGet();
+        return object;
+    }
+
+    /**
+     * save - persists the index, written to a temp file first so a crash never leaves half an index behind. copies sharing the store save one at a time
+     * @throws IOException in case touching the disk blows up
+     */
+    public synchronized void save() throws IOException {
+        List<String> keys = new ArrayList<>(index.keySet());
+        Collections.sort(keys);
+
+        Path indexFile = root.resolve(INDEX_FILE);
+        Path tempFile = indexFile.resolveSibling(INDEX_FILE + ".tmp");
+        try(BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for(String key : keys) {
+                IndexEntry entry = index.get(key);
+                writer.write(String.join(SEPARATOR, entry.hash, Long.toString(entry.size), Long.toString(entry.lastModified), key));
+                writer.newLine();
+            }
+        }
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * logSummary - reports how much the store saved us
+     */
+    public void logSummary() {
+        LOGGER.info("Content store: {} files hashed, {} added, {} already stored", hashed.get(), added.get(), reused.get());
+    }
+
+    public long getHashed() {
+        return hashed.get();
+    }
+
+    public long getAdded() {
+        return added.get();
+    }
+
+    public long getReused() {
+        return reused.get();
+    }
+
+    private Path objectFor(final String hash) {
+        return objects.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * hash - sha-256 of a file, unlike the manifest the hash is the identity of the contents so md5 does not cut it
+     * @param file the file to hash
+     * @return hex encoded hash
+     * @throws IOException in case touching the disk blows up
+     */
+    static String hash(final Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every jvm is required to ship sha-256
+            throw new IllegalStateException(e);
+        }
+        try(InputStream inputStream = Files.newInputStream(file)) {
+            byte[] buffer = new byte[HASH_BUFFER_SIZE];
+            int read;
+            while((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return CopyManifest.toHex(digest.digest());
+    }
+}
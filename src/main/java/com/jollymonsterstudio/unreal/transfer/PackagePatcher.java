@@ -0,0 +1,429 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.transfer;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PackagePatcher - replaces /Script/OldProject references inside uasset and umap packages so the new project loads them
+ *                  without going through the ActiveGameNameRedirects in DefaultEngine.ini.
+ *                  only the name table is touched, its location comes from the package summary at the start of the file and the
+ *                  export and bulk data after it is copied as is. names in the table are length prefixed and everything after it is
+ *                  located by offset, so a reference can only be patched in place when the new project name has exactly as many bytes
+ *                  as the old one. every patched name gets its serialized hashes recomputed the way the engine computes them.
+ *                  packages of projects with names of a different length or with a summary layout we do not know ( ue5.1 and newer,
+ *                  big endian ) keep being copied verbatim and rely on the redirects.
+ *                  safe to use from multiple threads.
+ */
+public class PackagePatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PackagePatcher.class);
+
+    static final Set<String> EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("uasset", "umap")));
+
+    private static final String SCRIPT_PREFIX = "/Script/";
+
+    // FPackageFileSummary, see PackageFileSummary.cpp in the engine
+    static final int PACKAGE_FILE_TAG = 0x9E2A83C1;
+    // ue4.0 up to ue5.0, older ones predate patchable packages and newer ones moved things around
+    private static final int OLDEST_LEGACY_VERSION = -8;
+    private static final int NEWEST_LEGACY_VERSION = -2;
+    // VER_UE4_NAME_HASHES_SERIALIZED, every name is followed by two 16 bit hashes from here on
+    static final int NAME_HASHES_VERSION = 504;
+    // EUnrealEngineObjectUE5Version::PACKAGE_SAVED_HASH changed the summary layout
+    private static final int UE5_SAVED_HASH_VERSION = 1016;
+    // plenty for the largest maps, anything beyond means we are not looking at a summary
+    private static final int MAX_CUSTOM_VERSIONS = 4096;
+    private static final int MAX_SUMMARY_SIZE = 64 * 1024;
+
+    // crc32 table the engine hashes names with, FCrc::CRCTablesSB8[0]
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for(int i = 0; i < CRC_TABLE.length; i++) {
+            int crc = i;
+            for(int bit = 0; bit < 8; bit++) {
+                crc = (crc >>> 1) ^ ((crc & 1) != 0 ? 0xEDB88320 : 0);
+            }
+            CRC_TABLE[i] = crc;
+        }
+    }
+
+    /**
+     * NameTable - where the names of a package live according to its summary
+     */
+    private static final class NameTable {
+        private final int count;
+        private final long offset;
+        // end of the package header, the name table never reaches past it
+        private final long end;
+        private final boolean hashed;
+
+        private NameTable(final int count, final long offset, final long end, final boolean hashed) {
+            this.count = count;
+            this.offset = offset;
+            this.end = end;
+            this.hashed = hashed;
+        }
+    }
+
+    private final String oldProjectName;
+    private final byte[] search;
+
+    private final AtomicLong scannedFiles = new AtomicLong();
+    private final AtomicLong patchedFiles = new AtomicLong();
+    private final AtomicLong patchedReferences = new AtomicLong();
+
+    /**
+     * PackagePatcher
+     * @param oldProjectName - name of the project being copied
+     */
+    public PackagePatcher(final String oldProjectName) {
+        this.oldProjectName = oldProjectName;
+        this.search = (SCRIPT_PREFIX + oldProjectName).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * appliesTo - whether a file is a package that may reference the project
+     * @param file the source file
+     * @return true for uasset and umap files
+     */
+    public boolean appliesTo(final Path file) {
+        return EXTENSIONS.contains(FilenameUtils.getExtension(file.getFileName().toString()).toLowerCase());
+    }
+
+    /**
+     * canPatch - whether references can be rewritten for a project name without moving anything else in the package
+     * @param newProjectName name of the new project
+     * @return true if both names are plain ascii of the same length, package names outside ascii are stored as utf-16
+     */
+    public boolean canPatch(final String newProjectName) {
+        return isAscii(oldProjectName) && isAscii(newProjectName) && oldProjectName.length() == newProjectName.length()
+                && !oldProjectName.equals(newProjectName);
+    }
+
+    /**
+     * find - scans the name table of a package for names referencing the old project, /Script/OldProject followed by anything that
+     *        can not be part of the name so /Script/OldProjectTools is left alone
+     * @param file the source file
+     * @return offsets of the name table entries to patch, empty if the package never references the project or its layout is unknown
+     * @throws IOException in case touching the disk blows up
+     */
+    public long[] find(final Path file) throws IOException {
+        scannedFiles.incrementAndGet();
+        long[] entries = new long[0];
+        int count = 0;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            NameTable nameTable = readNameTable(channel);
+            if(nameTable == null) {
+                LOGGER.debug("Unknown package layout, copying {} as is", file);
+                return entries;
+            }
+            ByteBuffer names = channel.map(FileChannel.MapMode.READ_ONLY, nameTable.offset, nameTable.end - nameTable.offset)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            for(int i = 0; i < nameTable.count; i++) {
+                int entry = names.position();
+                int length = names.getInt();
+                if(length < 0) {
+                    // utf-16, our search is ascii
+                    names.position(names.position() - length * 2);
+                } else {
+                    if(length > names.remaining()) {
+                        throw new BufferUnderflowException();
+                    }
+                    if(matches(names, names.position(), length).length > 0) {
+                        if(count == entries.length) {
+                            entries = Arrays.copyOf(entries, Math.max(8, count * 2));
+                        }
+                        entries[count++] = nameTable.offset + entry;
+                    }
+                    names.position(names.position() + length);
+                }
+                if(nameTable.hashed) {
+                    names.position(names.position() + 4);
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            // the summary pointed somewhere that does not hold a name table, better not patch anything
+            LOGGER.debug("Name table of {} is not what its summary says, copying as is", file);
+            return new long[0];
+        }
+        return Arrays.copyOf(entries, count);
+    }
+
+    /**
+     * copy - writes a patched copy of a package, the target is a real copy no matter the preferred transfer strategy since
+     *        links would patch the source along with it
+     * @param source the source file
+     * @param target the target file, must not exist yet and its parent directory must
+     * @param entries what {@see find} returned for the source
+     * @param newProjectName name of the new project, {@see canPatch} has to be true for it
+     * @throws IOException in case touching the disk blows up
+     */
+    public void copy(final Path source, final Path target, final long[] entries, final String newProjectName) throws IOException {
+        if(!canPatch(newProjectName)) {
+            throw new IllegalArgumentException("Unable to patch " + oldProjectName + " to " + newProjectName + " in place");
+        }
+        if(Files.exists(target)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+
+        byte[] replacement = newProjectName.getBytes(StandardCharsets.US_ASCII);
+        int references = 0;
+        try(FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+            FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            NameTable nameTable = readNameTable(in);
+            if(nameTable == null) {
+                throw new IOException("Unknown package layout " + source);
+            }
+            long size = in.size();
+            long position = 0;
+            while(position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if(transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            // same length so every patch is a plain overwrite of the name and its hashes, nothing moves
+            for(long entry : entries) {
+                ByteBuffer lengthBuffer = read(in, entry, 4);
+                int length = lengthBuffer.getInt();
+                ByteBuffer name = read(in, entry + 4, length + (nameTable.hashed ? 4 : 0));
+                for(int match : matches(name, 0, length)) {
+                    name.position(match + SCRIPT_PREFIX.length());
+                    name.put(replacement);
+                    references++;
+                }
+                if(nameTable.hashed) {
+                    // the terminating zero is not part of the name
+                    byte[] plainName = new byte[length - 1];
+                    name.position(0);
+                    name.get(plainName);
+                    name.putShort(length, (short) nonCasePreservingHash(plainName));
+                    name.putShort(length + 2, (short) casePreservingHash(plainName));
+                }
+                name.position(0);
+                while(name.hasRemaining()) {
+                    out.write(name, entry + 4 + name.position());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+
+        patchedFiles.incrementAndGet();
+        patchedReferences.addAndGet(references);
+        LOGGER.debug("Patched {} references in {}", references, target);
+    }
+
+    public long getScannedFiles() {
+        return scannedFiles.get();
+    }
+
+    public long getPatchedFiles() {
+        return patchedFiles.get();
+    }
+
+    public long getPatchedReferences() {
+        return patchedReferences.get();
+    }
+
+    /**
+     * logSummary - reports how many packages were patched
+     */
+    public void logSummary() {
+        LOGGER.info("Packages patched: {} of {} scanned ( {} references )", patchedFiles.get(), scannedFiles.get(), patchedReferences.get());
+    }
+
+    /**
+     * readNameTable - reads the package summary up to where it locates the name table
+     * @param channel the package
+     * @return {@see NameTable} or null if this is not a package summary we know
+     * @throws IOException in case touching the disk blows up
+     */
+    private static NameTable readNameTable(final FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer summary = read(channel, 0, (int) Math.min(size, MAX_SUMMARY_SIZE));
+        try {
+            if(summary.getInt() != PACKAGE_FILE_TAG) {
+                return null;
+            }
+            int legacyVersion = summary.getInt();
+            if(legacyVersion < OLDEST_LEGACY_VERSION || legacyVersion > NEWEST_LEGACY_VERSION) {
+                return null;
+            }
+            if(legacyVersion != -4) {
+                // LegacyUE3Version
+                summary.getInt();
+            }
+            int fileVersion = summary.getInt();
+            if(legacyVersion <= -8 && summary.getInt() >= UE5_SAVED_HASH_VERSION) {
+                return null;
+            }
+            // FileVersionLicenseeUE4
+            summary.getInt();
+            int customVersions = summary.getInt();
+            if(customVersions < 0 || customVersions > MAX_CUSTOM_VERSIONS) {
+                return null;
+            }
+            for(int i = 0; i < customVersions; i++) {
+                if(legacyVersion == -2) {
+                    // enum tag and version
+                    skip(summary, 8);
+                } else if(legacyVersion >= -5) {
+                    // guid, version and friendly name
+                    skip(summary, 20);
+                    skipString(summary);
+                } else {
+                    // guid and version
+                    skip(summary, 20);
+                }
+            }
+            int totalHeaderSize = summary.getInt();
+            // FolderName
+            skipString(summary);
+            // PackageFlags
+            summary.getInt();
+            int nameCount = summary.getInt();
+            int nameOffset = summary.getInt();
+            if(nameCount < 0 || nameOffset < summary.position() || totalHeaderSize > size || nameOffset > totalHeaderSize) {
+                return null;
+            }
+            // unversioned packages are always saved by the engine they run on
+            return new NameTable(nameCount, nameOffset, totalHeaderSize, fileVersion == 0 || fileVersion >= NAME_HASHES_VERSION);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer read(final FileChannel channel, final long position, final int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Package ends before " + (position + length));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void skip(final ByteBuffer buffer, final int bytes) {
+        // position throws IllegalArgumentException past the limit, same as reading past it
+        buffer.position(buffer.position() + bytes);
+    }
+
+    private static void skipString(final ByteBuffer buffer) {
+        int length = buffer.getInt();
+        // negative lengths are utf-16 characters
+        skip(buffer, length < 0 ? -length * 2 : length);
+    }
+
+    /**
+     * matches - where the old project is referenced within a single name
+     * @param names the name table
+     * @param start first byte of the name
+     * @param length length of the name including its terminating zero
+     * @return offsets of the matches relative to the start of the name
+     */
+    private int[] matches(final ByteBuffer names, final int start, final int length) {
+        int[] matches = new int[0];
+        for(int i = 0; i + search.length <= length; i++) {
+            if(matchesAt(names, start + i, start + length)) {
+                matches = Arrays.copyOf(matches, matches.length + 1);
+                matches[matches.length - 1] = i;
+                i += search.length - 1;
+            }
+        }
+        return matches;
+    }
+
+    private boolean matchesAt(final ByteBuffer names, final int index, final int end) {
+        for(int i = 0; i < search.length; i++) {
+            if(names.get(index + i) != search[i]) {
+                return false;
+            }
+        }
+        // names end in a zero so there is always a byte after a match, unless the table is broken
+        return index + search.length == end || !isNamePart(names.get(index + search.length));
+    }
+
+    /**
+     * nonCasePreservingHash - FCrc::Strihash_DEPRECATED of an ansi name, truncated to 16 bits
+     * @param name the name without its terminating zero
+     * @return hash
+     */
+    static int nonCasePreservingHash(final byte[] name) {
+        int hash = 0;
+        for(byte b : name) {
+            int upper = b >= 'a' && b <= 'z' ? b - ('a' - 'A') : b & 0xFF;
+            hash = (hash >>> 8) ^ CRC_TABLE[(hash ^ upper) & 0xFF];
+        }
+        return hash & 0xFFFF;
+    }
+
+    /**
+     * casePreservingHash - FCrc::StrCrc32 of an ansi name, truncated to 16 bits. every character is hashed as 4 bytes
+     * @param name the name without its terminating zero
+     * @return hash
+     */
+    static int casePreservingHash(final byte[] name) {
+        int crc = ~0;
+        for(byte b : name) {
+            int character = b & 0xFF;
+            for(int i = 0; i < 4; i++) {
+                crc = (crc >>> 8) ^ CRC_TABLE[(crc ^ character) & 0xFF];
+                character >>>= 8;
+            }
+        }
+        return ~crc & 0xFFFF;
+    }
+
+    private static boolean isNamePart(final byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_';
+    }
+
+    private static boolean isAscii(final String name) {
+        for(int i = 0; i < name.length(); i++) {
+            if(name.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return !name.isEmpty();
+    }
+}
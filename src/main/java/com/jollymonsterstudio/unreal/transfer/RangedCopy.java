@@ -0,0 +1,185 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.transfer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RangedCopy - copies large files as independent ranges so several threads can work on the same file, each range is read once
+ *              and written to every target. ranges are read into buffers from a pool that never holds more than the budget, a range
+ *              waits for a free buffer before reading anything so memory stays bounded no matter how many workers or pools there are.
+ *              keep one per process, every copy running at the same time ( server jobs, watch batches ) then draws from the same budget.
+ *              when called from a ForkJoinPool the ranges are forked into that pool, otherwise they are copied one after another.
+ *              safe to use from multiple threads.
+ */
+public class RangedCopy {
+
+    // size of a single range and of the buffer it is read into
+    public static final int RANGE_SIZE = 8 * 1024 * 1024;
+    // never go below a single sensible range no matter what was configured
+    private static final int MIN_IN_FLIGHT_BYTES = 1024 * 1024;
+
+    private final int rangeSize;
+    // one permit per buffer the budget allows for
+    private final Semaphore inFlight;
+    // buffers that are not in use right now, allocated on first need and reused after that
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    /**
+     * RangedCopy
+     * @param maxInFlightBytes - upper bound on bytes read but not yet written across all threads
+     */
+    public RangedCopy(final long maxInFlightBytes) {
+        int budget = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_IN_FLIGHT_BYTES, maxInFlightBytes));
+        this.rangeSize = Math.min(RANGE_SIZE, budget);
+        this.inFlight = new Semaphore(budget / rangeSize);
+    }
+
+    /**
+     * allocatedBuffers - how many range buffers were allocated so far, never more than the budget allows for
+     * @return number of buffers
+     */
+    int allocatedBuffers() {
+        return allocated.get();
+    }
+
+    /**
+     * isWorthSplitting - smaller files are better off with a plain transfer
+     * @param size size of the file in bytes
+     * @return true if the file spans at least two ranges
+     */
+    public boolean isWorthSplitting(final long size) {
+        return size >= 2L * rangeSize;
+    }
+
+    /**
+     * copy - gets a single file into one or more targets range by range
+     * @param source the source file
+     * @param targets the target files, none of them may exist yet and their parent directories must
+     * @throws IOException in case touching the disk blows up, targets that were already created are removed again
+     */
+    public void copy(final Path source, final List<Path> targets) throws IOException {
+        List<FileChannel> outs = new ArrayList<>(targets.size());
+        boolean complete = false;
+        try(FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            for(Path target : targets) {
+                outs.add(FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+            }
+
+            long size = in.size();
+            List<RecursiveAction> ranges = new ArrayList<>();
+            for(long position = 0; position < size; position += rangeSize) {
+                long start = position;
+                int length = (int) Math.min(rangeSize, size - position);
+                ranges.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        try {
+                            copyRange(in, outs, start, length);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            }
+
+            try {
+                if(ForkJoinTask.inForkJoinPool()) {
+                    ForkJoinTask.invokeAll(ranges);
+                } else {
+                    for(RecursiveAction range : ranges) {
+                        range.invoke();
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            complete = true;
+        } finally {
+            for(FileChannel out : outs) {
+                out.close();
+            }
+            if(!complete) {
+                // ranges land out of order, a partial target is full of holes and not worth keeping
+                for(int i = 0; i < outs.size(); i++) {
+                    Files.deleteIfExists(targets.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * copyRange - reads a single range into a pooled buffer and writes it to every target at the same position
+     * @param in the source channel
+     * @param outs the target channels
+     * @param start where the range starts
+     * @param length how long the range is, never more than the range size
+     * @throws IOException in case touching the disk blows up
+     */
+    private void copyRange(final FileChannel in, final List<FileChannel> outs, final long start, final int length) throws IOException {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to copy a range");
+        }
+        ByteBuffer buffer = buffers.poll();
+        if(buffer == null) {
+            // every pooled buffer is taken by another permit holder, which means there is still room for one more
+            buffer = ByteBuffer.allocateDirect(rangeSize);
+            allocated.incrementAndGet();
+        }
+        try {
+            buffer.clear();
+            buffer.limit(length);
+            while(buffer.hasRemaining()) {
+                if(in.read(buffer, start + buffer.position()) == -1) {
+                    // source shrunk underneath us, nothing more to read
+                    break;
+                }
+            }
+            buffer.flip();
+            for(FileChannel out : outs) {
+                ByteBuffer chunk = buffer.duplicate();
+                while(chunk.hasRemaining()) {
+                    out.write(chunk, start + chunk.position());
+                }
+            }
+        } finally {
+            // back into the pool before the permit so the next range finds it
+            buffers.offer(buffer);
+            inFlight.release();
+        }
+    }
+}
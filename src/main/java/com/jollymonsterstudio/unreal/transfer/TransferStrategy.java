@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.transfer;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * TransferStrategy - the different ways a binary file can end up in the target, binary files are never modified so
+ *                    they do not need to physically be copied byte for byte
+ */
+public enum TransferStrategy {
+    // plain Files.copy, same as always
+    COPY,
+    // FileChannel.transferTo which lets the kernel move the bytes without bringing them into the jvm
+    TRANSFER,
+    // copy on write clone ( FICLONE ) on filesystems that support it such as btrfs and xfs, falls back to TRANSFER
+    REFLINK,
+    // hard link to the source file, source and target share the same data so only use when you never modify the target in place
+    HARDLINK;
+
+    /**
+     * fromProperty - lenient parsing of the properties file value
+     * @param value the configured strategy, empty means COPY
+     * @return {@see TransferStrategy}
+     * @throws IllegalArgumentException in case the value does not name a strategy
+     */
+    public static TransferStrategy fromProperty(final String value) {
+        if(StringUtils.isBlank(value)) {
+            return COPY;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown binary transfer " + value.trim() + ", use one of copy, transfer, reflink or hardlink");
+        }
+    }
+}
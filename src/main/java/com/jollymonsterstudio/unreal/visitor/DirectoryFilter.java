@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.visitor;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DirectoryFilter - decides which directories make it into the copy based on the directory whitelist.
+ *                   whitelist entries are stored in a trie keyed on path components so every decision costs one hash
+ *                   lookup per level of depth, no matter how many directories have been skipped so far.
+ *                   entries are normally top level folders ( Config, Content, Source ) but nested ones such as
+ *                   Plugins/MyPlugin work as well, in which case only the folders leading up to them are traversed.
+ *                   immutable and safe to share between threads.
+ */
+public class DirectoryFilter {
+
+    public enum Decision {
+        // whitelisted, copy the directory and everything in it
+        INCLUDE,
+        // leads to a whitelisted directory further down, create it but only look at the whitelisted children
+        TRAVERSE,
+        // not whitelisted, never look inside
+        SKIP
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private boolean included = false;
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * DirectoryFilter
+     * @param whitelistDirs - directories relative to the project root, nested entries can use either / or \ as separator
+     */
+    public DirectoryFilter(final List<String> whitelistDirs) {
+        for(String whitelistDir : whitelistDirs) {
+            Node node = root;
+            for(String name : StringUtils.split(whitelistDir.trim(), "/\\")) {
+                node = node.children.computeIfAbsent(name, key -> new Node());
+            }
+            if(node != root) {
+                node.included = true;
+            }
+        }
+    }
+
+    /**
+     * decide - what to do with a directory
+     * @param relativeDir the directory relative to the source root, an empty path is the root itself
+     * @return {@see Decision}
+     */
+    public Decision decide(final Path relativeDir) {
+        Node node = root;
+        for(Path name : relativeDir) {
+            if(name.toString().isEmpty()) {
+                // the root relativized against itself
+                break;
+            }
+            node = node.children.get(name.toString());
+            if(node == null) {
+                return Decision.SKIP;
+            }
+            if(node.included) {
+                return Decision.INCLUDE;
+            }
+        }
+        return Decision.TRAVERSE;
+    }
+
+    /**
+     * includesFile - whether a file is part of the copy, files in the project root are always examined ( uproject, gitignore, etc. )
+     *                while files in directories that only lead to a whitelisted one are left alone
+     * @param relativeFile the file relative to the source root
+     * @return true if the file should be copied, provided its extension is whitelisted
+     */
+    public boolean includesFile(final Path relativeFile) {
+        Path parent = relativeFile.getParent();
+        return parent == null || decide(parent) == Decision.INCLUDE;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.visitor;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FileClassifier - decides whether a file is copied verbatim or renamed based on its extension, ignoring case so Foo.PNG and
+ *                  DefaultGame.INI are treated like their lower case counterparts.
+ *                  whitelisted extensions are a single hash lookup. with sniffing enabled files with any other extension ( usf, ush,
+ *                  plugin descriptors, ... ) are copied as well, the first few KB of each file decide: NUL bytes or invalid UTF-8
+ *                  mean binary, anything else is text and gets renamed. once enough files of an extension agree the rest of them are
+ *                  classified the same way without being read, an extension that turns out to mix text and binary files is never
+ *                  settled and every one of its files is read.
+ *                  safe to share between threads.
+ */
+public class FileClassifier {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileClassifier.class);
+
+    // enough to get past any header of a binary format while staying within a single read
+    static final int SNIFF_SIZE = 4 * 1024;
+    // files of an extension that have to agree before the others are no longer read
+    static final int SETTLE_AFTER = 8;
+
+    /**
+     * Sniffed - what the files of an extension turned out to be so far
+     */
+    private static final class Sniffed {
+        // both text and binary files were seen
+        private static final Sniffed MIXED = new Sniffed(null, 0);
+
+        private final FileType fileType;
+        private final int files;
+
+        private Sniffed(final FileType fileType, final int files) {
+            this.fileType = fileType;
+            this.files = files;
+        }
+
+        private Sniffed and(final FileType other) {
+            if(this == MIXED || fileType != other) {
+                return MIXED;
+            }
+            return new Sniffed(fileType, files + 1);
+        }
+
+        private boolean isSettled() {
+            return files >= SETTLE_AFTER;
+        }
+    }
+
+    private final Map<String, FileType> whitelist;
+    private final boolean sniffUnknown;
+    // what sniffing found so far for extensions that are not whitelisted
+    private final Map<String, Sniffed> sniffed = new ConcurrentHashMap<>();
+
+    /**
+     * FileClassifier
+     * @param whitelistBinary - extensions of files copied verbatim
+     * @param whitelistAscii - extensions of files that go through the renaming process, binary wins when listed in both
+     * @param sniffUnknown - copy files with any other extension too, telling text from binary by their contents
+     */
+    public FileClassifier(final List<String> whitelistBinary, final List<String> whitelistAscii, final boolean sniffUnknown) {
+        Map<String, FileType> extensions = new HashMap<>();
+        for(String extension : whitelistAscii) {
+            extensions.put(extension.trim().toLowerCase(), FileType.ASCII);
+        }
+        for(String extension : whitelistBinary) {
+            extensions.put(extension.trim().toLowerCase(), FileType.BINARY);
+        }
+        this.whitelist = Collections.unmodifiableMap(extensions);
+        this.sniffUnknown = sniffUnknown;
+    }
+
+    /**
+     * classify - how a file gets copied
+     * @param file the file
+     * @return {@see FileType} or null if the file is not part of the copy
+     */
+    public FileType classify(final Path file) {
+        String extension = FilenameUtils.getExtension(file.getFileName().toString()).toLowerCase();
+        FileType fileType = whitelist.get(extension);
+        if(fileType != null || !sniffUnknown) {
+            return fileType;
+        }
+        if(extension.isEmpty()) {
+            return sniff(file).orElse(null);
+        }
+        Sniffed known = sniffed.get(extension);
+        if(known != null && known.isSettled()) {
+            return known.fileType;
+        }
+
+        Optional<FileType> result = sniff(file);
+        if(!result.isPresent()) {
+            // unreadable or empty, leave the decision to the next file with this extension
+            return null;
+        }
+        FileType sniffedType = result.get();
+        sniffed.compute(extension, (key, previous) -> {
+            if(previous == null) {
+                LOGGER.info("Extension .{} is not whitelisted, copying it as {} based on {}", extension, sniffedType, file.getFileName());
+                return new Sniffed(sniffedType, 1);
+            }
+            Sniffed next = previous.and(sniffedType);
+            if(next == Sniffed.MIXED && previous != Sniffed.MIXED) {
+                LOGGER.warn("Extension .{} has both {} and {} files, {} is {} so every file of it is checked on its own from now on",
+                        extension, previous.fileType, sniffedType, file.getFileName(), sniffedType);
+            } else if(next.files == SETTLE_AFTER) {
+                LOGGER.info("Extension .{} is always {}, copying the rest of its files as {} without reading them", extension, sniffedType, sniffedType);
+            }
+            return next;
+        });
+        return sniffedType;
+    }
+
+    /**
+     * sniff - looks at the start of a file to tell text from binary
+     * @param file the file
+     * @return {@see FileType} or nothing if the file is empty or can not be read
+     */
+    Optional<FileType> sniff(final Path file) {
+        byte[] head = new byte[SNIFF_SIZE];
+        int length = 0;
+        try(InputStream inputStream = Files.newInputStream(file)) {
+            int read;
+            while(length < head.length && (read = inputStream.read(head, length, head.length - length)) != -1) {
+                length += read;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read {} to classify it: {}", file, e.getLocalizedMessage());
+            return Optional.empty();
+        }
+        if(length == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(isText(head, length, length < head.length) ? FileType.ASCII : FileType.BINARY);
+    }
+
+    /**
+     * isText - no NUL bytes and valid UTF-8 ( which includes plain ascii )
+     * @param head the start of the file
+     * @param length number of bytes read
+     * @param complete whether that is the whole file, otherwise a character cut in half at the end is fine
+     * @return true if the bytes look like text
+     */
+    static boolean isText(final byte[] head, final int length, final boolean complete) {
+        for(int i = 0; i < length; i++) {
+            if(head[i] == 0) {
+                return false;
+            }
+        }
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer in = ByteBuffer.wrap(head, 0, length);
+        CoderResult result = decoder.decode(in, CharBuffer.allocate(length), complete);
+        return !result.isError();
+    }
+}
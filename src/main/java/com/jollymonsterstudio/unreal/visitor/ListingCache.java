@@ -0,0 +1,155 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.visitor;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ListingCache - walks a source tree like Files.walkFileTree but remembers the contents of every directory it lists, so walking
+ *                the same source again only has to list directories that changed since. adding, removing or renaming an entry
+ *                updates the last modified time of its directory which is what invalidates a listing. attributes are read fresh
+ *                on every walk so edits to existing files are always picked up.
+ *                links are not followed, same as Files.walkFileTree without FOLLOW_LINKS.
+ *                meant to be kept around between copies of the same source, safe to walk from multiple threads.
+ */
+public class ListingCache {
+
+    private static final class Listing {
+        private final long lastModified;
+        private final List<Path> entries;
+
+        private Listing(final long lastModified, final List<Path> entries) {
+            this.lastModified = lastModified;
+            this.entries = entries;
+        }
+    }
+
+    private final Map<Path, Listing> listings = new ConcurrentHashMap<>();
+
+    private final AtomicLong listed = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    /**
+     * walk - visits every directory and file below start, depth first
+     * @param start the directory to walk
+     * @param visitor receives the same callbacks Files.walkFileTree would make
+     * @throws IOException in case the visitor gives up on a failure
+     */
+    public void walk(final Path start, final FileVisitor<? super Path> visitor) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(start, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            visitor.visitFileFailed(start, e);
+            return;
+        }
+        visit(start, attrs, visitor);
+    }
+
+    private FileVisitResult visit(final Path path, final BasicFileAttributes attrs, final FileVisitor<? super Path> visitor) throws IOException {
+        if(!attrs.isDirectory()) {
+            return visitor.visitFile(path, attrs);
+        }
+
+        FileVisitResult result = visitor.preVisitDirectory(path, attrs);
+        if(result != FileVisitResult.CONTINUE) {
+            return result == FileVisitResult.SKIP_SUBTREE ? FileVisitResult.CONTINUE : result;
+        }
+
+        IOException failure = null;
+        try {
+            for(Path entry : list(path, attrs.lastModifiedTime().toMillis())) {
+                BasicFileAttributes entryAttrs;
+                try {
+                    entryAttrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    result = visitor.visitFileFailed(entry, e);
+                    if(result == FileVisitResult.TERMINATE || result == FileVisitResult.SKIP_SIBLINGS) {
+                        break;
+                    }
+                    continue;
+                }
+                result = visit(entry, entryAttrs, visitor);
+                if(result == FileVisitResult.TERMINATE) {
+                    return result;
+                }
+                if(result == FileVisitResult.SKIP_SIBLINGS) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        result = visitor.postVisitDirectory(path, failure);
+        return result == FileVisitResult.SKIP_SIBLINGS ? FileVisitResult.CONTINUE : result;
+    }
+
+    /**
+     * list - contents of a directory, from the cache while the directory has not been modified
+     * @param dir the directory
+     * @param lastModified its current last modified time
+     * @return entries of the directory
+     * @throws IOException in case touching the disk blows up
+     */
+    private List<Path> list(final Path dir, final long lastModified) throws IOException {
+        Listing listing = listings.get(dir);
+        if(listing != null && listing.lastModified == lastModified) {
+            reused.incrementAndGet();
+            return listing.entries;
+        }
+
+        List<Path> entries = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for(Path entry : stream) {
+                entries.add(entry);
+            }
+        }
+        listings.put(dir, new Listing(lastModified, Collections.unmodifiableList(entries)));
+        listed.incrementAndGet();
+        return entries;
+    }
+
+    /**
+     * getListed - directories that had to be listed from disk
+     * @return count since the cache was created
+     */
+    public long getListed() {
+        return listed.get();
+    }
+
+    /**
+     * getReused - directories whose contents came from the cache
+     * @return count since the cache was created
+     */
+    public long getReused() {
+        return reused.get();
+    }
+}
@@ -16,61 +16,68 @@
 
 package com.jollymonsterstudio.unreal.visitor;
 
-import me.tongfei.progressbar.ProgressBar;
-import me.tongfei.progressbar.ProgressBarStyle;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.filefilter.TrueFileFilter;
+import com.jollymonsterstudio.unreal.ini.IniRewrites;
+import com.jollymonsterstudio.unreal.io.DiskOrder;
+import com.jollymonsterstudio.unreal.manifest.CopyManifest;
+import com.jollymonsterstudio.unreal.manifest.ManifestEntry;
+import com.jollymonsterstudio.unreal.metrics.CopyMetrics;
+import com.jollymonsterstudio.unreal.metrics.Phase;
+import com.jollymonsterstudio.unreal.plan.CopyOperation;
+import com.jollymonsterstudio.unreal.plan.CopyPlan;
+import com.jollymonsterstudio.unreal.plan.CopyTarget;
+import com.jollymonsterstudio.unreal.plan.OperationType;
+import com.jollymonsterstudio.unreal.rename.SubstitutionEngine;
 import org.apache.commons.lang3.ArrayUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.util.CollectionUtils;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static java.nio.file.FileVisitResult.CONTINUE;
 import static java.nio.file.FileVisitResult.SKIP_SUBTREE;
 
+/**
+ * UnrealFileVisitor - walks the source project and builds a {@see CopyPlan} for every target, nothing is written while walking.
+ *                     the plans are carried out afterwards by the {@see com.jollymonsterstudio.unreal.plan.PlanExecutor}.
+ *                     every plan lists the same source files in the same order, only their target paths and operations differ
+ */
 public class UnrealFileVisitor extends SimpleFileVisitor<Path> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UnrealFileVisitor.class);
 
     private static final List<String> DEFAULT_DIR_WHITELIST = Arrays.asList("Config", "Content", "Source");
     private static final List<String> DEFAULT_BINARY_FILE_WHITELIST =  Arrays.asList("uasset", "png", "jpg", "jpeg", "wav", "umap");
-    private static final List<String> DEFAULT_ASCII_FILE_WHITELIST = Arrays.asList("ini", "cpp", "h", "uproject", "sln", "cs", "gitignore", "md", "txt");
-
-    private enum FileType {
-        BINARY, ASCII
-    }
+    private static final List<String> DEFAULT_ASCII_FILE_WHITELIST = Arrays.asList("ini", "cpp", "h", "uproject", "sln", "cs", "gitignore", "md", "txt", "usf", "ush");
 
     private Path source;
-    private Path target;
-
     private String oldProjectName;
-    private String newProjectName;
-
-    private ProgressBar progressBar;
-
-    private boolean processingChildDir = false;
-    private String childDir = null;
+    private List<CopyTarget> targets;
+    private String[] renameRules;
 
     private List<String> whitelistDirs;
     private List<String> whitelistBinary;
     private List<String> whitelistAscii;
 
-    private List<String> ignoredDirs = new ArrayList<>();
-    private final Pattern pattern = Pattern.compile("(?<=\\bNewClassName=\")[^\"]*");
+    private DirectoryFilter directoryFilter;
+    private FileClassifier fileClassifier;
+    // decisions for the directories currently being walked, the innermost one on top
+    private final Deque<DirectoryFilter.Decision> decisions = new ArrayDeque<>();
+
+    private boolean incremental;
+
+    private final List<CopyPlan> plans = new ArrayList<>();
+
+    private final CopyMetrics metrics = new CopyMetrics();
+    // when the walk last got control back from us, anything until the next callback is spent listing the source
+    private long lastCallbackEnd;
 
     /**
      * UnrealFileVisitor
@@ -81,248 +88,211 @@ public class UnrealFileVisitor extends SimpleFileVisitor<Path> {
      * @param whitelistDirs - any directories we want to include in the copy
      * @param whitelistBinary - any binary files we want to include in the copy ( binary files are not examined / modified just copied verbatim )
      * @param whitelistAscii - any ascii files we want to include in the copy and push through the renaming process
+     * @param renameRules - extra search=>replacement rules applied to ascii files on top of the project name ones
+     * @param incremental - only copy files that changed since the last run into the same target, based on the manifest left in the target
      */
-    public UnrealFileVisitor(final Path source, final String oldProjectName, final Path target, final String newProjectName, final String[] whitelistDirs, final String[] whitelistBinary, final String[] whitelistAscii) {
-        this.source = source;
-        this.target = target;
+    public UnrealFileVisitor(final Path source, final String oldProjectName, final Path target, final String newProjectName, final String[] whitelistDirs, final String[] whitelistBinary, final String[] whitelistAscii, final String[] renameRules, final boolean incremental) {
+        this(source, oldProjectName, Collections.singletonList(new CopyTarget(target, newProjectName)), whitelistDirs, whitelistBinary, whitelistAscii, renameRules, incremental, false);
+    }
 
+    /**
+     * UnrealFileVisitor
+     * @param source - the source directory we will copy from
+     * @param oldProjectName - the name of the original project
+     * @param targets - every renamed copy to make out of the single walk, see {@see CopyTarget}
+     * @param whitelistDirs - any directories we want to include in the copy
+     * @param whitelistBinary - any binary files we want to include in the copy ( binary files are not examined / modified just copied verbatim )
+     * @param whitelistAscii - any ascii files we want to include in the copy and push through the renaming process
+     * @param renameRules - extra search=>replacement rules applied to ascii files on top of the project name ones
+     * @param incremental - only copy files that changed since the last run into the same target, based on the manifest left in each target
+     * @param sniffUnknown - also copy files whose extension is on neither whitelist, looking at their contents to tell text from binary
+     */
+    public UnrealFileVisitor(final Path source, final String oldProjectName, final List<CopyTarget> targets, final String[] whitelistDirs, final String[] whitelistBinary, final String[] whitelistAscii, final String[] renameRules, final boolean incremental,
+                             final boolean sniffUnknown) {
+        this.source = source;
         this.oldProjectName = oldProjectName;
-        this.newProjectName = newProjectName;
+        this.targets = targets;
+        this.renameRules = renameRules;
 
         // default if no parameters are included so the basic components are copied
         this.whitelistDirs = ArrayUtils.isNotEmpty(whitelistDirs) ? Arrays.asList(whitelistDirs) : DEFAULT_DIR_WHITELIST;
         this.whitelistBinary = ArrayUtils.isNotEmpty(whitelistBinary) ? Arrays.asList(whitelistBinary) : DEFAULT_BINARY_FILE_WHITELIST;
         this.whitelistAscii = ArrayUtils.isNotEmpty(whitelistAscii) ? Arrays.asList(whitelistAscii) : DEFAULT_ASCII_FILE_WHITELIST;
+        this.directoryFilter = new DirectoryFilter(this.whitelistDirs);
+        this.fileClassifier = new FileClassifier(this.whitelistBinary, this.whitelistAscii, sniffUnknown);
+
+        this.incremental = incremental;
     }
 
     /**
-     * init - really only here so we can initialize the progress bar outside of the constructor, aesthetics reasons
+     * init - starts the clock and picks up the manifest of the last run, has to be called right before walking the source
      */
     public void init() {
-        // grab a count of all the files for our progress bar
-        Collection<File> files = FileUtils.listFilesAndDirs(source.toFile(), TrueFileFilter.TRUE, TrueFileFilter.TRUE);
-        if(!CollectionUtils.isEmpty(files)) {
-            // the -1 is to ignore the root folder so your counts match when examining file explorer
-            progressBar = new ProgressBar("File Copy Progress: ", files.size() - 1, ProgressBarStyle.ASCII);
+        metrics.started();
+        decisions.clear();
+
+        for(CopyTarget target : targets) {
+            // compile every content rule once up front so each file is renamed in a single pass
+            SubstitutionEngine substitutionEngine = SubstitutionEngine.forProject(oldProjectName, target.getProjectName(), renameRules);
+            CopyManifest manifest = incremental ? CopyManifest.load(target.getDirectory()) : null;
+            plans.add(new CopyPlan(source, oldProjectName, target.getDirectory(), target.getProjectName(), substitutionEngine, manifest));
         }
-    }
 
-    /**
-     * finished - similar reason to the init, need to kill the progress bar
-     */
-    public void finished() {
-        progressBar.close();
+        // the walk starts right after this
+        lastCallbackEnd = metrics.start();
     }
 
     /**
      * preVisitDirectory - allows us to examine each directory before we process it.
-     *                     in our case we use it to retrieve information about the source
-     *                     and move those details over to the target directories
+     *                     in our case we use it to figure out whether the directory makes it into the target and under which name
      * @param dir the current directory we are processing
      * @param attrs any file attributes used for additional filtering
      * @return {@see FileVisitResult}
-     * @throws IOException in case touching the disk blows up
      */
     @Override
-    public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
-        // throw this into a mutable variable
-        Path currentPath = dir;
-
-        // check against whitelist
-        if(currentPath != null && currentPath.toFile().isDirectory()) {
-            // used to toll gate which files we process
-            boolean proceed = false;
-            // check to see if we are a child of a root folder if so just move on
-            if(processingChildDir && StringUtils.isNotEmpty(childDir) && currentPath.toAbsolutePath().toString().contains(childDir)) {
-                proceed = true;
-            } else {
-                // root dir when we first start off
-                if(dir.equals(source)) {
-                    processingChildDir = false;
-                    childDir = null;
-                    proceed = true;
-                    // start checking against our white list for valid directories
-                } else if((whitelistDirs.contains(currentPath.getFileName().toString()) && currentPath.getParent().toAbsolutePath().equals(source.toAbsolutePath()))) {
-                    // allowed dir based on white list
-                    processingChildDir = true;
-                    childDir = currentPath.getFileName().toString();
-                    proceed = true;
-                } else {
-                    processingChildDir = false;
-                    childDir = null;
-                }
+    public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+        long start = metrics.record(Phase.ENUMERATE, lastCallbackEnd);
+        try {
+            // check against whitelist, anything not on it ( Intermediate, Saved, DerivedDataCache, etc. ) is never even listed
+            // everything below a whitelisted directory is whitelisted as well so there is no need to ask again
+            DirectoryFilter.Decision decision = decisions.peek() == DirectoryFilter.Decision.INCLUDE
+                    ? DirectoryFilter.Decision.INCLUDE : directoryFilter.decide(source.relativize(dir));
+            metrics.record(Phase.FILTER, start);
+            if(decision == DirectoryFilter.Decision.SKIP) {
+                return SKIP_SUBTREE;
             }
-            // if we are good to go we can now examine the folders
-            if(proceed) {
-                // create the new directory based on inital params
-                Path newDirectory = target.resolve(source.relativize(currentPath));
-                // check to see if directory contains references to old project name
-                if(processingChildDir && (currentPath.getFileName().toString().contains(oldProjectName) || newDirectory.toString().contains(oldProjectName))) {
-                    // rename accordingly if found
-                    String newPath = newDirectory.toAbsolutePath().toString().substring(0, newDirectory.toAbsolutePath().toString().lastIndexOf(File.separator));
-                    if(newPath.contains(oldProjectName)) {
-                        newPath = newPath.replace(oldProjectName, newProjectName);
-                    }
-                    newDirectory = Paths.get(newPath).resolve(currentPath.toAbsolutePath().toString().replace(oldProjectName, newProjectName));
-                }
+            decisions.push(decision);
 
-                // lastly trigger the copy against the new folder name
-                try{
-                    Files.copy(currentPath, newDirectory);
-                }
-                catch (FileAlreadyExistsException ioException){
-                    LOGGER.error("Dir or file already exist: {}", ioException.getLocalizedMessage());
-                    //log it and move on
-                    return SKIP_SUBTREE; // skip processing
-                }
-            } else {
-                // if we find nothing satisfying our whitelist add it to
-                // the ignore folder structure for our files to use
-                ignoredDirs.add(currentPath.toAbsolutePath().toString());
+            // create the new directory based on inital params, renaming any references to the old project name
+            for(CopyPlan plan : plans) {
+                plan.add(new CopyOperation(OperationType.MKDIR, null, dir, plan.resolveTarget(dir), 0, attrs.lastModifiedTime().toMillis()));
             }
+            return CONTINUE;
+        } finally {
+            lastCallbackEnd = metrics.start();
         }
-        // tick the progress bar
-        progressBar.step();
-        return CONTINUE;
     }
 
     /**
      * visitFile - allows us to examine file before we process it.
-     *                     in our case we use it to retrieve information about the source
-     *                     and move those details over to the target file
+     *                     in our case we use it to figure out what has to happen to the file and where it ends up
      * @param file the current file we are processing
      * @param attrs any file attributes used for additional filtering
      * @return {@see FileVisitResult}
      */
     @Override
     public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
-        // mutable variable
-        Path currentPath = file;
-
-        // skip any file that belongs to an ignored dir
-        String absoluteFilePath = currentPath.toAbsolutePath().toString();
-        for(String ignoredDir : ignoredDirs) {
-            // special case for gitignore
-            if(absoluteFilePath.startsWith(ignoredDir) && !absoluteFilePath.contains(".gitignore")) {
-                currentPath = null;
-                break;
+        long start = metrics.record(Phase.ENUMERATE, lastCallbackEnd);
+        try {
+            FileType fileType = classify(file);
+            metrics.record(Phase.FILTER, start);
+            if(fileType != null) {
+                for(CopyPlan plan : plans) {
+                    plan.add(planFile(plan, file, fileType, attrs));
+                }
             }
+            return CONTINUE;
+        } finally {
+            lastCallbackEnd = metrics.start();
         }
+    }
 
-        if(currentPath != null) {
-            // lets start checking our extensions against the white list
-            String extension = FilenameUtils.getExtension(absoluteFilePath);
-            if(StringUtils.isNotEmpty(extension)) {
-                // check if file is binary or ascii in which case we can update the contents of the ascii ones
-                FileType fileType = null;
-                if(whitelistBinary.contains(extension)) {
-                    fileType = FileType.BINARY;
-                } else if(whitelistAscii.contains(extension)) {
-                    fileType = FileType.ASCII;
-                }
+    /**
+     * classify - checks a file against the whitelists, see {@see FileClassifier}
+     * @param file the current file we are processing
+     * @return {@see FileType} or null if the file is not part of the copy
+     */
+    private FileType classify(final Path file) {
+        // skip files sitting in directories that only lead to a whitelisted one, files in the project root are always examined
+        // the parent decision is the one on top since files are visited in between their directory's pre and post visit
+        if(decisions.size() > 1 && decisions.peek() != DirectoryFilter.Decision.INCLUDE) {
+            return null;
+        }
 
-                if(fileType != null) {
-                    // create the new file path
-                    Path newFile = target.resolve(source.relativize(currentPath));
-                    // examine new path to see if we have any old project names
-                    if(newFile.toAbsolutePath().toString().contains(oldProjectName)) {
-                        // remove any extra trailing slashes and clean up the folder name
-                        String newFilePath = newFile.toString().substring(target.toString().length() + 1, newFile.toString().length());
-                        newFilePath = newFilePath.replace(oldProjectName, newProjectName);
-
-                        newFile = Paths.get(target.toString()).resolve(newFilePath);
-                    }
-
-                    try{
-                        // finally copy over the file to the new location
-                        Files.copy(file, newFile);
-
-                        // if we have ascii files we still have work to do
-                        if(FileType.ASCII.equals(fileType)) {
-                            // bring in the new file
-                            String content = FileUtils.readFileToString(newFile.toFile(), Charset.defaultCharset());
-                            // start replacing old project names
-                            String updatedContent = content.replace(oldProjectName, newProjectName);
-                            updatedContent = updatedContent.replace(oldProjectName.toUpperCase()+"_API", newProjectName.toUpperCase()+"_API");
-
-                            // do some special work if we encounter the DefaultEngine.ini file
-                            // as in order to get it running we need to account for ActiveClassRedirects as the blueprints
-                            // and other binary assets still retain references to those old project definitions
-                            // some more reading about it here https://forums.unrealengine.com/development-discussion/blueprint-visual-scripting/24493-migrate-code-based-blueprint
-                            if(newFile.getFileName().toString().contains("DefaultEngine.ini")) {
-                                // let's bring in the old file
-                                String oldContent = FileUtils.readFileToString(file.toFile(), Charset.defaultCharset());
-                                String[] oldIniLines = oldContent.split(System.getProperty("line.separator"));
-
-                                List<String> oldRedirects = new ArrayList<>();
-                                // figure out where the redirects occur
-                                for(String line : oldIniLines) {
-                                    if(line.contains("ActiveClassRedirects")) {
-                                        // if we find them lets add them to our list
-                                        Matcher matcher = pattern.matcher(line);
-                                        while (matcher.find()) {
-                                            oldRedirects.add(matcher.group());
-                                            break;
-                                        }
-                                    }
-                                }
-
-                                // start building out the new DefaultEngine.ini contents
-                                String[] newIniLines = updatedContent.split(System.getProperty("line.separator"));
-                                StringBuilder stringBuilder = new StringBuilder();
-                                // process each line of the file
-                                for(String line : newIniLines) {
-                                    stringBuilder.append(line);
-                                    stringBuilder.append(System.getProperty("line.separator"));
-                                    // add in our redirects
-                                    if(line.equalsIgnoreCase("[/Script/Engine.Engine]")) {
-                                        stringBuilder.append(System.getProperty("line.separator"));
-                                        // update references to classes / blueprints
-                                        // create new redirect for project name
-                                        stringBuilder.append("+ActiveGameNameRedirects=(OldGameName=\"/Script/").append(oldProjectName).append("\", NewGameName=\"/Script/").append(newProjectName).append("\")");
-                                        stringBuilder.append(System.getProperty("line.separator"));
-                                        // if we have any class specific redirects add them in
-                                        if(!oldRedirects.isEmpty()) {
-                                            for(String redirect : oldRedirects) {
-                                                stringBuilder.append("+ActiveGameNameRedirects=(OldGameName=\"/Script/").append(oldProjectName).append(".").append(redirect).append("\", NewGameName=\"/Script/").append(newProjectName).append(".").append(redirect.replace(oldProjectName, newProjectName)).append("\")");
-                                                stringBuilder.append(System.getProperty("line.separator"));
-                                            }
-                                        }
-                                    }
-                                }
-                                // build our final string
-                                updatedContent = stringBuilder.toString();
-                            }
-
-                            // persist contents to our new file
-                            FileUtils.writeStringToFile(newFile.toFile(), updatedContent, Charset.defaultCharset());
-                        }
-                    }
-                    catch (IOException ioException){
-                        //log it and move
-                        LOGGER.error(ioException.getLocalizedMessage(), ioException);
-                    }
-                }
+        // check if file is binary or ascii in which case we can update the contents of the ascii ones
+        return fileClassifier.classify(file);
+    }
 
+    /**
+     * planFile - decides how a whitelisted file gets into the target
+     * @param plan {@see CopyPlan} of the target
+     * @param file the current file we are processing
+     * @param fileType {@see FileType}
+     * @param attrs attributes of the source file picked up during the walk
+     * @return {@see CopyOperation}
+     */
+    private CopyOperation planFile(final CopyPlan plan, final Path file, final FileType fileType, final BasicFileAttributes attrs) {
+        // create the new file path
+        Path newFile = plan.resolveTarget(file);
+        long size = attrs.size();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+
+        // nothing to do if the file has not been touched since the last run
+        CopyManifest manifest = plan.getManifest();
+        if(manifest != null) {
+            ManifestEntry previous = manifest.previous(plan.sourcePath(file));
+            if(previous != null && previous.isUnchanged(plan.targetPath(newFile), size, lastModified, plan.rulesFor(fileType)) && Files.exists(newFile)) {
+                return new CopyOperation(OperationType.KEEP, fileType, file, newFile, size, lastModified);
             }
         }
-        // tick the progress bar
-        progressBar.step();
-        return CONTINUE;
 
+        OperationType type;
+        if(FileType.BINARY.equals(fileType)) {
+            type = OperationType.BINARY;
+        } else if(IniRewrites.hasRewrites(file.getFileName().toString())) {
+            type = OperationType.INI_PATCH;
+        } else {
+            type = OperationType.REWRITE;
+        }
+        return new CopyOperation(type, fileType, file, newFile, size, lastModified, DiskOrder.of(attrs));
+    }
+
+    /**
+     * getPlan - everything the walk found for the first target, only complete once the walk is over
+     * @return {@see CopyPlan}
+     */
+    public CopyPlan getPlan() {
+        return plans.get(0);
+    }
+
+    /**
+     * getPlans - everything the walk found, one plan per target in the order the targets were given
+     * @return {@see CopyPlan}
+     */
+    public List<CopyPlan> getPlans() {
+        return Collections.unmodifiableList(plans);
+    }
+
+    /**
+     * getDirectoryFilter - which directories make it into the copy, defaults included
+     * @return {@see DirectoryFilter}
+     */
+    public DirectoryFilter getDirectoryFilter() {
+        return directoryFilter;
+    }
+
+    /**
+     * getMetrics - timings and counters of the run, the walk only records enumerate and filter, the rest comes from executing the plan
+     * @return {@see CopyMetrics}
+     */
+    public CopyMetrics getMetrics() {
+        return metrics;
     }
 
     /**
-     * postVisitDirectory - allows us to examine a directory after it's been processed. NOT USED
+     * postVisitDirectory - allows us to examine a directory after it's been processed, only called for directories that were not skipped
      * @param dir the current dir we processed
      * @param exc {@see IOException}
      * @return {@see FileVisitResult}
      */
     @Override
     public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) {
+        metrics.record(Phase.ENUMERATE, lastCallbackEnd);
+        decisions.pop();
         if(exc != null) {
             LOGGER.error(exc.getLocalizedMessage(), exc);
         }
+        lastCallbackEnd = metrics.start();
         return CONTINUE;
     }
 
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.watch;
+
+import com.jollymonsterstudio.unreal.plan.CopyPlan;
+import com.jollymonsterstudio.unreal.plan.PlanExecutor;
+import com.jollymonsterstudio.unreal.visitor.DirectoryFilter;
+import com.jollymonsterstudio.unreal.visitor.UnrealFileVisitor;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * LiveMirror - keeps renamed clones in sync with a source that is still being worked on, once the initial copy is done.
+ *              every whitelisted directory is watched, events are coalesced per path until the source has been quiet for the
+ *              debounce period ( an editor saving a package touches it several times ) and each batch is then replayed through a
+ *              fresh {@see UnrealFileVisitor} that only visits the changed paths, so the same filters, rename rules and config
+ *              rewrites apply as in a full copy. files that are gone from the source are removed from the targets, a rename is
+ *              simply the old name disappearing and the new one showing up.
+ *              when the operating system drops events the whole source is copied over again, which picks up everything except
+ *              files deleted in the meantime.
+ */
+public class LiveMirror implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LiveMirror.class);
+
+    // a steady stream of events never leaves the source quiet, changes still show up in the targets after this long
+    private static final long MAX_BATCH_DELAY_MS = 5000;
+    // how often an idle watch looks up to see whether it was asked to stop
+    private static final long STOP_CHECK_MS = 200;
+
+    private final Path source;
+    private final Supplier<UnrealFileVisitor> fileVisitors;
+    private final Function<UnrealFileVisitor, PlanExecutor> planExecutors;
+    private final long debounceMillis;
+    private final DirectoryFilter directoryFilter;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+
+    private volatile boolean closed = false;
+    private volatile boolean watching = false;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * LiveMirror
+     * @param source - the source directory that was copied
+     * @param fileVisitors - creates a visitor configured the same as the one used for the initial copy, one per batch
+     * @param planExecutors - creates the executor that applies the plans of a batch, see {@see PlanExecutor.apply}
+     * @param debounceMillis - how long the source has to be quiet before the collected changes are applied
+     * @throws IOException in case the filesystem can not be watched
+     */
+    public LiveMirror(final Path source, final Supplier<UnrealFileVisitor> fileVisitors, final Function<UnrealFileVisitor, PlanExecutor> planExecutors,
+                      final long debounceMillis) throws IOException {
+        this.source = source;
+        this.fileVisitors = fileVisitors;
+        this.planExecutors = planExecutors;
+        this.debounceMillis = debounceMillis;
+        this.directoryFilter = fileVisitors.get().getDirectoryFilter();
+        this.watchService = source.getFileSystem().newWatchService();
+    }
+
+    /**
+     * watch - applies changes to the targets until stopped or closed, blocks the calling thread
+     * @throws IOException in case the source can not be watched
+     */
+    public void watch() throws IOException {
+        watching = true;
+        try {
+            watchChanges();
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    private void watchChanges() throws IOException {
+        register(source);
+        LOGGER.info("Watching {} for changes in {} directories, stop with ctrl+c", source.toAbsolutePath(), watchedDirs.size());
+
+        // path -> whether it was created at some point during the batch, later events for the same path only add to that
+        Map<Path, Boolean> changes = new HashMap<>();
+        long batchStarted = 0;
+        long lastEvent = 0;
+        try {
+            while(!closed) {
+                WatchKey key;
+                if(changes.isEmpty()) {
+                    key = watchService.poll(STOP_CHECK_MS, TimeUnit.MILLISECONDS);
+                    if(key == null) {
+                        continue;
+                    }
+                } else {
+                    long now = System.currentTimeMillis();
+                    long deadline = Math.min(lastEvent + debounceMillis, batchStarted + MAX_BATCH_DELAY_MS);
+                    key = now < deadline ? watchService.poll(deadline - now, TimeUnit.MILLISECONDS) : null;
+                }
+
+                if(key == null) {
+                    apply(changes);
+                    changes.clear();
+                    continue;
+                }
+
+                lastEvent = System.currentTimeMillis();
+                if(changes.isEmpty()) {
+                    batchStarted = lastEvent;
+                }
+                collect(key, changes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // closed while waiting for events
+        }
+        LOGGER.info("Stopped watching {}", source.toAbsolutePath());
+    }
+
+    /**
+     * collect - adds the events of a watched directory to the current batch, new directories are watched right away so
+     *           whatever lands in them before the batch is applied is not missed
+     * @param key the signalled key
+     * @param changes the current batch
+     * @throws IOException in case a new directory can not be watched
+     */
+    private void collect(final WatchKey key, final Map<Path, Boolean> changes) throws IOException {
+        Path dir = watchedDirs.get(key);
+        for(WatchEvent<?> event : key.pollEvents()) {
+            if(StandardWatchEventKinds.OVERFLOW.equals(event.kind())) {
+                LOGGER.warn("Too many changes to keep track of, copying {} over again, files deleted in the meantime stay in the targets", source);
+                changes.put(source, Boolean.TRUE);
+                continue;
+            }
+            if(dir == null) {
+                continue;
+            }
+
+            Path path = dir.resolve((Path) event.context());
+            boolean created = StandardWatchEventKinds.ENTRY_CREATE.equals(event.kind());
+            changes.merge(path, created, Boolean::logicalOr);
+            if(created && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                register(path);
+            }
+        }
+        if(!key.reset()) {
+            // the directory is gone
+            watchedDirs.remove(key);
+        }
+    }
+
+    /**
+     * register - watches a directory and everything below it that makes it into the copy
+     * @param start the directory
+     * @throws IOException in case the directory can not be watched
+     */
+    private void register(final Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+                if(directoryFilter.decide(source.relativize(dir)) == DirectoryFilter.Decision.SKIP) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                watchedDirs.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                // deleted before we got to it, its own event takes care of it
+                LOGGER.debug("Unable to watch {}: {}", file, exc.getLocalizedMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * apply - brings the targets up to date with a batch of changes, paths that are gone are removed from the targets first
+     *         and everything that still exists is copied over again
+     * @param changes changed paths mapped to whether they were created during the batch
+     * @return plans of the batch, see {@see CopyPlan}
+     */
+    List<CopyPlan> apply(final Map<Path, Boolean> changes) {
+        long start = System.currentTimeMillis();
+        UnrealFileVisitor fileVisitor = fileVisitors.get();
+        fileVisitor.init();
+
+        // every directory leading up to a changed path, mapped to the changed paths and directories right below it
+        Map<Path, Set<Path>> children = new TreeMap<>();
+        List<Path> deleted = new ArrayList<>();
+        for(Path path : changes.keySet()) {
+            if(!path.startsWith(source) || path.equals(source)) {
+                continue;
+            }
+            if(!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                deleted.add(path);
+            }
+            for(Path child = path; !child.equals(source); child = child.getParent()) {
+                children.computeIfAbsent(child.getParent(), key -> new TreeSet<>()).add(child);
+            }
+        }
+
+        try {
+            if(Boolean.TRUE.equals(changes.get(source))) {
+                Files.walkFileTree(source, fileVisitor);
+            } else {
+                visit(source, fileVisitor, children, changes);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Unable to look at the changes in {}", source, e);
+            return Collections.emptyList();
+        }
+
+        List<CopyPlan> plans = fileVisitor.getPlans();
+        int removed = 0;
+        Collections.sort(deleted);
+        Path lastDeleted = null;
+        for(Path path : deleted) {
+            if(lastDeleted != null && path.startsWith(lastDeleted)) {
+                // went along with the directory it was in
+                continue;
+            }
+            lastDeleted = path;
+            Path relativePath = source.relativize(path);
+            // a deleted path can not tell whether it was a file or a directory, whatever it was the filter has to cover it
+            if(!directoryFilter.includesFile(relativePath) && directoryFilter.decide(relativePath) == DirectoryFilter.Decision.SKIP) {
+                continue;
+            }
+            for(CopyPlan plan : plans) {
+                removed += remove(plan, plan.resolveTarget(path)) ? 1 : 0;
+            }
+        }
+
+        PlanExecutor planExecutor = planExecutors.apply(fileVisitor);
+        planExecutor.apply();
+
+        LOGGER.info("Mirrored {} changes in {} ms: {} files copied, {} paths removed", changes.size(), System.currentTimeMillis() - start,
+                plans.get(0).getFiles().size() - planExecutor.getFailedFiles(), removed);
+        return plans;
+    }
+
+    /**
+     * visit - walks only the directories leading up to changed paths, created directories are walked in full
+     * @param dir the directory to visit
+     * @param fileVisitor {@see UnrealFileVisitor} collecting the plans of the batch
+     * @param children see {@see apply}
+     * @param changes see {@see apply}
+     * @throws IOException in case touching the disk blows up
+     */
+    private void visit(final Path dir, final UnrealFileVisitor fileVisitor, final Map<Path, Set<Path>> children, final Map<Path, Boolean> changes) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(dir, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if(fileVisitor.preVisitDirectory(dir, attrs) != FileVisitResult.CONTINUE) {
+            return;
+        }
+        for(Path child : children.getOrDefault(dir, Collections.emptySet())) {
+            BasicFileAttributes childAttrs;
+            try {
+                childAttrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                // deleted, taken care of once the walk is over
+                continue;
+            }
+            if(childAttrs.isDirectory()) {
+                if(Boolean.TRUE.equals(changes.get(child))) {
+                    // created or moved here, nothing in it has been copied yet
+                    Files.walkFileTree(child, fileVisitor);
+                } else if(children.containsKey(child)) {
+                    visit(child, fileVisitor, children, changes);
+                }
+                // a directory that was only modified has its changed entries listed on their own
+            } else if(changes.containsKey(child)) {
+                fileVisitor.visitFile(child, childAttrs);
+            }
+        }
+        fileVisitor.postVisitDirectory(dir, null);
+    }
+
+    /**
+     * remove - deletes a file or directory from a target, never the target itself
+     * @param plan {@see CopyPlan} of the target
+     * @param targetPath the renamed path within the target
+     * @return true if something was removed
+     */
+    private boolean remove(final CopyPlan plan, final Path targetPath) {
+        if(!targetPath.startsWith(plan.getTarget()) || targetPath.equals(plan.getTarget()) || !Files.exists(targetPath, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+        try {
+            if(Files.isDirectory(targetPath, LinkOption.NOFOLLOW_LINKS)) {
+                FileUtils.deleteDirectory(targetPath.toFile());
+            } else {
+                Files.delete(targetPath);
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Unable to remove {} from the target", targetPath, e);
+            return false;
+        }
+    }
+
+    /**
+     * stop - asks {@see watch} to return and waits until it did, a batch that is being applied still finishes.
+     *        the mirror still has to be closed afterwards
+     */
+    public void stop() {
+        closed = true;
+        if(!watching) {
+            return;
+        }
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * close - stops watching, {@see watch} returns shortly after
+     * @throws IOException in case the watch service can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.archive;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.jollymonsterstudio.unreal.metrics.CopyMetrics;
+import com.jollymonsterstudio.unreal.plan.CopyPlan;
+import com.jollymonsterstudio.unreal.visitor.UnrealFileVisitor;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArchiveWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path source;
+    private byte[] image;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        source = tempDir.resolve("OldGame");
+        Files.createDirectories(source.resolve("Source").resolve("OldGame"));
+        Files.write(source.resolve("Source").resolve("OldGame").resolve("OldGame.h"), "class OLDGAME_API AOldGame;".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(source.resolve("Content"));
+        image = new byte[4096];
+        Files.write(source.resolve("Content").resolve("Splash.png"), image);
+        Files.write(source.resolve("Content").resolve("OldGame.uasset"), new byte[4096]);
+    }
+
+    @Test
+    public void zipEntriesAreRenamedAndMediaIsStored() throws IOException {
+        CopyPlan plan = plan();
+        new ArchiveWriter(plan, ArchiveFormat.ZIP, 2, new CopyMetrics()).execute();
+
+        assertFalse(Files.exists(tempDir.resolve("NewGame")));
+        try(ZipFile zipFile = new ZipFile(tempDir.resolve("NewGame.zip").toFile())) {
+            ZipArchiveEntry header = zipFile.getEntry("NewGame/Source/NewGame/NewGame.h");
+            assertEquals("class NEWGAME_API ANewGame;", IOUtils.toString(zipFile.getInputStream(header), StandardCharsets.UTF_8));
+
+            ZipArchiveEntry splash = zipFile.getEntry("NewGame/Content/Splash.png");
+            assertEquals(ZipArchiveEntry.STORED, splash.getMethod());
+            assertArrayEquals(image, IOUtils.toByteArray(zipFile.getInputStream(splash)));
+
+            assertEquals(ZipArchiveEntry.DEFLATED, zipFile.getEntry("NewGame/Content/NewGame.uasset").getMethod());
+            assertTrue(zipFile.getEntry("NewGame/Source/").isDirectory());
+        }
+    }
+
+    @Test
+    public void onlyTheArchiveIsLeftBehind() throws IOException {
+        new ArchiveWriter(plan(), ArchiveFormat.ZIP, 4, new CopyMetrics()).execute();
+
+        try(Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(Arrays.asList("NewGame.zip", "OldGame"), files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void singleThreadZipIsWrittenDirectly() throws IOException {
+        new ArchiveWriter(plan(), ArchiveFormat.ZIP, 1, new CopyMetrics()).execute();
+
+        try(ZipFile zipFile = new ZipFile(tempDir.resolve("NewGame.zip").toFile())) {
+            ZipArchiveEntry header = zipFile.getEntry("NewGame/Source/NewGame/NewGame.h");
+            assertEquals("class NEWGAME_API ANewGame;", IOUtils.toString(zipFile.getInputStream(header), StandardCharsets.UTF_8));
+            assertArrayEquals(image, IOUtils.toByteArray(zipFile.getInputStream(zipFile.getEntry("NewGame/Content/Splash.png"))));
+            assertTrue(zipFile.getEntry("NewGame/Source/").isDirectory());
+        }
+    }
+
+    @Test
+    public void tarZstMatchesTheDirectoryLayout() throws IOException {
+        CopyPlan plan = plan();
+        new ArchiveWriter(plan, ArchiveFormat.TAR_ZST, 2, new CopyMetrics()).execute();
+
+        Map<String, byte[]> entries = new HashMap<>();
+        try(TarArchiveInputStream tarStream = new TarArchiveInputStream(new ZstdInputStream(Files.newInputStream(tempDir.resolve("NewGame.tar.zst"))))) {
+            TarArchiveEntry entry;
+            while((entry = tarStream.getNextTarEntry()) != null) {
+                entries.put(entry.getName(), IOUtils.toByteArray(tarStream));
+            }
+        }
+
+        assertEquals("class NEWGAME_API ANewGame;", new String(entries.get("NewGame/Source/NewGame/NewGame.h"), StandardCharsets.UTF_8));
+        assertArrayEquals(image, entries.get("NewGame/Content/Splash.png"));
+        assertTrue(entries.containsKey("NewGame/Content/NewGame.uasset"));
+        assertTrue(entries.containsKey("NewGame/"));
+    }
+
+    @Test
+    public void formatFromProperty() {
+        assertEquals(ArchiveFormat.DIRECTORY, ArchiveFormat.fromProperty(" "));
+        assertEquals(ArchiveFormat.TAR_ZST, ArchiveFormat.fromProperty("tar.zst"));
+        assertEquals(tempDir.resolve("NewGame.zip"), ArchiveFormat.ZIP.resolve(tempDir.resolve("NewGame")));
+    }
+
+    private CopyPlan plan() throws IOException {
+        UnrealFileVisitor fileVisitor = new UnrealFileVisitor(source, "OldGame", tempDir.resolve("NewGame"), "NewGame", null, null, null, null, false);
+        fileVisitor.init();
+        Files.walkFileTree(source, fileVisitor);
+        return fileVisitor.getPlan();
+    }
+}
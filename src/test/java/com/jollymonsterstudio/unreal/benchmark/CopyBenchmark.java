@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.benchmark;
+
+import com.jollymonsterstudio.unreal.plan.PlanExecutor;
+import com.jollymonsterstudio.unreal.transfer.TransferStrategy;
+import com.jollymonsterstudio.unreal.visitor.UnrealFileVisitor;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CopyBenchmark - the full end to end copy of a synthetic project, every invocation starts from an empty target.
+ *                 single shot since a copy is dominated by the disk and page cache state rather than by the jit
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 8)
+@Fork(1)
+public class CopyBenchmark {
+
+    @Param({"1", "4"})
+    private int threads;
+
+    @Param({"copy", "transfer"})
+    private String binaryTransfer;
+
+    private Path workDir;
+    private Path source;
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        workDir = Files.createTempDirectory("kopiarka-copy");
+        source = new SyntheticProject().generate(workDir.resolve(SyntheticProject.PROJECT_NAME));
+        target = workDir.resolve("RenamedProject");
+    }
+
+    @Setup(Level.Invocation)
+    public void cleanTarget() throws IOException {
+        FileUtils.deleteDirectory(target.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(workDir.toFile());
+    }
+
+    @Benchmark
+    public long copy() throws IOException {
+        UnrealFileVisitor fileVisitor = new UnrealFileVisitor(source, SyntheticProject.PROJECT_NAME, target, "RenamedProject",
+                null, null, null, null, false);
+        fileVisitor.init();
+        Files.walkFileTree(source, fileVisitor);
+        PlanExecutor planExecutor = new PlanExecutor(fileVisitor.getPlan(), threads, TransferStrategy.fromProperty(binaryTransfer), fileVisitor.getMetrics());
+        planExecutor.execute();
+        return planExecutor.getTargetBytes();
+    }
+}
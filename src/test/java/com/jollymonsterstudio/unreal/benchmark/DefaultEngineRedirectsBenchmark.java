@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.benchmark;
+
+import com.jollymonsterstudio.unreal.ini.DefaultEngineRedirects;
+import com.jollymonsterstudio.unreal.ini.IniRewriter;
+import com.jollymonsterstudio.unreal.ini.IniRewrites;
+import com.jollymonsterstudio.unreal.rename.SubstitutionEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DefaultEngineRedirectsBenchmark - renaming DefaultEngine.ini and generating its redirects with a growing number of ActiveClassRedirects
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DefaultEngineRedirectsBenchmark {
+
+    @Param({"10", "500", "10000"})
+    private int redirects;
+
+    private String oldContent;
+    private SubstitutionEngine substitutionEngine;
+    private List<DefaultEngineRedirects> rewrites;
+
+    @Setup
+    public void setup() {
+        substitutionEngine = SubstitutionEngine.forProject(SyntheticProject.PROJECT_NAME, "RenamedProject", null);
+        rewrites = Collections.singletonList(new DefaultEngineRedirects(SyntheticProject.PROJECT_NAME, "RenamedProject"));
+        oldContent = SyntheticProject.defaultEngineIni(redirects);
+    }
+
+    @Benchmark
+    public String renameAndRedirect() throws IOException {
+        // everything the executor does with the file, minus the disk
+        StringWriter writer = new StringWriter(oldContent.length());
+        new IniRewriter(substitutionEngine, rewrites).rewrite(new StringReader(oldContent), writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public String renameOnly() throws IOException {
+        // same file without any section rewrites, the difference is what the redirects cost
+        StringWriter writer = new StringWriter(oldContent.length());
+        new IniRewriter(substitutionEngine, IniRewrites.forFile("DefaultGame.ini", SyntheticProject.PROJECT_NAME, "RenamedProject"))
+                .rewrite(new StringReader(oldContent), writer);
+        return writer.toString();
+    }
+}
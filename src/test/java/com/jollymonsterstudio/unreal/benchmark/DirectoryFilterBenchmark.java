@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.benchmark;
+
+import com.jollymonsterstudio.unreal.visitor.DirectoryFilter;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * DirectoryFilterBenchmark - cost of the whitelist decisions on their own and of a walk that prunes
+ *                            the huge Intermediate folder compared to one that visits everything
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryFilterBenchmark {
+
+    private Path project;
+    private List<Path> relativeDirs;
+    private DirectoryFilter directoryFilter;
+
+    @Setup
+    public void setup() throws IOException {
+        project = new SyntheticProject().contentAssets(200).assetSize(1024).intermediateFiles(20000).generate(Files.createTempDirectory("kopiarka-filter"));
+        try(Stream<Path> paths = Files.walk(project)) {
+            relativeDirs = paths.filter(Files::isDirectory).map(project::relativize).collect(Collectors.toList());
+        }
+        directoryFilter = new DirectoryFilter(Arrays.asList("Config", "Content", "Source"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(project.toFile());
+    }
+
+    @Benchmark
+    public void decide(final Blackhole blackhole) {
+        for(Path relativeDir : relativeDirs) {
+            blackhole.consume(directoryFilter.decide(relativeDir));
+        }
+    }
+
+    @Benchmark
+    public long walkFiltered() throws IOException {
+        return walk(true);
+    }
+
+    @Benchmark
+    public long walkEverything() throws IOException {
+        return walk(false);
+    }
+
+    private long walk(final boolean filtered) throws IOException {
+        long[] files = new long[1];
+        Files.walkFileTree(project, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                if(filtered && directoryFilter.decide(project.relativize(dir)) == DirectoryFilter.Decision.SKIP) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                files[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files[0];
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.benchmark;
+
+import com.jollymonsterstudio.unreal.rename.SubstitutionEngine;
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RenameBenchmark - the ascii replacement path, both the in memory variant and the streaming writer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenameBenchmark {
+
+    // roughly the size of a typical source file and of a generated one
+    @Param({"16", "1024"})
+    private int sizeKb;
+
+    @Param({"0", "16"})
+    private int extraRules;
+
+    private String content;
+    private SubstitutionEngine substitutionEngine;
+
+    @Setup
+    public void setup() {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; builder.length() < sizeKb * 1024; i++) {
+            builder.append(SyntheticProject.sourceFile("Class" + i, 100));
+        }
+        content = builder.toString();
+
+        String[] rules = new String[extraRules];
+        for(int i = 0; i < extraRules; i++) {
+            rules[i] = "OldStudio" + i + "=>NewStudio" + i;
+        }
+        substitutionEngine = SubstitutionEngine.forProject(SyntheticProject.PROJECT_NAME, "RenamedProject", rules);
+    }
+
+    @Benchmark
+    public String replace() {
+        return substitutionEngine.replace(content);
+    }
+
+    @Benchmark
+    public void stream() throws IOException {
+        try(Writer writer = substitutionEngine.newWriter(new NullWriter())) {
+            // chunks of the size a buffered reader would hand over
+            for(int offset = 0; offset < content.length(); offset += 8192) {
+                writer.write(content, offset, Math.min(8192, content.length() - offset));
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StartupBenchmark - time from launching the tool until the first file shows up in the target, for a project small enough that
+ *                    jvm and spring startup are most of the run. every invocation is a fresh process of the thin jar built by
+ *                    the startup profile, so build it first: mvn -P startup,benchmark verify -DskipTests -Djmh.args=StartupBenchmark
+ *                    the project file stands in for the first file, on a project this small the rest follows within milliseconds
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StartupBenchmark {
+
+    private static final String TARGET_NAME = "RenamedProject";
+
+    // default: eager spring context, lazy: beans created on first use, cds: class data sharing archive from the training run
+    @Param({"default", "lazy", "cds", "lazy-cds"})
+    private String profile;
+
+    private Path workDir;
+    private Path source;
+    private Path target;
+    private List<String> command;
+    private Process process;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path buildDir = Paths.get(System.getProperty("startup.build.directory", "target"));
+        Path jar = buildDir.resolve("ue4-kopiarka-thin.jar");
+        Path archive = buildDir.resolve("ue4-kopiarka.jsa");
+        if(!Files.exists(jar) || (profile.contains("cds") && !Files.exists(archive))) {
+            throw new IllegalStateException("Missing " + jar + " or " + archive + " build them with mvn -P startup package -DskipTests");
+        }
+
+        workDir = Files.createTempDirectory("kopiarka-startup");
+        source = new SyntheticProject().contentAssets(20).sourceDepth(2).sourceFilesPerDir(4).redirects(10).intermediateFiles(50)
+                .generate(workDir.resolve(SyntheticProject.PROJECT_NAME));
+        target = workDir.resolve(TARGET_NAME);
+
+        command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if(profile.contains("cds")) {
+            command.add("-XX:SharedArchiveFile=" + archive.toAbsolutePath());
+        }
+        command.add("-jar");
+        command.add(jar.toAbsolutePath().toString());
+        command.add("--spring.main.lazy-initialization=" + profile.contains("lazy"));
+        command.add("--project.source.directory=" + source);
+        command.add("--project.source.name=" + SyntheticProject.PROJECT_NAME);
+        command.add("--project.target.directory=" + target);
+        command.add("--project.target.name=" + TARGET_NAME);
+        command.add("--config.force.delete=true");
+    }
+
+    @TearDown(Level.Invocation)
+    public void finishCopy() throws IOException, InterruptedException {
+        // whatever is left of the run is not part of the startup
+        process.waitFor();
+        FileUtils.deleteDirectory(target.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(workDir.toFile());
+    }
+
+    @Benchmark
+    public long firstFileCopied() throws IOException, InterruptedException {
+        Path firstFile = target.resolve(TARGET_NAME + ".uproject");
+        process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(workDir.toFile(), "startup.log"))
+                .start();
+        while(!Files.exists(firstFile)) {
+            if(!process.isAlive()) {
+                throw new IllegalStateException("Copy finished without writing " + firstFile + " see " + workDir.resolve("startup.log"));
+            }
+            Thread.sleep(1);
+        }
+        return Files.size(firstFile);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * SyntheticProject - generates an unreal project layout that is big enough to benchmark against,
+ *                    contents are seeded so every run gets the exact same project
+ */
+public class SyntheticProject {
+
+    public static final String PROJECT_NAME = "BenchProject";
+
+    private static final long SEED = 20180601L;
+
+    private int contentAssets = 1000;
+    private int assetSize = 16 * 1024;
+    private int sourceDepth = 6;
+    private int sourceFilesPerDir = 8;
+    private int redirects = 500;
+    private int intermediateFiles = 5000;
+
+    private final Random random = new Random(SEED);
+
+    public SyntheticProject contentAssets(final int contentAssets) {
+        this.contentAssets = contentAssets;
+        return this;
+    }
+
+    public SyntheticProject assetSize(final int assetSize) {
+        this.assetSize = assetSize;
+        return this;
+    }
+
+    public SyntheticProject sourceDepth(final int sourceDepth) {
+        this.sourceDepth = sourceDepth;
+        return this;
+    }
+
+    public SyntheticProject sourceFilesPerDir(final int sourceFilesPerDir) {
+        this.sourceFilesPerDir = sourceFilesPerDir;
+        return this;
+    }
+
+    public SyntheticProject redirects(final int redirects) {
+        this.redirects = redirects;
+        return this;
+    }
+
+    public SyntheticProject intermediateFiles(final int intermediateFiles) {
+        this.intermediateFiles = intermediateFiles;
+        return this;
+    }
+
+    /**
+     * generate - writes the project to disk
+     * @param root the directory to create the project in, should be empty
+     * @return root
+     * @throws IOException in case touching the disk blows up
+     */
+    public Path generate(final Path root) throws IOException {
+        Files.createDirectories(root);
+        write(root.resolve(PROJECT_NAME + ".uproject"), "{\n\t\"FileVersion\": 3,\n\t\"Modules\": [ { \"Name\": \"" + PROJECT_NAME + "\", \"Type\": \"Runtime\" } ]\n}\n");
+        write(root.resolve(".gitignore"), "Binaries\nIntermediate\nSaved\n");
+
+        Path config = Files.createDirectories(root.resolve("Config"));
+        write(config.resolve("DefaultEngine.ini"), defaultEngineIni(redirects));
+        write(config.resolve("DefaultGame.ini"), "[/Script/EngineSettings.GeneralProjectSettings]\nProjectName=" + PROJECT_NAME + "\n");
+
+        // binary assets spread out over a handful of folders like a real content browser
+        for(int i = 0; i < contentAssets; i++) {
+            Path folder = Files.createDirectories(root.resolve("Content").resolve("Folder" + (i % 32)));
+            writeAsset(folder.resolve("Asset_" + i + (i % 10 == 0 ? ".umap" : ".uasset")), assetSize);
+        }
+
+        // a deep source tree, every level gets its own set of headers and sources
+        Path module = root.resolve("Source").resolve(PROJECT_NAME);
+        for(int depth = 0; depth < sourceDepth; depth++) {
+            Files.createDirectories(module);
+            for(int i = 0; i < sourceFilesPerDir; i++) {
+                String className = "Class" + depth + "_" + i;
+                write(module.resolve(className + ".h"), sourceFile(className, 40));
+                write(module.resolve(className + ".cpp"), sourceFile(className, 120));
+            }
+            module = module.resolve("Level" + depth);
+        }
+
+        // build output that is never copied but still has to be skipped
+        for(int i = 0; i < intermediateFiles; i++) {
+            Path folder = Files.createDirectories(root.resolve("Intermediate").resolve("Build").resolve("Win64").resolve("Module" + (i % 64)).resolve("Obj" + (i % 7)));
+            write(folder.resolve("Unit_" + i + ".obj"), "obj " + i);
+        }
+        return root;
+    }
+
+    /**
+     * defaultEngineIni - a DefaultEngine.ini with the requested number of class redirects
+     * @param redirects number of ActiveClassRedirects lines
+     * @return ini contents
+     */
+    public static String defaultEngineIni(final int redirects) {
+        String lineSeparator = System.getProperty("line.separator");
+        StringBuilder ini = new StringBuilder();
+        ini.append("[URL]").append(lineSeparator);
+        ini.append("GameName=").append(PROJECT_NAME).append(lineSeparator).append(lineSeparator);
+        ini.append("[/Script/Engine.Engine]").append(lineSeparator);
+        for(int i = 0; i < redirects; i++) {
+            ini.append("+ActiveClassRedirects=(OldClassName=\"Old").append(PROJECT_NAME).append("Class").append(i)
+                    .append("\",NewClassName=\"").append(PROJECT_NAME).append("Class").append(i).append("\")").append(lineSeparator);
+        }
+        ini.append(lineSeparator);
+        ini.append("[/Script/EngineSettings.GameMapsSettings]").append(lineSeparator);
+        ini.append("EditorStartupMap=/Game/Maps/").append(PROJECT_NAME).append("Map.").append(PROJECT_NAME).append("Map").append(lineSeparator);
+        return ini.toString();
+    }
+
+    /**
+     * sourceFile - c++ looking source with the project name and api macro sprinkled in
+     * @param className name of the class
+     * @param lines number of lines
+     * @return source contents
+     */
+    public static String sourceFile(final String className, final int lines) {
+        String api = PROJECT_NAME.toUpperCase() + "_API";
+        StringBuilder source = new StringBuilder();
+        source.append("#include \"").append(PROJECT_NAME).append(".h\"\n");
+        source.append("class ").append(api).append(" A").append(className).append(" : public AActor\n{\n");
+        for(int i = 0; i < lines; i++) {
+            if(i % 10 == 0) {
+                source.append("    // part of the ").append(PROJECT_NAME).append(" gameplay module\n");
+            } else {
+                source.append("    float Value").append(i).append(" = GetWorld()->GetTimeSeconds() * ").append(i).append(";\n");
+            }
+        }
+        source.append("};\n");
+        return source.toString();
+    }
+
+    private void writeAsset(final Path file, final int size) throws IOException {
+        byte[] contents = new byte[size];
+        random.nextBytes(contents);
+        // assets carry references to the script package just like the real thing
+        byte[] reference = ("/Script/" + PROJECT_NAME).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(reference, 0, contents, 0, Math.min(reference.length, size));
+        try(OutputStream outputStream = Files.newOutputStream(file)) {
+            outputStream.write(contents);
+        }
+    }
+
+    private static void write(final Path file, final String contents) throws IOException {
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.ini;
+
+import com.jollymonsterstudio.unreal.rename.SubstitutionEngine;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IniRewriterTest {
+
+    private static final SubstitutionEngine SUBSTITUTION_ENGINE = SubstitutionEngine.forProject("OldGame", "NewGame", null);
+
+    private static String rewrite(final String fileName, final String content) throws IOException {
+        StringWriter writer = new StringWriter();
+        new IniRewriter(SUBSTITUTION_ENGINE, IniRewrites.forFile(fileName, "OldGame", "NewGame")).rewrite(new StringReader(content), writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void redirectsGoRightAfterTheEngineHeader() throws IOException {
+        String content = "[URL]\r\n"
+                + "GameName=OldGame\r\n"
+                + "\r\n"
+                + "[/Script/Engine.Engine]\r\n"
+                + "+ActiveClassRedirects=(OldClassName=\"TP_ThirdPersonGameMode\",NewClassName=\"OldGameGameMode\")\r\n"
+                + "; +ActiveClassRedirects=(OldClassName=\"Commented\",NewClassName=\"CommentedOut\")\r\n"
+                + "\r\n"
+                + "[/Script/HardwareTargeting.HardwareTargetingSettings]\r\n"
+                + "+ActiveClassRedirects=(OldClassName=\"Other\",NewClassName=\"OtherSection\")";
+
+        assertEquals("[URL]\r\n"
+                + "GameName=NewGame\r\n"
+                + "\r\n"
+                + "[/Script/Engine.Engine]\r\n"
+                + "\r\n"
+                + "+ActiveGameNameRedirects=(OldGameName=\"/Script/OldGame\", NewGameName=\"/Script/NewGame\")\r\n"
+                + "+ActiveGameNameRedirects=(OldGameName=\"/Script/OldGame.OldGameGameMode\", NewGameName=\"/Script/NewGame.NewGameGameMode\")\r\n"
+                + "+ActiveClassRedirects=(OldClassName=\"TP_ThirdPersonGameMode\",NewClassName=\"NewGameGameMode\")\r\n"
+                + "; +ActiveClassRedirects=(OldClassName=\"Commented\",NewClassName=\"CommentedOut\")\r\n"
+                + "\r\n"
+                + "[/Script/HardwareTargeting.HardwareTargetingSettings]\r\n"
+                + "+ActiveClassRedirects=(OldClassName=\"Other\",NewClassName=\"OtherSection\")\r\n",
+                rewrite("DefaultEngine.ini", content));
+    }
+
+    @Test
+    public void engineSectionAtTheEndOfTheFileIsFlushed() throws IOException {
+        String content = "[/script/engine.engine]\n"
+                + "+ActiveClassRedirects=(OldClassName=\"A\",NewClassName=\"OldGameA\")\n";
+
+        String rewritten = rewrite("DefaultEngine.ini", content);
+
+        assertTrue(rewritten.startsWith("[/script/engine.engine]\n\n+ActiveGameNameRedirects=(OldGameName=\"/Script/OldGame\""));
+        assertTrue(rewritten.endsWith("+ActiveClassRedirects=(OldClassName=\"A\",NewClassName=\"NewGameA\")\n"));
+        assertFalse(rewritten.contains("\r"));
+    }
+
+    @Test
+    public void filesWithoutRewritesAreOnlyRenamed() throws IOException {
+        String content = "[/Script/Engine.Engine]\r\n+ActiveClassRedirects=(OldClassName=\"A\",NewClassName=\"OldGameA\")\r\n";
+
+        assertFalse(IniRewrites.hasRewrites("DefaultGame.ini"));
+        assertEquals(SUBSTITUTION_ENGINE.replace(content), rewrite("DefaultGame.ini", content));
+    }
+
+    @Test
+    public void entriesKeepTheirArrayOperator() {
+        IniEntry entry = IniEntry.parse("  +ActiveClassRedirects = (OldClassName=\"A\")");
+
+        assertEquals('+', entry.getOperator());
+        assertEquals("ActiveClassRedirects", entry.getKey());
+        assertEquals("(OldClassName=\"A\")", entry.getValue());
+        assertEquals(null, IniEntry.parse("; commented=out"));
+        assertEquals("/Script/Engine.Engine", IniRewriter.sectionName("\uFEFF[/Script/Engine.Engine]"));
+    }
+}
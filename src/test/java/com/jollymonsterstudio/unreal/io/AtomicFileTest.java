@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AtomicFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void writeReplacesExistingFile() throws IOException {
+        Path target = Files.write(tempDir.resolve("DefaultGame.ini"), "old".getBytes(StandardCharsets.UTF_8));
+
+        AtomicFile.write(target, outputStream -> outputStream.write("new".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("new", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+        assertFalse(Files.exists(AtomicFile.tempFor(target)));
+    }
+
+    @Test
+    public void failedWriteLeavesTargetAlone() throws IOException {
+        Path target = Files.write(tempDir.resolve("DefaultGame.ini"), "old".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IOException.class, () -> AtomicFile.write(target, outputStream -> {
+            outputStream.write("half".getBytes(StandardCharsets.UTF_8));
+            throw new IOException("disk full");
+        }));
+
+        assertEquals("old", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+        assertFalse(Files.exists(AtomicFile.tempFor(target)));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.manifest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CopyJournalTest {
+
+    private static final String RUN = "/projects/OldGame\tNewGame\tabc";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void resumePicksUpCompletedFiles() throws IOException {
+        Path header = Files.write(tempDir.resolve("NewGame.h"), new byte[10]);
+        Path asset = Files.write(tempDir.resolve("NewGame.uasset"), new byte[10]);
+        Path source = Files.write(tempDir.resolve("NewGame.cpp"), new byte[10]);
+
+        CopyJournal journal = CopyJournal.create(tempDir, RUN);
+        journal.record("NewGame.h", 10, 1, lastModified(header));
+        journal.record("NewGame.uasset", 20, 1, lastModified(asset));
+        journal.record("NewGame.cpp", 10, 1, lastModified(source));
+        journal.close();
+        // written again after the interrupted run recorded it, same size but not the file that was journaled
+        Files.setLastModifiedTime(source, FileTime.fromMillis(lastModified(source) - 10000));
+
+        CopyJournal resumed = CopyJournal.resume(tempDir, RUN);
+        assertTrue(resumed.isComplete("NewGame.h", header, 1));
+        // the source changed since the file was written
+        assertFalse(resumed.isComplete("NewGame.h", header, 2));
+        // size on disk does not match what was written, the file was touched since
+        assertFalse(resumed.isComplete("NewGame.uasset", asset, 1));
+        assertFalse(resumed.isComplete("NewGame.cpp", source, 1));
+        assertFalse(resumed.isComplete("Missing.h", tempDir.resolve("Missing.h"), 1));
+
+        resumed.complete();
+        assertFalse(Files.exists(tempDir.resolve(CopyJournal.FILE_NAME)));
+    }
+
+    @Test
+    public void tornEntriesAndOtherRunsAreIgnored() throws IOException {
+        Path header = Files.write(tempDir.resolve("NewGame.h"), new byte[10]);
+
+        CopyJournal journal = CopyJournal.create(tempDir, RUN);
+        journal.record("NewGame.h", 10, 1, lastModified(header));
+        journal.close();
+        // crash halfway through writing the next entry
+        Files.write(tempDir.resolve(CopyJournal.FILE_NAME), "Other.h\t10\t".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        CopyJournal resumed = CopyJournal.resume(tempDir, RUN);
+        assertTrue(resumed.isComplete("NewGame.h", header, 1));
+        resumed.close();
+
+        CopyJournal otherRun = CopyJournal.resume(tempDir, "/projects/OldGame\tOtherGame\tabc");
+        assertFalse(otherRun.isComplete("NewGame.h", header, 1));
+        otherRun.close();
+    }
+
+    private static long lastModified(final Path file) throws IOException {
+        return Files.getLastModifiedTime(file).toMillis();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.manifest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CopyManifestTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void savedEntriesAreLoadedBack() throws IOException {
+        CopyManifest manifest = CopyManifest.load(tempDir);
+        manifest.record(new ManifestEntry("Config/DefaultGame.ini", "Config/DefaultGame.ini", 12, 1000, ManifestEntry.NO_HASH, "OldGame>NewGame"));
+        manifest.record(new ManifestEntry("OldGame.uproject", "NewGame.uproject", 34, 2000, "0123abcd", ManifestEntry.NO_RULES));
+        manifest.save();
+
+        assertFalse(Files.exists(tempDir.resolve(CopyManifest.FILE_NAME + ".tmp")));
+        CopyManifest loaded = CopyManifest.load(tempDir);
+        ManifestEntry project = loaded.previous("OldGame.uproject");
+        assertEquals("NewGame.uproject", project.getTargetPath());
+        assertEquals(34, project.getSize());
+        assertEquals(2000, project.getLastModified());
+        assertEquals("0123abcd", project.getHash());
+        assertTrue(project.hasHash());
+        assertTrue(project.isUnchanged("NewGame.uproject", 34, 2000, ManifestEntry.NO_RULES));
+        assertFalse(project.isUnchanged("NewGame.uproject", 34, 2001, ManifestEntry.NO_RULES));
+
+        ManifestEntry config = loaded.previous("Config/DefaultGame.ini");
+        assertFalse(config.hasHash());
+        assertEquals("OldGame>NewGame", config.getRules());
+        assertNull(loaded.previous("Missing.uasset"));
+    }
+
+    @Test
+    public void foreignManifestIsIgnored() throws IOException {
+        Files.write(tempDir.resolve(CopyManifest.FILE_NAME), Arrays.asList("# some other tool", "a\tb\t1\t2\t-\t-"), StandardCharsets.UTF_8);
+
+        CopyManifest manifest = CopyManifest.load(tempDir);
+        assertNull(manifest.previous("a"));
+        assertEquals(Collections.emptyList(), manifest.staleTargets());
+    }
+
+    @Test
+    public void corruptManifestIsIgnored() throws IOException {
+        Files.write(tempDir.resolve(CopyManifest.FILE_NAME),
+                Arrays.asList("# kopiarka manifest v1", "a\tb\t1\t2\t-\t-", "c\td\tnot-a-size\t2\t-\t-"), StandardCharsets.UTF_8);
+
+        // one bad line throws away the lines read before it too, everything gets copied again
+        CopyManifest manifest = CopyManifest.load(tempDir);
+        assertNull(manifest.previous("a"));
+        assertNull(manifest.previous("c"));
+    }
+
+    @Test
+    public void incompleteLinesAreSkipped() throws IOException {
+        Files.write(tempDir.resolve(CopyManifest.FILE_NAME),
+                Arrays.asList("# kopiarka manifest v1", "a\tb\t1", "c\td\t1\t2\t-\t-"), StandardCharsets.UTF_8);
+
+        CopyManifest manifest = CopyManifest.load(tempDir);
+        assertNull(manifest.previous("a"));
+        assertEquals("d", manifest.previous("c").getTargetPath());
+    }
+
+    @Test
+    public void targetsNothingMapsToAnymoreAreStale() throws IOException {
+        CopyManifest first = CopyManifest.load(tempDir);
+        first.record(new ManifestEntry("Kept.uasset", "Kept.uasset", 1, 1, ManifestEntry.NO_HASH, ManifestEntry.NO_RULES));
+        first.record(new ManifestEntry("Removed.uasset", "Removed.uasset", 1, 1, ManifestEntry.NO_HASH, ManifestEntry.NO_RULES));
+        first.record(new ManifestEntry("OldGame.uproject", "OldGame.uproject", 1, 1, ManifestEntry.NO_HASH, ManifestEntry.NO_RULES));
+        first.save();
+
+        CopyManifest second = CopyManifest.load(tempDir);
+        second.record(new ManifestEntry("Kept.uasset", "Kept.uasset", 1, 1, ManifestEntry.NO_HASH, ManifestEntry.NO_RULES));
+        // same source, different target name
+        second.record(new ManifestEntry("OldGame.uproject", "NewGame.uproject", 1, 1, ManifestEntry.NO_HASH, ManifestEntry.NO_RULES));
+
+        assertEquals(Arrays.asList("OldGame.uproject", "Removed.uasset"), second.staleTargets());
+    }
+
+    @Test
+    public void failedCopiesKeepTheirPreviousEntry() throws IOException {
+        CopyManifest first = CopyManifest.load(tempDir);
+        first.record(new ManifestEntry("Failed.uasset", "Failed.uasset", 1, 1, "aa", ManifestEntry.NO_RULES));
+        first.record(new ManifestEntry("Recorded.uasset", "Recorded.uasset", 1, 1, "bb", ManifestEntry.NO_RULES));
+        first.save();
+
+        CopyManifest second = CopyManifest.load(tempDir);
+        second.carryForward("Failed.uasset");
+        second.record(new ManifestEntry("Recorded.uasset", "Recorded.uasset", 2, 2, "cc", ManifestEntry.NO_RULES));
+        // what this run recorded wins over the previous entry
+        second.carryForward("Recorded.uasset");
+        // nothing to carry for a source the last run never saw
+        second.carryForward("New.uasset");
+        assertEquals(Collections.emptyList(), second.staleTargets());
+        second.save();
+
+        CopyManifest third = CopyManifest.load(tempDir);
+        assertEquals("aa", third.previous("Failed.uasset").getHash());
+        assertEquals("cc", third.previous("Recorded.uasset").getHash());
+        assertNull(third.previous("New.uasset"));
+    }
+
+    @Test
+    public void hashFollowsContents() throws IOException {
+        Path file = Files.write(tempDir.resolve("Level.umap"), new byte[] {1, 2, 3});
+        String hash = CopyManifest.hash(file);
+        assertEquals(CopyManifest.toHex(CopyManifest.newDigest().digest(new byte[] {1, 2, 3})), hash);
+        assertEquals(32, hash.length());
+
+        Files.write(file, new byte[] {1, 2, 4});
+        assertNotEquals(hash, CopyManifest.hash(file));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.metrics;
+
+import com.jollymonsterstudio.unreal.visitor.FileType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CopyMetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void histogramUsesPowerOfTwoBuckets() {
+        assertEquals(0, LatencyHistogram.bucketFor(999));
+        assertEquals(1, LatencyHistogram.bucketFor(1000));
+        assertEquals(2, LatencyHistogram.bucketFor(3999));
+        assertEquals(3, LatencyHistogram.bucketFor(4000));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketFor(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(50));
+
+        for(int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(10));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(16, histogram.percentile(50));
+        assertEquals(16, histogram.percentile(99));
+        assertEquals(8192, histogram.percentile(100));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5), histogram.getMaxNanos());
+    }
+
+    @Test
+    public void reportContainsCountersAndPhases() throws IOException {
+        CopyMetrics metrics = new CopyMetrics();
+        metrics.started();
+        metrics.record(Phase.BINARY_COPY, metrics.start(), 2048);
+        metrics.copied(FileType.BINARY, 2048, 2048);
+        metrics.copied(FileType.ASCII, 100, 120);
+        metrics.unchanged(FileType.ASCII);
+        metrics.finished();
+
+        Path reportFile = tempDir.resolve("reports").resolve("copy.json");
+        metrics.writeReport(reportFile);
+        String report = new String(Files.readAllBytes(reportFile), StandardCharsets.UTF_8);
+
+        assertTrue(report.contains("\"BINARY\": { \"files\": 1, \"unchangedFiles\": 0, \"sourceBytes\": 2048, \"targetBytes\": 2048 }"));
+        assertTrue(report.contains("\"ASCII\": { \"files\": 1, \"unchangedFiles\": 1, \"sourceBytes\": 100, \"targetBytes\": 120 }"));
+        assertTrue(report.contains("\"BINARY_COPY\": {\n      \"count\": 1,"));
+        assertTrue(report.contains("\"INI_PATCH\": {\n      \"count\": 0,"));
+        assertFalse(Files.exists(reportFile.resolveSibling("copy.json.tmp")));
+        // measured from jvm start, the first file can only come after the run started
+        assertTrue(metrics.getStartupMillis() >= 0);
+        assertTrue(metrics.getFirstFileMillis() >= metrics.getStartupMillis());
+        assertTrue(report.contains("\"firstFileMs\": " + metrics.getFirstFileMillis() + ",\n"));
+    }
+
+    @Test
+    public void binderExposesLiveValues() {
+        CopyMetrics metrics = new CopyMetrics();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new CopyMetricsBinder(metrics).bindTo(registry);
+
+        metrics.copied(FileType.BINARY, 10, 10);
+        metrics.record(Phase.MKDIR, metrics.start());
+
+        assertEquals(1.0, registry.get("kopiarka.files").tag("type", "binary").functionCounter().count());
+        assertEquals(10.0, registry.get("kopiarka.bytes").tags("type", "binary", "side", "target").functionCounter().count());
+        assertEquals(1.0, registry.get("kopiarka.phase").tag("phase", "mkdir").functionTimer().count());
+    }
+
+    @Test
+    public void binderAddsUpEveryCopy() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CopyMetricsBinder binder = new CopyMetricsBinder();
+        binder.bindTo(registry);
+
+        CopyMetrics first = new CopyMetrics();
+        binder.started(first);
+        first.copied(FileType.BINARY, 10, 10);
+        first.record(Phase.MKDIR, first.start());
+        binder.finished(first);
+
+        CopyMetrics second = new CopyMetrics();
+        binder.started(second);
+        second.copied(FileType.BINARY, 5, 5);
+
+        assertEquals(2.0, registry.get("kopiarka.files").tag("type", "binary").functionCounter().count());
+        assertEquals(15.0, registry.get("kopiarka.bytes").tags("type", "binary", "side", "source").functionCounter().count());
+        assertEquals(1.0, registry.get("kopiarka.phase").tag("phase", "mkdir").functionTimer().count());
+
+        // finishing a copy never takes anything away, finishing it twice does not count it twice
+        binder.finished(second);
+        binder.finished(second);
+        assertEquals(2.0, registry.get("kopiarka.files").tag("type", "binary").functionCounter().count());
+    }
+}
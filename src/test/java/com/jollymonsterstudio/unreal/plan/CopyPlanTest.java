@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.plan;
+
+import com.jollymonsterstudio.unreal.rename.SubstitutionEngine;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CopyPlanTest {
+
+    private final Path source = Paths.get("/projects", "OldGame");
+    private final Path target = Paths.get("/projects", "NewGame");
+
+    @Test
+    public void resolveTargetRenamesEveryLevel() {
+        CopyPlan plan = newPlan();
+
+        assertEquals(target, plan.resolveTarget(source));
+        assertEquals(target.resolve("Source").resolve("NewGame").resolve("NewGameMode.h"),
+                plan.resolveTarget(source.resolve("Source").resolve("OldGame").resolve("OldGameMode.h")));
+    }
+
+    @Test
+    public void resolveTargetBuildsOnPlannedDirectories() {
+        CopyPlan plan = newPlan();
+        Path sourceDir = source.resolve("Source").resolve("OldGame");
+        // whatever the parent was planned as is what its children end up under
+        Path plannedDir = target.resolve("Source").resolve("Planned");
+        plan.add(new CopyOperation(OperationType.MKDIR, null, sourceDir, plannedDir, 0, 0));
+
+        assertEquals(plannedDir.resolve("NewGameMode.h"), plan.resolveTarget(sourceDir.resolve("OldGameMode.h")));
+        // names above the source are never renamed
+        assertEquals(target.resolve("Config"), plan.resolveTarget(source.resolve("Config")));
+    }
+
+    private CopyPlan newPlan() {
+        return new CopyPlan(source, "OldGame", target, "NewGame", SubstitutionEngine.forProject("OldGame", "NewGame", null), null);
+    }
+}
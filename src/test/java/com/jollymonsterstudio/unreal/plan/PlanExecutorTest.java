@@ -0,0 +1,300 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.plan;
+
+import com.jollymonsterstudio.unreal.manifest.CopyJournal;
+import com.jollymonsterstudio.unreal.metrics.CopyMetrics;
+import com.jollymonsterstudio.unreal.transfer.PackagePatcher;
+import com.jollymonsterstudio.unreal.transfer.RangedCopy;
+import com.jollymonsterstudio.unreal.transfer.TransferStrategy;
+import com.jollymonsterstudio.unreal.visitor.FileType;
+import com.jollymonsterstudio.unreal.visitor.UnrealFileVisitor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PlanExecutorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void scheduleStartsWithLargeFilesThenBulkiestDirectories() {
+        List<CopyOperation> copies = new ArrayList<>();
+        copies.add(file("Content/A/b.uasset", 10));
+        copies.add(file("Content/A/a.uasset", 10));
+        copies.add(file("Content/B/huge.uasset", PlanExecutor.LARGE_FILE_SIZE * 2));
+        copies.add(file("Content/C/c.uasset", 500));
+        copies.add(file("Content/C/big.uasset", PlanExecutor.LARGE_FILE_SIZE));
+
+        List<List<CopyOperation>> batches = PlanExecutor.schedule(copies);
+
+        assertEquals(4, batches.size());
+        assertEquals("huge.uasset", name(batches.get(0).get(0)));
+        assertEquals("big.uasset", name(batches.get(1).get(0)));
+        assertEquals("c.uasset", name(batches.get(2).get(0)));
+        // small files of the same directory stay together in name order
+        assertEquals(2, batches.get(3).size());
+        assertEquals("a.uasset", name(batches.get(3).get(0)));
+        assertEquals("b.uasset", name(batches.get(3).get(1)));
+    }
+
+    @Test
+    public void scheduleSplitsLargeDirectories() {
+        List<CopyOperation> copies = new ArrayList<>();
+        for(int i = 0; i < PlanExecutor.BATCH_SIZE + 1; i++) {
+            copies.add(file("Content/A/" + i + ".uasset", 10));
+        }
+
+        List<List<CopyOperation>> batches = PlanExecutor.schedule(copies);
+
+        assertEquals(2, batches.size());
+        assertEquals(PlanExecutor.BATCH_SIZE, batches.get(0).size());
+    }
+
+    @Test
+    public void scheduleReadsFilesInDiskOrder() {
+        List<CopyOperation> copies = new ArrayList<>();
+        copies.add(file("Content/A/a.uasset", 10, 30));
+        copies.add(file("Content/B/huge.uasset", PlanExecutor.LARGE_FILE_SIZE * 2, 20));
+        copies.add(file("Content/A/b.uasset", 10, 10));
+
+        // several workers still balance, only files of the same directory follow the disk
+        List<List<CopyOperation>> batches = PlanExecutor.schedule(copies, 2);
+        assertEquals(2, batches.size());
+        assertEquals("huge.uasset", name(batches.get(0).get(0)));
+        assertEquals("b.uasset", name(batches.get(1).get(0)));
+        assertEquals("a.uasset", name(batches.get(1).get(1)));
+
+        // a single worker sweeps across the disk once
+        batches = PlanExecutor.schedule(copies, 1);
+        assertEquals(1, batches.size());
+        assertEquals("b.uasset", name(batches.get(0).get(0)));
+        assertEquals("huge.uasset", name(batches.get(0).get(1)));
+        assertEquals("a.uasset", name(batches.get(0).get(2)));
+    }
+
+    @Test
+    public void planIsOnlyWrittenByTheExecutor() throws IOException {
+        Path source = tempDir.resolve("OldGame");
+        Files.createDirectories(source.resolve("Source").resolve("OldGame"));
+        Files.write(source.resolve("Source").resolve("OldGame").resolve("OldGame.h"), "class OLDGAME_API AOldGame;".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(source.resolve("Intermediate"));
+        Files.write(source.resolve("Intermediate").resolve("Build.h"), "ignored".getBytes(StandardCharsets.UTF_8));
+        Path target = tempDir.resolve("NewGame");
+
+        UnrealFileVisitor fileVisitor = new UnrealFileVisitor(source, "OldGame", target, "NewGame", null, null, null, null, false);
+        fileVisitor.init();
+        Files.walkFileTree(source, fileVisitor);
+        CopyPlan plan = fileVisitor.getPlan();
+
+        assertFalse(Files.exists(target));
+        assertEquals(3, plan.getCount(OperationType.MKDIR));
+        assertEquals(1, plan.getCount(OperationType.REWRITE));
+
+        new PlanExecutor(plan, 1, TransferStrategy.COPY, new CopyMetrics()).execute();
+
+        Path header = target.resolve("Source").resolve("NewGame").resolve("NewGame.h");
+        assertTrue(Files.exists(header));
+        assertEquals("class NEWGAME_API ANewGame;", new String(Files.readAllBytes(header), StandardCharsets.UTF_8));
+        assertFalse(Files.exists(target.resolve("Intermediate")));
+    }
+
+    @Test
+    public void everyTargetGetsItsOwnRenamedCopy() throws IOException {
+        Path source = tempDir.resolve("OldGame");
+        Files.createDirectories(source.resolve("Source").resolve("OldGame"));
+        Files.write(source.resolve("Source").resolve("OldGame").resolve("OldGame.h"), "class OLDGAME_API AOldGame;".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(source.resolve("Content"));
+        byte[] asset = new byte[3 * 1024 * 1024 + 7];
+        for(int i = 0; i < asset.length; i++) {
+            asset[i] = (byte) i;
+        }
+        Files.write(source.resolve("Content").resolve("OldGame.uasset"), asset);
+
+        List<CopyTarget> targets = new ArrayList<>();
+        targets.add(new CopyTarget(tempDir.resolve("TeamA"), "TeamA"));
+        targets.add(CopyTarget.parse(tempDir.resolve("TeamB") + " => TeamB"));
+
+        UnrealFileVisitor fileVisitor = new UnrealFileVisitor(source, "OldGame", targets, null, null, null, null, false, false);
+        fileVisitor.init();
+        Files.walkFileTree(source, fileVisitor);
+
+        assertEquals(2, fileVisitor.getPlans().size());
+        // a tiny in flight budget splits the asset into ranges
+        new PlanExecutor(fileVisitor.getPlans(), 2, TransferStrategy.TRANSFER, new RangedCopy(1024 * 1024), null, null, null, false, new CopyMetrics()).execute();
+
+        for(CopyTarget target : targets) {
+            String name = target.getProjectName();
+            Path header = target.getDirectory().resolve("Source").resolve(name).resolve(name + ".h");
+            assertEquals("class " + name.toUpperCase() + "_API A" + name + ";", new String(Files.readAllBytes(header), StandardCharsets.UTF_8));
+            assertArrayEquals(asset, Files.readAllBytes(target.getDirectory().resolve("Content").resolve(name + ".uasset")));
+        }
+    }
+
+    @Test
+    public void resumeOnlyCopiesWhatIsMissing() throws IOException {
+        Path source = tempDir.resolve("OldGame");
+        Path sourceDir = Files.createDirectories(source.resolve("Source").resolve("OldGame"));
+        Files.write(sourceDir.resolve("OldGame.h"), "class OLDGAME_API AOldGame;".getBytes(StandardCharsets.UTF_8));
+        Files.write(sourceDir.resolve("OldGame.cpp"), "#include \"OldGame.h\"".getBytes(StandardCharsets.UTF_8));
+        Path target = tempDir.resolve("NewGame");
+
+        UnrealFileVisitor fileVisitor = new UnrealFileVisitor(source, "OldGame", target, "NewGame", null, null, null, null, false);
+        fileVisitor.init();
+        Files.walkFileTree(source, fileVisitor);
+        CopyPlan plan = fileVisitor.getPlan();
+
+        // the interrupted run finished the header and died in the middle of the cpp
+        Path targetDir = Files.createDirectories(target.resolve("Source").resolve("NewGame"));
+        Path header = Files.write(targetDir.resolve("NewGame.h"), "finished by the interrupted run".getBytes(StandardCharsets.UTF_8));
+        Files.write(targetDir.resolve("NewGame.cpp"), "#incl".getBytes(StandardCharsets.UTF_8));
+        CopyJournal journal = CopyJournal.create(target, String.join("\t", source.toAbsolutePath().toString(), "NewGame", plan.rulesFor(FileType.ASCII)));
+        journal.record("Source/NewGame/NewGame.h", Files.size(header), Files.getLastModifiedTime(sourceDir.resolve("OldGame.h")).toMillis(),
+                Files.getLastModifiedTime(header).toMillis());
+        journal.close();
+
+        new PlanExecutor(Collections.singletonList(plan), 1, TransferStrategy.COPY, new RangedCopy(PlanExecutor.DEFAULT_IN_FLIGHT_BYTES), null, null, null, true, new CopyMetrics()).execute();
+
+        assertEquals("finished by the interrupted run", new String(Files.readAllBytes(header), StandardCharsets.UTF_8));
+        assertEquals("#include \"NewGame.h\"", new String(Files.readAllBytes(targetDir.resolve("NewGame.cpp")), StandardCharsets.UTF_8));
+        assertFalse(Files.exists(target.resolve(CopyJournal.FILE_NAME)));
+    }
+
+    @Test
+    public void asciiFilesWithNothingToRenameAreCopiedAsIs() throws IOException {
+        Path source = tempDir.resolve("OldGame");
+        Path sourceDir = Files.createDirectories(source.resolve("Source").resolve("OldGame"));
+        // not valid utf-8, decoding and encoding it again would not give back the same bytes
+        byte[] untouched = { '/', '/', ' ', (byte) 0xFF, (byte) 0xFE, '\n' };
+        Files.write(sourceDir.resolve("Untouched.h"), untouched);
+        Files.write(sourceDir.resolve("OldGame.h"), "class OLDGAME_API AOldGame;".getBytes(StandardCharsets.UTF_8));
+        Path target = tempDir.resolve("NewGame");
+
+        UnrealFileVisitor fileVisitor = new UnrealFileVisitor(source, "OldGame", target, "NewGame", null, null, null, null, false);
+        fileVisitor.init();
+        Files.walkFileTree(source, fileVisitor);
+        new PlanExecutor(fileVisitor.getPlan(), 1, TransferStrategy.HARDLINK, new CopyMetrics()).execute();
+
+        Path targetDir = target.resolve("Source").resolve("NewGame");
+        assertArrayEquals(untouched, Files.readAllBytes(targetDir.resolve("Untouched.h")));
+        // never linked, editing the clone must not change the source
+        assertEquals(1, Files.getAttribute(targetDir.resolve("Untouched.h"), "unix:nlink"));
+        assertEquals("class NEWGAME_API ANewGame;", new String(Files.readAllBytes(targetDir.resolve("NewGame.h")), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void failedIncrementalCopyKeepsTheLastGoodTarget() throws IOException {
+        Path source = tempDir.resolve("OldGame");
+        Path sourceDir = Files.createDirectories(source.resolve("Source").resolve("OldGame"));
+        Path sourceHeader = Files.write(sourceDir.resolve("OldGame.h"), "class OLDGAME_API AOldGame;".getBytes(StandardCharsets.UTF_8));
+        Path target = tempDir.resolve("NewGame");
+        incrementalCopy(source, target);
+
+        // the source can no longer be read, the copy from the last run must survive the stale cleanup
+        Files.delete(sourceHeader);
+        Files.createSymbolicLink(sourceHeader, tempDir.resolve("missing.h"));
+        assertEquals(1, incrementalCopy(source, target));
+        assertEquals("class NEWGAME_API ANewGame;",
+                new String(Files.readAllBytes(target.resolve("Source").resolve("NewGame").resolve("NewGame.h")), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void packagesAreNotScannedWhenNoTargetCanBePatched() throws IOException {
+        Path source = tempDir.resolve("OldGame");
+        Path content = Files.createDirectories(source.resolve("Content"));
+        byte[] map = "....../Script/OldGame\0....".getBytes(StandardCharsets.US_ASCII);
+        Files.write(content.resolve("Main.umap"), map);
+        Path target = tempDir.resolve("LongerGame");
+
+        UnrealFileVisitor fileVisitor = new UnrealFileVisitor(source, "OldGame", target, "LongerGame", null, null, null, null, false);
+        fileVisitor.init();
+        Files.walkFileTree(source, fileVisitor);
+        PackagePatcher packagePatcher = new PackagePatcher("OldGame");
+        new PlanExecutor(Collections.singletonList(fileVisitor.getPlan()), 1, TransferStrategy.COPY, new RangedCopy(PlanExecutor.DEFAULT_IN_FLIGHT_BYTES), null, packagePatcher,
+                null, false, new CopyMetrics()).execute();
+
+        assertEquals(0, packagePatcher.getScannedFiles());
+        assertArrayEquals(map, Files.readAllBytes(target.resolve("Content").resolve("Main.umap")));
+    }
+
+    @Test
+    public void uncheckedFailuresOnPoolThreadsAreCountedAsFailedFiles() throws IOException {
+        Path source = tempDir.resolve("OldGame");
+        Path content = Files.createDirectories(source.resolve("Content"));
+        for(int i = 0; i < 4; i++) {
+            Files.write(content.resolve("Asset" + i + ".uasset"), new byte[] {(byte) i});
+        }
+        Files.write(content.resolve("Broken.umap"), new byte[] {9});
+        Path target = tempDir.resolve("NewGame");
+
+        UnrealFileVisitor fileVisitor = new UnrealFileVisitor(source, "OldGame", target, "NewGame", null, null, null, null, false);
+        fileVisitor.init();
+        Files.walkFileTree(source, fileVisitor);
+        PackagePatcher packagePatcher = new PackagePatcher("OldGame") {
+            @Override
+            public long[] find(final Path file) {
+                if(file.getFileName().toString().startsWith("Broken")) {
+                    throw new IllegalStateException("Unable to read " + file);
+                }
+                return new long[0];
+            }
+        };
+        PlanExecutor planExecutor = new PlanExecutor(Collections.singletonList(fileVisitor.getPlan()), 2, TransferStrategy.COPY,
+                new RangedCopy(PlanExecutor.DEFAULT_IN_FLIGHT_BYTES), null, packagePatcher, null, false, new CopyMetrics());
+        planExecutor.execute();
+
+        assertEquals(1, planExecutor.getFailedFiles());
+        for(int i = 0; i < 4; i++) {
+            assertArrayEquals(new byte[] {(byte) i}, Files.readAllBytes(target.resolve("Content").resolve("Asset" + i + ".uasset")));
+        }
+    }
+
+    private static long incrementalCopy(final Path source, final Path target) throws IOException {
+        UnrealFileVisitor fileVisitor = new UnrealFileVisitor(source, "OldGame", target, "NewGame", null, null, null, null, true);
+        fileVisitor.init();
+        Files.walkFileTree(source, fileVisitor);
+        PlanExecutor planExecutor = new PlanExecutor(fileVisitor.getPlan(), 1, TransferStrategy.COPY, new CopyMetrics());
+        planExecutor.execute();
+        return planExecutor.getFailedFiles();
+    }
+
+    private static CopyOperation file(final String path, final long size) {
+        return new CopyOperation(OperationType.BINARY, FileType.BINARY, Paths.get("/source", path), Paths.get("/target", path), size, 0);
+    }
+
+    private static CopyOperation file(final String path, final long size, final long diskOrder) {
+        return new CopyOperation(OperationType.BINARY, FileType.BINARY, Paths.get("/source", path), Paths.get("/target", path), size, 0, diskOrder);
+    }
+
+    private static String name(final CopyOperation operation) {
+        return operation.getTarget().getFileName().toString();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.rename;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ReplacingInputStreamTest {
+
+    private final SubstitutionEngine engine = SubstitutionEngine.forProject("OldProject", "NewProject", null);
+
+    @Test
+    public void renamesWhileReading() throws IOException {
+        assertEquals("class NEWPROJECT_API ANewProjectGameMode {}; // NewProject",
+                read("class OLDPROJECT_API AOldProjectGameMode {}; // OldProject"));
+    }
+
+    @Test
+    public void renamesMatchesAcrossChunks() throws IOException {
+        // large enough for several chunks with a search term right on every chunk boundary and one at the very end
+        StringBuilder content = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 5; i++) {
+            for(int j = 0; j < 8192 - 5; j++) {
+                content.append('x');
+                expected.append('x');
+            }
+            content.append("OldProject");
+            expected.append("NewProject");
+        }
+
+        assertEquals(expected.toString(), read(content.toString()));
+    }
+
+    private String read(final String content) throws IOException {
+        try(InputStream inputStream = new ReplacingInputStream(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8, engine)) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.rename;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ReplacingWriterTest {
+
+    private static final String CONTENT = "class OLDPROJECT_API AOldProjectGameMode {}; // OldProject";
+    private static final String EXPECTED = "class NEWPROJECT_API ANewProjectGameMode {}; // NewProject";
+
+    @Test
+    public void replacesWholeContent() throws IOException {
+        assertEquals(EXPECTED, rename(CONTENT, CONTENT.length()));
+    }
+
+    @Test
+    public void replacesMatchesSpanningWrites() throws IOException {
+        // every chunk size forces the search terms to be split at a different spot
+        for(int chunkSize = 1; chunkSize < CONTENT.length(); chunkSize++) {
+            assertEquals(EXPECTED, rename(CONTENT, chunkSize), "chunk size " + chunkSize);
+        }
+    }
+
+    @Test
+    public void keepsPartialMatchAtEndOfInput() throws IOException {
+        assertEquals("Old OldProj", rename("Old OldProj", 3));
+    }
+
+    private String rename(final String content, final int chunkSize) throws IOException {
+        StringWriter result = new StringWriter();
+        try(Writer writer = SubstitutionEngine.forProject("OldProject", "NewProject", null).newWriter(result)) {
+            for(int i = 0; i < content.length(); i += chunkSize) {
+                writer.write(content, i, Math.min(chunkSize, content.length() - i));
+            }
+        }
+        return result.toString();
+    }
+}
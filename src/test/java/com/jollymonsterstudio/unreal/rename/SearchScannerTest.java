@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.rename;
+
+import com.jollymonsterstudio.unreal.manifest.CopyManifest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SearchScannerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final SearchScanner scanner = new SearchScanner(SubstitutionEngine.forProject("OldGame", "NewGame", new String[] { "Old Studio=>New Studio" }),
+            StandardCharsets.UTF_8);
+
+    @Test
+    public void findsTermsAtEveryOffset() {
+        for(String term : new String[] { "OldGame", "OLDGAME_API", "Old Studio" }) {
+            for(int offset = 0; offset < 24; offset++) {
+                char[] padding = new char[offset];
+                Arrays.fill(padding, 'x');
+                assertTrue(scanner.containsAny(buffer(new String(padding) + term + "yyyy"), offset + term.length() + 4), term + " at " + offset);
+            }
+        }
+    }
+
+    @Test
+    public void ignoresNearMisses() {
+        String contents = "OldGam OLDGAME_AP Old Studi oldgame OOOOOOOO ldGame Ol dGame";
+        ByteBuffer buffer = buffer(contents);
+
+        assertFalse(scanner.containsAny(buffer, buffer.limit()));
+    }
+
+    @Test
+    public void termsMayRunPastTheLimit() {
+        ByteBuffer buffer = buffer("xxxxxxxxxxOldGame");
+
+        assertTrue(scanner.containsAny(buffer, 11));
+        assertFalse(scanner.containsAny(buffer, 10));
+    }
+
+    @Test
+    public void mapsLargeFilesAndHashesThemOnTheWay() throws IOException {
+        byte[] contents = new byte[SearchScanner.MAP_THRESHOLD * 3 + 5];
+        Arrays.fill(contents, (byte) 'O');
+        Path file = Files.write(tempDir.resolve("Large.txt"), contents);
+
+        MessageDigest digest = CopyManifest.newDigest();
+        assertFalse(scanner.containsAny(file, digest));
+        assertArrayEquals(CopyManifest.newDigest().digest(contents), digest.digest());
+
+        byte[] term = "OldGame".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(term, 0, contents, contents.length - term.length, term.length);
+        Files.write(file, contents);
+        assertTrue(scanner.containsAny(file, null));
+    }
+
+    @Test
+    public void smallFilesAreReadAndHashed() throws IOException {
+        byte[] contents = "#pragma once\n// nothing to rename here\n".getBytes(StandardCharsets.UTF_8);
+        Path file = Files.write(tempDir.resolve("Small.h"), contents);
+
+        MessageDigest digest = CopyManifest.newDigest();
+        assertFalse(scanner.containsAny(file, digest));
+        assertArrayEquals(CopyManifest.newDigest().digest(contents), digest.digest());
+        assertTrue(scanner.containsAny(Files.write(tempDir.resolve("Game.h"), "class OLDGAME_API AOldGame;".getBytes(StandardCharsets.UTF_8)), null));
+    }
+
+    private static ByteBuffer buffer(final String contents) {
+        return ByteBuffer.wrap(contents.getBytes(StandardCharsets.UTF_8)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.rename;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SubstitutionEngineTest {
+
+    @Test
+    public void appliesProjectRulesInOnePass() {
+        SubstitutionEngine engine = SubstitutionEngine.forProject("OldProject", "NewProject", new String[] { "Copyright Old Studio=>Copyright New Studio" });
+
+        assertEquals("// Copyright New Studio\nclass NEWPROJECT_API ANewProjectCharacter;",
+                engine.replace("// Copyright Old Studio\nclass OLDPROJECT_API AOldProjectCharacter;"));
+    }
+
+    @Test
+    public void longestMatchWinsAtSameStart() {
+        SubstitutionEngine engine = new SubstitutionEngine(Arrays.asList(new RenameRule("Old", "A"), new RenameRule("OldModule", "B")));
+
+        assertEquals("B A", engine.replace("OldModule Old"));
+    }
+
+    @Test
+    public void earliestMatchWinsOverLongerOverlap() {
+        SubstitutionEngine engine = new SubstitutionEngine(Arrays.asList(new RenameRule("bcde", "X"), new RenameRule("ab", "Y")));
+
+        assertEquals("Ycde", engine.replace("abcde"));
+    }
+
+    @Test
+    public void laterMatchContainingCandidateStillWins() {
+        SubstitutionEngine engine = new SubstitutionEngine(Arrays.asList(new RenameRule("bc", "X"), new RenameRule("abcd", "Y")));
+
+        assertEquals("Y aXe", engine.replace("abcd abce"));
+    }
+
+    @Test
+    public void firstRuleWinsForDuplicateSearch() {
+        SubstitutionEngine engine = new SubstitutionEngine(Arrays.asList(new RenameRule("Old", "First"), new RenameRule("Old", "Second")));
+
+        assertEquals("First", engine.replace("Old"));
+        assertEquals(1, engine.getRules().size());
+    }
+
+    @Test
+    public void replacedTextIsNotExaminedAgain() {
+        SubstitutionEngine engine = new SubstitutionEngine(Arrays.asList(new RenameRule("Old", "OldOld")));
+
+        assertEquals("OldOld-OldOld", engine.replace("Old-Old"));
+    }
+
+    @Test
+    public void handlesCharactersOutsideAscii() {
+        SubstitutionEngine engine = new SubstitutionEngine(Arrays.asList(new RenameRule("Zażółć", "Gęślą")));
+
+        assertEquals("// Gęślą jaźń", engine.replace("// Zażółć jaźń"));
+    }
+
+    @Test
+    public void rejectsMalformedRule() {
+        assertThrows(IllegalArgumentException.class, () -> RenameRule.parse("NoSeparator"));
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.server;
+
+import com.jollymonsterstudio.unreal.service.CopyCaches;
+import com.jollymonsterstudio.unreal.service.CopyRequest;
+import com.jollymonsterstudio.unreal.service.CopyResult;
+import com.jollymonsterstudio.unreal.service.CopyService;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CloneServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private CloneServer server;
+
+    /**
+     * FakeCopyService - answers jobs right away without touching the disk, targets named Broken fail and targets named Blocked
+     *                   wait for the test to let them go
+     */
+    private final class FakeCopyService extends CopyService {
+        private FakeCopyService() {
+            super(null, new MockEnvironment()
+                    .withProperty("project.source.directory", "/projects/OldGame")
+                    .withProperty("project.source.name", "OldGame")
+                    .withProperty("project.target.name", "NewGame"), null, null);
+        }
+
+        @Override
+        public CopyResult copy(final CopyRequest request, final CopyCaches caches) {
+            if("Blocked".equals(request.getTargetName())) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if("Broken".equals(request.getTargetName())) {
+                return CopyResult.failed("1 files could not be copied");
+            }
+            return CopyResult.succeeded("Copied", 1, 10, 10);
+        }
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String body;
+
+        private Response(final int status, final String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    @BeforeEach
+    public void start() throws IOException {
+        server = new CloneServer(new FakeCopyService());
+        ReflectionTestUtils.setField(server, "tokenFile", tempDir.resolve("server.token").toString());
+        server.start();
+    }
+
+    @AfterEach
+    public void stop() {
+        release.countDown();
+        server.stop();
+    }
+
+    // a plain socket, HttpURLConnection refuses to send an Origin header
+    private Response request(final String method, final String path, final String headers, final String body) throws IOException {
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write((method + " " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n" + headers
+                    + "Content-Length: " + content.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            outputStream.write(content);
+            outputStream.flush();
+            String response = IOUtils.toString(socket.getInputStream(), StandardCharsets.UTF_8);
+            return new Response(Integer.parseInt(response.split(" ")[1]), response.substring(response.indexOf("\r\n\r\n") + 4));
+        }
+    }
+
+    private Response authorized(final String method, final String path, final String body) throws IOException {
+        return request(method, path, CloneServer.TOKEN_HEADER + ": " + server.getToken() + "\r\n", body);
+    }
+
+    private static String job(final String targetDir, final String targetName) {
+        return "project.target.directory=" + targetDir + "\nproject.target.name=" + targetName + "\n";
+    }
+
+    @Test
+    public void tokenFileIsOnlyReadableByItsOwner() throws IOException {
+        Path tokenFile = tempDir.resolve("server.token");
+
+        assertEquals(server.getToken(), new String(Files.readAllBytes(tokenFile), StandardCharsets.US_ASCII));
+        assertEquals(64, server.getToken().length());
+        if(tokenFile.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile)));
+        }
+
+        server.stop();
+        assertFalse(Files.exists(tokenFile));
+    }
+
+    @Test
+    public void requestsWithoutTheTokenAreRefused() throws IOException {
+        assertEquals(401, request("POST", "/jobs?wait=true", "", job("/ci/build-1", "NewGame")).status);
+        assertEquals(401, request("POST", "/jobs", CloneServer.TOKEN_HEADER + ": nope\r\n", job("/ci/build-1", "NewGame")).status);
+        assertEquals(401, request("GET", "/jobs", "", "").status);
+
+        // nothing was queued
+        assertEquals("", authorized("GET", "/jobs", "").body);
+    }
+
+    @Test
+    public void requestsFromWebPagesAreRefused() throws IOException {
+        Response response = request("POST", "/jobs", CloneServer.TOKEN_HEADER + ": " + server.getToken() + "\r\nOrigin: http://example.com\r\n",
+                job("/ci/build-1", "NewGame"));
+
+        assertEquals(403, response.status);
+        assertEquals("", authorized("GET", "/jobs", "").body);
+    }
+
+    @Test
+    public void submittedJobIsListed() throws IOException {
+        Response submitted = authorized("POST", "/jobs", job("/ci/build-1", "NewGame"));
+
+        assertEquals(202, submitted.status);
+        assertTrue(submitted.body.contains("job.id=1\n"));
+        assertTrue(submitted.body.contains("project.target.directory=/ci/build-1\n"));
+
+        assertTrue(authorized("GET", "/jobs", "").body.startsWith("1\t"));
+        assertEquals(200, authorized("GET", "/jobs/1", "").status);
+        assertEquals(404, authorized("GET", "/jobs/2", "").status);
+    }
+
+    @Test
+    public void waitAnswersWithHowTheJobWent() throws IOException {
+        Response succeeded = authorized("POST", "/jobs?wait=true", job("/ci/build-1", "NewGame"));
+        Response failed = authorized("POST", "/jobs?wait=true", job("/ci/build-2", "Broken"));
+
+        assertEquals(200, succeeded.status);
+        assertTrue(succeeded.body.contains("job.status=SUCCEEDED\n"));
+        assertEquals(500, failed.status);
+        assertTrue(failed.body.contains("job.status=FAILED\n"));
+        assertTrue(failed.body.contains("job.message=1 files could not be copied\n"));
+    }
+
+    @Test
+    public void jobsMissingTheirTargetAreRejected() throws IOException {
+        assertEquals(400, authorized("POST", "/jobs", "project.target.name=NewGame\n").status);
+    }
+
+    @Test
+    public void activeJobsNeverShareATarget() throws IOException, InterruptedException {
+        Properties blocked = new Properties();
+        blocked.setProperty("project.target.directory", tempDir.resolve("build").toString());
+        blocked.setProperty("project.target.name", "Blocked");
+        CloneJob first = server.submit(blocked);
+
+        Response clash = authorized("POST", "/jobs", job(tempDir.resolve("build").resolve("..").resolve("build").toString(), "NewGame"));
+        assertEquals(409, clash.status);
+        assertTrue(clash.body.startsWith("Job 1 is already copying to"));
+
+        // once the first job is done its target is free again
+        release.countDown();
+        first.await();
+        assertEquals(202, authorized("POST", "/jobs", job(tempDir.resolve("build").toString(), "NewGame")).status);
+    }
+
+    @Test
+    public void oldestFinishedJobsAreForgotten() throws InterruptedException, IOException {
+        for(int i = 1; i <= 102; i++) {
+            Properties properties = new Properties();
+            properties.setProperty("project.target.directory", "/ci/build-" + i);
+            server.submit(properties).await();
+        }
+
+        assertEquals(404, authorized("GET", "/jobs/1", "").status);
+        assertEquals(200, authorized("GET", "/jobs/2", "").status);
+        assertEquals(200, authorized("GET", "/jobs/102", "").status);
+        assertEquals(101, authorized("GET", "/jobs", "").body.split("\n").length);
+    }
+
+    @Test
+    public void submitWithoutTargetThrows() {
+        assertThrows(IllegalArgumentException.class, () -> server.submit(new Properties()));
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CopyRequestTest {
+
+    private final MockEnvironment environment = new MockEnvironment()
+            .withProperty("project.source.directory", "/projects/OldGame")
+            .withProperty("project.source.name", "OldGame")
+            .withProperty("project.target.directory", "/projects/NewGame")
+            .withProperty("project.target.name", "NewGame")
+            .withProperty("whitelist.directories", "Config, Content,Source")
+            .withProperty("config.force.delete", "true");
+
+    @Test
+    public void applicationPropertiesAreTheDefault() {
+        CopyRequest request = CopyRequest.from(new Properties(), environment);
+
+        assertEquals("/projects/OldGame", request.getSourceDir());
+        assertArrayEquals(new String[] {"Config", "Content", "Source"}, request.getWhitelistDirs());
+        assertArrayEquals(new String[0], request.getExtraTargets());
+        assertTrue(request.isForceDelete());
+        assertFalse(request.isDryRun());
+    }
+
+    @Test
+    public void jobPropertiesWin() {
+        Properties job = new Properties();
+        job.setProperty("project.target.directory", "/ci/build-42");
+        job.setProperty("project.target.name", "Build42Game");
+        job.setProperty("whitelist.directories", "Content");
+        job.setProperty("config.force.delete", "false");
+
+        CopyRequest request = CopyRequest.from(job, environment);
+
+        assertEquals("/projects/OldGame", request.getSourceDir());
+        assertEquals("/ci/build-42", request.getTargetDir());
+        assertEquals("Build42Game", request.getTargetName());
+        assertArrayEquals(new String[] {"Content"}, request.getWhitelistDirs());
+        assertFalse(request.isForceDelete());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.transfer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BinaryTransferTest - runs against whatever filesystem the temp directory lives on, on btrfs / xfs the reflink
+ *                      path is exercised for real, on tmpfs / ext4 it checks the fallback
+ */
+public class BinaryTransferTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path source;
+    private byte[] content;
+
+    @BeforeEach
+    public void createSource() throws IOException {
+        content = new byte[256 * 1024];
+        new Random(42).nextBytes(content);
+        source = Files.write(tempDir.resolve("Asset.uasset"), content);
+    }
+
+    @Test
+    public void transferCopiesContents() throws IOException {
+        Path target = tempDir.resolve("Transfer.uasset");
+
+        assertEquals(TransferStrategy.TRANSFER, new BinaryTransfer(TransferStrategy.TRANSFER).transfer(source, target));
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void hardlinkSharesData() throws IOException {
+        Path target = tempDir.resolve("Hardlink.uasset");
+
+        assertEquals(TransferStrategy.HARDLINK, new BinaryTransfer(TransferStrategy.HARDLINK).transfer(source, target));
+        assertTrue(Files.isSameFile(source, target));
+    }
+
+    @Test
+    public void onlyFilesystemFailuresDisableReflinks() {
+        assertTrue(BinaryTransfer.isUnsupported("cp: failed to clone 'b' from 'a': Operation not supported\n"));
+        assertTrue(BinaryTransfer.isUnsupported("cp: failed to clone 'b' from 'a': Invalid cross-device link\n"));
+        assertFalse(BinaryTransfer.isUnsupported("cp: error writing 'b': No space left on device\n"));
+        assertFalse(BinaryTransfer.isUnsupported("cp: cannot open 'a' for reading: Permission denied\n"));
+        assertFalse(BinaryTransfer.isUnsupported("cp: cannot stat 'a': No such file or directory\n"));
+    }
+
+    @Test
+    public void reflinkClonesOrFallsBack() throws IOException {
+        BinaryTransfer binaryTransfer = new BinaryTransfer(TransferStrategy.REFLINK);
+
+        for(int i = 0; i < 2; i++) {
+            Path target = tempDir.resolve("Reflink" + i + ".uasset");
+            TransferStrategy used = binaryTransfer.transfer(source, target);
+
+            assertTrue(used == TransferStrategy.REFLINK || used == TransferStrategy.TRANSFER, used.name());
+            assertArrayEquals(content, Files.readAllBytes(target));
+        }
+        assertEquals(2, binaryTransfer.getUsage(TransferStrategy.REFLINK) + binaryTransfer.getUsage(TransferStrategy.TRANSFER));
+    }
+
+    @Test
+    public void strategyFromProperty() {
+        assertEquals(TransferStrategy.COPY, TransferStrategy.fromProperty(" "));
+        assertEquals(TransferStrategy.REFLINK, TransferStrategy.fromProperty(" Reflink "));
+        IllegalArgumentException typo = assertThrows(IllegalArgumentException.class, () -> TransferStrategy.fromProperty("hardlinks"));
+        assertTrue(typo.getMessage().startsWith("Unknown binary transfer hardlinks"));
+    }
+
+    @Test
+    public void refusesToOverwrite() throws IOException {
+        Path target = Files.write(tempDir.resolve("Existing.uasset"), new byte[] { 1 });
+
+        assertThrows(FileAlreadyExistsException.class, () -> new BinaryTransfer(TransferStrategy.REFLINK).transfer(source, target));
+    }
+}
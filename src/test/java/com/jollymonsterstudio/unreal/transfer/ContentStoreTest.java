@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.transfer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContentStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path storeDir;
+    private Path source;
+    private byte[] content;
+
+    @BeforeEach
+    public void createSource() throws IOException {
+        storeDir = tempDir.resolve("store");
+        content = new byte[64 * 1024];
+        new Random(11).nextBytes(content);
+        source = Files.write(tempDir.resolve("Starter.uasset"), content);
+    }
+
+    @Test
+    public void identicalFilesAreStoredOnce() throws IOException {
+        Path copy = Files.write(tempDir.resolve("Copy.uasset"), content);
+        ContentStore contentStore = ContentStore.open(storeDir);
+
+        Path object = contentStore.store(source);
+
+        assertEquals(object, contentStore.store(copy));
+        assertEquals(1, contentStore.getAdded());
+        assertEquals(1, contentStore.getReused());
+        assertArrayEquals(content, Files.readAllBytes(object));
+    }
+
+    @Test
+    public void indexSkipsHashingUnchangedFiles() throws IOException {
+        ContentStore contentStore = ContentStore.open(storeDir);
+        Path object = contentStore.store(source);
+        contentStore.save();
+
+        ContentStore reopened = ContentStore.open(storeDir);
+        assertEquals(object, reopened.store(source));
+        assertEquals(0, reopened.getHashed());
+
+        // different contents under the same path get a new object
+        Files.write(source, new byte[] { 1, 2, 3 });
+        Files.setLastModifiedTime(source, FileTime.fromMillis(1000));
+        assertNotEquals(object, reopened.store(source));
+        assertEquals(1, reopened.getHashed());
+    }
+
+    @Test
+    public void targetsAreLinkedToTheStore() throws IOException {
+        ContentStore contentStore = ContentStore.open(storeDir);
+        BinaryTransfer binaryTransfer = new BinaryTransfer(TransferStrategy.COPY, null, contentStore);
+        Path first = tempDir.resolve("First.uasset");
+        Path second = tempDir.resolve("Second.uasset");
+
+        TransferStrategy used = binaryTransfer.transferAll(source, Arrays.asList(first, second));
+
+        // never hard linked unless asked for, an edit of one clone must not reach the store or the other clones
+        assertTrue(used == TransferStrategy.REFLINK || used == TransferStrategy.TRANSFER, used.name());
+        assertEquals(1, Files.getAttribute(first, "unix:nlink"));
+        assertArrayEquals(content, Files.readAllBytes(first));
+        assertArrayEquals(content, Files.readAllBytes(second));
+        assertEquals(1, contentStore.getAdded());
+    }
+
+    @Test
+    public void targetsAreHardLinkedWhenAskedFor() throws IOException {
+        ContentStore contentStore = ContentStore.open(storeDir);
+        BinaryTransfer binaryTransfer = new BinaryTransfer(TransferStrategy.HARDLINK, null, contentStore);
+        Path first = tempDir.resolve("First.uasset");
+        Path second = tempDir.resolve("Second.uasset");
+
+        assertEquals(TransferStrategy.HARDLINK, binaryTransfer.transferAll(source, Arrays.asList(first, second)));
+        assertTrue(Files.isSameFile(first, second));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.transfer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PackagePatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    // export data after the header happens to hold a reference too, only the name table may be patched
+    private static final byte[] EXPORTS = "....../Script/OldGame\0....".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * packageWith - the layout a ue4.27 editor saves, summary followed by the name table and the exports
+     * @param fileVersion FileVersionUE4 of the package
+     * @param names the name table
+     * @return contents of the package
+     */
+    private static byte[] packageWith(final int fileVersion, final String... names) {
+        ByteBuffer nameTable = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+        for(String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+            nameTable.putInt(bytes.length + 1).put(bytes).put((byte) 0);
+            if(fileVersion >= PackagePatcher.NAME_HASHES_VERSION) {
+                nameTable.putShort((short) strihash(bytes)).putShort((short) strCrc32(bytes));
+            }
+        }
+        nameTable.flip();
+
+        ByteBuffer summary = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+        summary.putInt(PackagePatcher.PACKAGE_FILE_TAG).putInt(-7).putInt(864).putInt(fileVersion).putInt(0);
+        // a single custom version, guid and version
+        summary.putInt(1).put(new byte[16]).putInt(42);
+        int totalHeaderSizeAt = summary.position();
+        summary.putInt(0);
+        summary.putInt(5).put("None\0".getBytes(StandardCharsets.US_ASCII));
+        summary.putInt(0).putInt(names.length);
+        int nameOffsetAt = summary.position();
+        summary.putInt(0);
+        // the rest of the summary
+        summary.put(new byte[24]);
+        summary.putInt(nameOffsetAt, summary.position());
+        summary.putInt(totalHeaderSizeAt, summary.position() + nameTable.remaining());
+        summary.flip();
+
+        ByteBuffer contents = ByteBuffer.allocate(summary.remaining() + nameTable.remaining() + EXPORTS.length);
+        contents.put(summary).put(nameTable).put(EXPORTS);
+        return contents.array();
+    }
+
+    // FCrc::Strihash_DEPRECATED, bit by bit
+    private static int strihash(final byte[] name) {
+        int hash = 0;
+        for(byte b : name) {
+            hash ^= Character.toUpperCase((char) b);
+            for(int bit = 0; bit < 8; bit++) {
+                hash = (hash >>> 1) ^ (0xEDB88320 & -(hash & 1));
+            }
+        }
+        return hash & 0xFFFF;
+    }
+
+    // FCrc::StrCrc32 is a regular crc32 over 4 byte characters
+    private static int strCrc32(final byte[] name) {
+        CRC32 crc = new CRC32();
+        crc.update(new String(name, StandardCharsets.US_ASCII).getBytes(Charset.forName("UTF-32LE")));
+        return (int) crc.getValue() & 0xFFFF;
+    }
+
+    @Test
+    public void onlyWholeProjectReferencesInTheNameTableArePatched() throws IOException {
+        Path source = Files.write(tempDir.resolve("BP_Character.uasset"),
+                packageWith(522, "None", "/Script/OldGame", "/Script/OldGame.OldGameCharacter", "/Script/OldGameTools", "/Script/Engine"));
+        PackagePatcher packagePatcher = new PackagePatcher("OldGame");
+
+        long[] entries = packagePatcher.find(source);
+        assertEquals(2, entries.length);
+
+        Path target = tempDir.resolve("Patched.uasset");
+        packagePatcher.copy(source, target, entries, "NewGame");
+
+        // names and their hashes as the editor would have saved them for the new project, the exports are untouched
+        byte[] expected = packageWith(522, "None", "/Script/NewGame", "/Script/NewGame.OldGameCharacter", "/Script/OldGameTools", "/Script/Engine");
+        assertArrayEquals(expected, Files.readAllBytes(target));
+        assertEquals(1, packagePatcher.getPatchedFiles());
+        assertEquals(2, packagePatcher.getPatchedReferences());
+    }
+
+    @Test
+    public void olderPackagesHaveNoNameHashes() throws IOException {
+        Path source = Files.write(tempDir.resolve("Map.umap"), packageWith(503, "/Script/OldGame", "None"));
+        PackagePatcher packagePatcher = new PackagePatcher("OldGame");
+
+        Path target = tempDir.resolve("Patched.umap");
+        packagePatcher.copy(source, target, packagePatcher.find(source), "NewGame");
+
+        assertArrayEquals(packageWith(503, "/Script/NewGame", "None"), Files.readAllBytes(target));
+    }
+
+    @Test
+    public void unknownLayoutsAreLeftAlone() throws IOException {
+        byte[] contents = packageWith(522, "/Script/OldGame");
+        // a newer summary layout
+        ByteBuffer.wrap(contents).order(ByteOrder.LITTLE_ENDIAN).putInt(4, -9);
+        Path newer = Files.write(tempDir.resolve("Newer.uasset"), contents);
+        Path noPackage = Files.write(tempDir.resolve("Renamed.uasset"), EXPORTS);
+
+        PackagePatcher packagePatcher = new PackagePatcher("OldGame");
+        assertEquals(0, packagePatcher.find(newer).length);
+        assertEquals(0, packagePatcher.find(noPackage).length);
+    }
+
+    @Test
+    public void hashesMatchTheEngine() {
+        byte[] name = "/Script/NewGame".getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(strihash(name), PackagePatcher.nonCasePreservingHash(name));
+        assertEquals(strCrc32(name), PackagePatcher.casePreservingHash(name));
+        assertEquals(strihash("/SCRIPT/NEWGAME".getBytes(StandardCharsets.US_ASCII)), PackagePatcher.nonCasePreservingHash(name));
+    }
+
+    @Test
+    public void onlyNamesOfTheSameLengthCanBePatched() {
+        PackagePatcher packagePatcher = new PackagePatcher("OldGame");
+
+        assertTrue(packagePatcher.canPatch("NewGame"));
+        assertFalse(packagePatcher.canPatch("NewerGame"));
+        assertFalse(packagePatcher.canPatch("OldGame"));
+        assertTrue(packagePatcher.appliesTo(tempDir.resolve("Level.UMAP")));
+        assertFalse(packagePatcher.appliesTo(tempDir.resolve("Texture.png")));
+    }
+}
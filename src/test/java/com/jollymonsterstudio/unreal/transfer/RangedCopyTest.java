@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.transfer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RangedCopyTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path source;
+    private byte[] content;
+
+    @BeforeEach
+    public void createSource() throws IOException {
+        // a few ranges plus an odd tail
+        content = new byte[5 * 1024 * 1024 + 123];
+        new Random(7).nextBytes(content);
+        source = Files.write(tempDir.resolve("Level.umap"), content);
+    }
+
+    @Test
+    public void smallBudgetSplitsIntoRanges() {
+        RangedCopy rangedCopy = new RangedCopy(1024 * 1024);
+
+        assertTrue(rangedCopy.isWorthSplitting(content.length));
+        assertFalse(new RangedCopy(64L * 1024 * 1024).isWorthSplitting(content.length));
+    }
+
+    @Test
+    public void copiesOnTheCallingThread() throws IOException {
+        Path target = tempDir.resolve("Sequential.umap");
+
+        new RangedCopy(1024 * 1024).copy(source, Arrays.asList(target));
+
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void copiesInParallelWithinTheBudget() throws Exception {
+        RangedCopy rangedCopy = new RangedCopy(1024 * 1024);
+        List<Path> targets = new ArrayList<>();
+        List<RecursiveAction> copies = new ArrayList<>();
+        for(int i = 0; i < 4; i++) {
+            // two targets per copy so each range is written twice
+            List<Path> copyTargets = Arrays.asList(tempDir.resolve("A" + i + ".umap"), tempDir.resolve("B" + i + ".umap"));
+            targets.addAll(copyTargets);
+            copies.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    try {
+                        rangedCopy.copy(source, copyTargets);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+        }
+
+        // two pools at once, the budget holds across both of them
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ForkJoinPool other = new ForkJoinPool(4);
+        ForkJoinTask<?> first = pool.submit(() -> ForkJoinTask.invokeAll(copies.subList(0, 2)));
+        ForkJoinTask<?> second = other.submit(() -> ForkJoinTask.invokeAll(copies.subList(2, 4)));
+        first.get();
+        second.get();
+        pool.shutdown();
+        other.shutdown();
+
+        for(Path target : targets) {
+            assertArrayEquals(content, Files.readAllBytes(target));
+        }
+        // a 1 MB budget only has room for a single 1 MB range buffer
+        assertEquals(1, rangedCopy.allocatedBuffers());
+    }
+
+    @Test
+    public void binaryTransferRefusesToOverwrite() throws IOException {
+        Path target = Files.write(tempDir.resolve("Existing.umap"), new byte[] { 1 });
+        BinaryTransfer binaryTransfer = new BinaryTransfer(TransferStrategy.TRANSFER, new RangedCopy(1024 * 1024), null);
+
+        assertThrows(FileAlreadyExistsException.class, () -> binaryTransfer.transferAll(source, Arrays.asList(target)));
+    }
+}
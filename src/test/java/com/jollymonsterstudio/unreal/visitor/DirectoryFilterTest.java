@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.visitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DirectoryFilterTest {
+
+    private final DirectoryFilter filter = new DirectoryFilter(Arrays.asList("Config", "Content", "Source", "Plugins/MyPlugin"));
+    private final Path source = Paths.get("Project");
+
+    @Test
+    public void rootIsTraversed() {
+        assertEquals(DirectoryFilter.Decision.TRAVERSE, filter.decide(source.relativize(source)));
+    }
+
+    @Test
+    public void whitelistedSubtreesAreIncluded() {
+        assertEquals(DirectoryFilter.Decision.INCLUDE, filter.decide(Paths.get("Content")));
+        assertEquals(DirectoryFilter.Decision.INCLUDE, filter.decide(Paths.get("Source", "Project", "Private")));
+        assertEquals(DirectoryFilter.Decision.INCLUDE, filter.decide(Paths.get("Plugins", "MyPlugin", "Source")));
+    }
+
+    @Test
+    public void everythingElseIsSkipped() {
+        assertEquals(DirectoryFilter.Decision.SKIP, filter.decide(Paths.get("Intermediate")));
+        assertEquals(DirectoryFilter.Decision.SKIP, filter.decide(Paths.get("Content2")));
+        assertEquals(DirectoryFilter.Decision.SKIP, filter.decide(Paths.get("Plugins", "OtherPlugin")));
+        assertEquals(DirectoryFilter.Decision.TRAVERSE, filter.decide(Paths.get("Plugins")));
+    }
+
+    @Test
+    public void filesFollowTheirDirectory() {
+        assertTrue(filter.includesFile(Paths.get(".gitignore")));
+        assertTrue(filter.includesFile(Paths.get("Config", "DefaultEngine.ini")));
+        assertFalse(filter.includesFile(Paths.get(".git", "HEAD")));
+        assertFalse(filter.includesFile(Paths.get("Plugins", "README.md")));
+    }
+}
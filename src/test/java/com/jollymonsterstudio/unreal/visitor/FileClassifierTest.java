@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.visitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileClassifierTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FileClassifier classifier(final boolean sniffUnknown) {
+        return new FileClassifier(Arrays.asList("uasset", "png"), Arrays.asList("ini", "cpp"), sniffUnknown);
+    }
+
+    @Test
+    public void extensionsIgnoreCase() {
+        FileClassifier classifier = classifier(false);
+
+        assertEquals(FileType.BINARY, classifier.classify(tempDir.resolve("Foo.PNG")));
+        assertEquals(FileType.ASCII, classifier.classify(tempDir.resolve("DefaultGame.INI")));
+        assertNull(classifier.classify(tempDir.resolve("Shader.usf")));
+        assertNull(classifier.classify(tempDir.resolve("LICENSE")));
+    }
+
+    @Test
+    public void unknownExtensionsSettleOnceTheirFilesAgree() throws IOException {
+        FileClassifier classifier = classifier(true);
+        for(int i = 0; i < FileClassifier.SETTLE_AFTER; i++) {
+            Path shader = Files.write(tempDir.resolve("Common" + i + ".usf"), "#include \"OldGame.ush\"\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals(FileType.ASCII, classifier.classify(shader));
+        }
+
+        // settled, contents are no longer looked at
+        Path binaryShader = Files.write(tempDir.resolve("Other.USF"), new byte[] {0, 0, 0});
+        assertEquals(FileType.ASCII, classifier.classify(binaryShader));
+    }
+
+    @Test
+    public void mixedExtensionsAreCheckedFileByFile() throws IOException {
+        FileClassifier classifier = classifier(true);
+        Path shader = Files.write(tempDir.resolve("Common.usf"), "#include \"OldGame.ush\"\n".getBytes(StandardCharsets.UTF_8));
+        Path binaryShader = Files.write(tempDir.resolve("Compiled.usf"), new byte[] {0, 0, 0});
+
+        // a single binary file does not turn the text ones binary
+        assertEquals(FileType.ASCII, classifier.classify(shader));
+        assertEquals(FileType.BINARY, classifier.classify(binaryShader));
+        for(int i = 0; i < FileClassifier.SETTLE_AFTER * 2; i++) {
+            assertEquals(FileType.ASCII, classifier.classify(shader));
+        }
+        assertEquals(FileType.BINARY, classifier.classify(binaryShader));
+    }
+
+    @Test
+    public void filesWithoutExtensionAreSniffedEachTime() throws IOException {
+        FileClassifier classifier = classifier(true);
+        Path license = Files.write(tempDir.resolve("LICENSE"), "Copyright OldGame".getBytes(StandardCharsets.UTF_8));
+        Path blob = Files.write(tempDir.resolve("BLOB"), new byte[] {(byte) 0xC3, 0x28});
+        Path empty = Files.write(tempDir.resolve("EMPTY"), new byte[0]);
+
+        assertEquals(FileType.ASCII, classifier.classify(license));
+        assertEquals(FileType.BINARY, classifier.classify(blob));
+        assertNull(classifier.classify(empty));
+    }
+
+    @Test
+    public void characterCutOffBySniffSizeIsStillText() {
+        byte[] head = new byte[FileClassifier.SNIFF_SIZE];
+        Arrays.fill(head, (byte) 'a');
+        // first byte of a two byte sequence right at the end
+        head[head.length - 1] = (byte) 0xC3;
+
+        assertTrue(FileClassifier.isText(head, head.length, false));
+        assertFalse(FileClassifier.isText(head, head.length, true));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jollymonsterstudio.unreal.visitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ListingCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final class Recorder extends SimpleFileVisitor<Path> {
+        private final Path root;
+        private final Set<String> visited = new TreeSet<>();
+
+        private Recorder(final Path root) {
+            this.root = root;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+            visited.add("dir " + root.relativize(dir));
+            return dir.endsWith("Intermediate") ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+            visited.add("file " + root.relativize(file) + " " + attrs.size());
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
+    private Path createProject() throws IOException {
+        Path source = tempDir.resolve("OldGame");
+        Files.createDirectories(source.resolve("Content").resolve("Maps"));
+        Files.createDirectories(source.resolve("Intermediate"));
+        Files.write(source.resolve("OldGame.uproject"), new byte[10]);
+        Files.write(source.resolve("Content").resolve("Maps").resolve("Main.umap"), new byte[20]);
+        Files.write(source.resolve("Intermediate").resolve("Skipped.obj"), new byte[30]);
+        return source;
+    }
+
+    @Test
+    public void visitsWhatWalkFileTreeVisits() throws IOException {
+        Path source = createProject();
+        Recorder expected = new Recorder(source);
+        Files.walkFileTree(source, expected);
+
+        Recorder actual = new Recorder(source);
+        new ListingCache().walk(source, actual);
+
+        assertEquals(expected.visited, actual.visited);
+    }
+
+    @Test
+    public void changedDirectoriesAreListedAgain() throws IOException {
+        Path source = createProject();
+        ListingCache listingCache = new ListingCache();
+        listingCache.walk(source, new Recorder(source));
+        assertEquals(3, listingCache.getListed());
+
+        // edits to existing files never touch the directory
+        Files.write(source.resolve("OldGame.uproject"), new byte[11]);
+        Path maps = source.resolve("Content").resolve("Maps");
+        Files.write(maps.resolve("Second.umap"), new byte[5]);
+        // make sure the change is visible on filesystems with coarse timestamps
+        Files.setLastModifiedTime(maps, FileTime.fromMillis(Files.getLastModifiedTime(maps).toMillis() + 2000));
+
+        Recorder recorder = new Recorder(source);
+        listingCache.walk(source, recorder);
+
+        assertEquals(4, listingCache.getListed());
+        assertEquals(2, listingCache.getReused());
+        assertTrue(recorder.visited.contains("file OldGame.uproject 11"));
+        assertTrue(recorder.visited.contains("file " + source.relativize(maps.resolve("Second.umap")) + " 5"));
+    }
+}
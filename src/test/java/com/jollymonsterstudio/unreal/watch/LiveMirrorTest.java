@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018. Jolly Monster Studio ( jollymonsterstudio.com )
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jollymonsterstudio.unreal.watch;
+
+import com.jollymonsterstudio.unreal.plan.PlanExecutor;
+import com.jollymonsterstudio.unreal.transfer.TransferStrategy;
+import com.jollymonsterstudio.unreal.visitor.UnrealFileVisitor;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LiveMirrorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path source;
+    private Path target;
+
+    private UnrealFileVisitor fileVisitor() {
+        return new UnrealFileVisitor(source, "OldGame", target, "NewGame", null, null, null, null, false);
+    }
+
+    private static PlanExecutor planExecutor(final UnrealFileVisitor fileVisitor) {
+        return new PlanExecutor(fileVisitor.getPlan(), 1, TransferStrategy.COPY, fileVisitor.getMetrics());
+    }
+
+    private LiveMirror copyProject() throws IOException {
+        source = tempDir.resolve("OldGame");
+        target = tempDir.resolve("NewGame");
+        Path module = source.resolve("Source").resolve("OldGame");
+        Files.createDirectories(module);
+        Files.write(module.resolve("OldGame.h"), "class OLDGAME_API AOldGame;".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(source.resolve("Content"));
+        Files.write(source.resolve("Content").resolve("Hero.uasset"), new byte[] { 1, 2, 3 });
+        Files.createDirectories(source.resolve("Intermediate"));
+
+        UnrealFileVisitor fileVisitor = fileVisitor();
+        fileVisitor.init();
+        Files.walkFileTree(source, fileVisitor);
+        planExecutor(fileVisitor).execute();
+
+        return new LiveMirror(source, this::fileVisitor, LiveMirrorTest::planExecutor, 50);
+    }
+
+    private static String read(final Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void applyRenamesChangesAndRemovesWhatIsGone() throws IOException {
+        try(LiveMirror liveMirror = copyProject()) {
+            Path module = source.resolve("Source").resolve("OldGame");
+            Map<Path, Boolean> changes = new HashMap<>();
+
+            // saved
+            Files.write(module.resolve("OldGame.h"), "class OLDGAME_API AOldGame; // saved".getBytes(StandardCharsets.UTF_8));
+            changes.put(module.resolve("OldGame.h"), Boolean.FALSE);
+            // a new folder with a file in it
+            Files.createDirectories(module.resolve("Private"));
+            Files.write(module.resolve("Private").resolve("OldGame.cpp"), "#include \"OldGame.h\"".getBytes(StandardCharsets.UTF_8));
+            changes.put(module.resolve("Private"), Boolean.TRUE);
+            // renamed
+            Files.move(source.resolve("Content").resolve("Hero.uasset"), source.resolve("Content").resolve("Villain.uasset"));
+            changes.put(source.resolve("Content").resolve("Hero.uasset"), Boolean.FALSE);
+            changes.put(source.resolve("Content").resolve("Villain.uasset"), Boolean.TRUE);
+            // not whitelisted
+            Files.write(source.resolve("Intermediate").resolve("Build.h"), "ignored".getBytes(StandardCharsets.UTF_8));
+            changes.put(source.resolve("Intermediate").resolve("Build.h"), Boolean.TRUE);
+
+            liveMirror.apply(changes);
+
+            Path newModule = target.resolve("Source").resolve("NewGame");
+            assertEquals("class NEWGAME_API ANewGame; // saved", read(newModule.resolve("NewGame.h")));
+            assertEquals("#include \"NewGame.h\"", read(newModule.resolve("Private").resolve("NewGame.cpp")));
+            assertFalse(Files.exists(target.resolve("Content").resolve("Hero.uasset")));
+            assertEquals(3, Files.size(target.resolve("Content").resolve("Villain.uasset")));
+            assertFalse(Files.exists(target.resolve("Intermediate")));
+
+            // the whole module goes away at once
+            FileUtils.deleteDirectory(module.toFile());
+            changes.clear();
+            changes.put(module, Boolean.FALSE);
+            liveMirror.apply(changes);
+
+            assertFalse(Files.exists(newModule));
+            assertTrue(Files.exists(target.resolve("Source")));
+        }
+    }
+
+    @Test
+    public void watchPicksUpNewFiles() throws Exception {
+        LiveMirror liveMirror = copyProject();
+        Thread watcher = new Thread(() -> {
+            try {
+                liveMirror.watch();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        watcher.start();
+
+        Path newFile = target.resolve("Source").resolve("NewGame").resolve("NewGameMode.h");
+        try {
+            // the watch has to be registered before anything changes, keep writing until the target catches up
+            for(int attempt = 0; attempt < 100 && !Files.exists(newFile); attempt++) {
+                Files.write(source.resolve("Source").resolve("OldGame").resolve("OldGameMode.h"), "class AOldGameMode;".getBytes(StandardCharsets.UTF_8));
+                Thread.sleep(100);
+            }
+        } finally {
+            // waits for the watch to return
+            liveMirror.stop();
+            liveMirror.close();
+            watcher.join(5000);
+        }
+
+        assertEquals("class ANewGameMode;", read(newFile));
+        assertFalse(watcher.isAlive());
+    }
+}
@@ -0,0 +1,9 @@
+using UnrealBuildTool;
+
+public class TrainingGame : ModuleRules
+{
+	public TrainingGame(ReadOnlyTargetRules Target) : base(Target)
+	{
+		PublicDependencyModuleNames.AddRange(new string[] { "Core", "CoreUObject", "Engine" });
+	}
+}
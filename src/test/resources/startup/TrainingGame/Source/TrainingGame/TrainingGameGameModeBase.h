@@ -0,0 +1,7 @@
+#pragma once
+
+#include "CoreMinimal.h"
+
+class TRAININGGAME_API ATrainingGameGameModeBase : public AGameModeBase
+{
+};